@@ -2,17 +2,46 @@ package controller_view;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
+import javafx.animation.AnimationTimer;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.HPos;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.effect.Blend;
+import javafx.scene.effect.BlendMode;
+import javafx.scene.effect.Effect;
+import javafx.scene.effect.ImageInput;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
+import model.CommandLog;
 import model.DrawingTool;
+import model.LayerStack;
+import model.MipmapPyramid;
+import model.ProjectFile;
 import model.Select;
+import model.TiledImage;
 import model.UndoRedoManager;
 
 /**
@@ -23,6 +52,30 @@ import model.UndoRedoManager;
  * allows users to select a current drawing tool, pen color, and perform
  * freehand drawing.
  * 
+ * The drawing itself is kept in a TiledImage, which may be much larger than
+ * the canvas: the canvas is a viewport onto it that is scrolled with the mouse
+ * wheel. Tools that draw shapes draw on the canvas, and their changes are
+ * copied into the drawing when they are recorded. Tools that work on pixels
+ * read and write the drawing through readPixels and writePixels instead, and
+ * the canvas only receives the written area, so they never read back from the
+ * screen. Only the viewport is ever rendered, so a 20000x20000 drawing that is
+ * mostly blank costs little more memory than the screen.
+ * 
+ * The viewport can be zoomed by powers of two with Ctrl and the mouse wheel.
+ * Zoomed out, it is rendered from a MipmapPyramid of the drawing, so showing
+ * all of a huge drawing reads no more pixels than the screen holds. Zoomed in,
+ * the pixels of the drawing are repeated. Tools only draw at the actual size;
+ * zoomed, dragging the mouse pans the view instead.
+ * 
+ * The drawing is a LayerStack, and the tools draw on its active layer only.
+ * At the actual size the canvas holds the pixels of that layer, and the layers
+ * under and over it are shown around them through a Blend effect made from
+ * two images of the viewport. Those only change when the layers themselves
+ * do, so drawing costs the same however many layers there are. Everything
+ * else, such as saving or zooming out, reads the cached composite of the
+ * layers. Each layer has its own undo history, and undo goes back through them
+ * in the order the changes were made.
+ * 
  * @author Doom Al Rajhi, Vivian Alonso, Tanay Desai, Hannibal Oyebode
  * @file: DrawingCanvas.java
  * @assignment: Paint Application Final Project
@@ -72,6 +125,131 @@ public class DrawingCanvas extends Canvas implements Serializable {
 	 */
 	public boolean hasChanges = false;
 
+	/**
+	 * Counts the changes made to the canvas, so a save can tell whether the
+	 * canvas changed while it was being written.
+	 */
+	private int changeCount;
+
+	/**
+	 * The layer being drawn on. The canvas shows the part of it at viewX, viewY.
+	 */
+	private TiledImage document;
+
+	/**
+	 * The layers of the drawing. The one at activeLayer is document, and its
+	 * undo history is undoRedoManager.
+	 */
+	private LayerStack layers;
+	private int activeLayer;
+	private int layersAdded = 1; // For naming new layers.
+
+	/**
+	 * The undo histories of the layers in the order their actions were recorded,
+	 * so undo and redo go back and forth across layers. An entry holds several
+	 * histories when one change, such as a resize, touched several layers.
+	 */
+	private Deque<UndoRedoManager[]> undoOrder = new ArrayDeque<>();
+	private Deque<UndoRedoManager[]> redoOrder = new ArrayDeque<>();
+
+	/**
+	 * The captures the undo histories are still comparing on their own thread,
+	 * oldest first, and the history each belongs to. A capture is entered in the
+	 * undo order once it turns out to have recorded an action.
+	 */
+	private transient Deque<Future<Boolean>> pendingCaptures = new ArrayDeque<>();
+	private transient Deque<UndoRedoManager> pendingHistories = new ArrayDeque<>();
+
+	/**
+	 * The position of the viewport on the drawing.
+	 */
+	private int viewX;
+	private int viewY;
+
+	/**
+	 * The largest size the canvas grows to. Larger drawings are scrolled.
+	 */
+	private int maxViewWidth;
+	private int maxViewHeight;
+
+	/**
+	 * The lowest and highest zoom levels.
+	 */
+	public static final int MIN_ZOOM_LEVEL = -6;
+	public static final int MAX_ZOOM_LEVEL = 4;
+
+	/**
+	 * The zoom as a power of two: 0 shows the drawing at its actual size, -1 at
+	 * half of it and 1 at twice it.
+	 */
+	private int zoomLevel;
+
+	/**
+	 * The smaller copies of the drawing shown when zoomed out, built when first
+	 * needed.
+	 */
+	private MipmapPyramid pyramid;
+
+	/**
+	 * Where the mouse was last while panning a zoomed view, on the canvas.
+	 */
+	private double panX;
+	private double panY;
+
+	/**
+	 * The viewport the command log was started with before zooming, and whether
+	 * the drawing was replaced while zoomed. Either means the log has to start
+	 * anew when the view returns to the actual size.
+	 */
+	private int logViewX;
+	private int logViewY;
+	private boolean logStale;
+
+	/**
+	 * The bounds, on the drawing, of the pixels written through writePixels since
+	 * they were last recorded.
+	 */
+	private int writtenLeft = Integer.MAX_VALUE;
+	private int writtenTop = Integer.MAX_VALUE;
+	private int writtenRight = Integer.MIN_VALUE;
+	private int writtenBottom = Integer.MIN_VALUE;
+
+	/**
+	 * Set while the command log replays commands onto the canvas, which leaves
+	 * the drawing behind the canvas until the whole viewport is copied into it.
+	 */
+	private boolean replaying;
+
+	/**
+	 * Records tool commands for undo and redo when the command log undo mode is
+	 * on, null otherwise.
+	 */
+	private CommandLog commandLog;
+
+	/**
+	 * The area of the stroke the canvas drew itself because no tool was selected,
+	 * or null if it drew none.
+	 */
+	private Rectangle2D freehandRegion;
+
+	/**
+	 * The points the mouse was dragged to since the last pulse, as x, y pairs,
+	 * and the timer that draws them on the next pulse.
+	 */
+	private double[] dragPoints = new double[64];
+	private int dragCount;
+	private transient AnimationTimer dragTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			flushDrags();
+		}
+	};
+
+	/**
+	 * Told about every area of the drawing that changed.
+	 */
+	private transient List<Consumer<Rectangle2D>> changeListeners = new ArrayList<>();
+
 	/**
 	 * Constructor for the DrawingCanvas class.
 	 * 
@@ -79,18 +257,38 @@ public class DrawingCanvas extends Canvas implements Serializable {
 	 * @param height The height of the canvas.
 	 */
 	public DrawingCanvas(double width, double height) {
-		super(width, height);
-		this.width = width;
-		this.height = height;
+		this((int) width, (int) height, width, height);
+	}
+
+	/**
+	 * Constructor for a canvas that shows part of a larger drawing.
+	 *
+	 * @param documentWidth  The width of the drawing.
+	 * @param documentHeight The height of the drawing.
+	 * @param maxViewWidth   The largest width of the canvas.
+	 * @param maxViewHeight  The largest height of the canvas.
+	 */
+	public DrawingCanvas(int documentWidth, int documentHeight, double maxViewWidth, double maxViewHeight) {
+		super(Math.min(documentWidth, (int) maxViewWidth), Math.min(documentHeight, (int) maxViewHeight));
+		this.width = getWidth();
+		this.height = getHeight();
+		this.maxViewWidth = (int) maxViewWidth;
+		this.maxViewHeight = (int) maxViewHeight;
+		document = new TiledImage(documentWidth, documentHeight, 0xFFF4F4F4);
 		initializeCanvas(width, height);
 		this.currentTool = null;
 		penColor = Color.BLACK;
 		this.undoRedoManager = new UndoRedoManager();
+		// The blank drawing is the starting state of the undo history, so that the
+		// first change can be captured for the area it touches only
+		undoRedoManager.addNewAction(document);
+		layers = new LayerStack(document, undoRedoManager);
 
 		// Register mouse event handlers
 		setOnMousePressed(e -> handleMousePressed(e));
 		setOnMouseDragged(e -> handleMouseDragged(e));
 		setOnMouseReleased(e -> handleMouseReleased(e));
+		setOnScroll(e -> handleScroll(e));
 	}
 
 	/**
@@ -118,10 +316,17 @@ public class DrawingCanvas extends Canvas implements Serializable {
 	 * @param event The MouseEvent containing information about the press event.
 	 */
 	private void handleMousePressed(MouseEvent event) {
+		flushDrags();
+		if (zoomLevel != 0) {
+			// Drawing happens at the actual size; a zoomed view is for looking around
+			panX = event.getX();
+			panY = event.getY();
+			return;
+		}
 
-		WritableImage snapshot = new WritableImage((int) width, (int) height);
-		this.snapshot(null, snapshot);
-		this.undoRedoManager.addNewAction(snapshot);
+		if (commandLog != null) {
+			commandLog.begin(this, currentTool, event.getX(), event.getY());
+		}
 
 		if (currentTool != null) {
 			currentTool.draw(this, event.getX(), event.getY());
@@ -133,35 +338,67 @@ public class DrawingCanvas extends Canvas implements Serializable {
 			gc.setFill(getPenColor());
 			gc.moveTo(event.getX(), event.getY());
 			gc.stroke();
-
+			markFreehand(event.getX(), event.getY());
 		}
 
-		hasChanges = true;
-
 	}
 
 	/**
-	 * Handles the mouse drag event to continue the drawing as the mouse is dragged.
-	 * for select gives a preview of where the selected element will be by saving
-	 * the current canvas in origGC.
+	 * Handles the mouse drag event by queueing the point it was dragged to. The
+	 * queued points are drawn once per pulse by flushDrags, however many events
+	 * arrive in between.
 	 * 
 	 * @param event The MouseEvent containing information about the drag event.
 	 */
 	private void handleMouseDragged(MouseEvent event) {
+		if (dragCount + 2 > dragPoints.length) {
+			dragPoints = Arrays.copyOf(dragPoints, dragPoints.length * 2);
+		}
+		dragPoints[dragCount++] = event.getX();
+		dragPoints[dragCount++] = event.getY();
+		dragTimer.start();
+	}
+
+	/**
+	 * Continues the drawing through the points the mouse was dragged to since the
+	 * last pulse, handing them to the tool as one batch. For select it moves the
+	 * floating selection to the last of them to show where the selected element
+	 * will be.
+	 */
+	private void flushDrags() {
+		dragTimer.stop();
+		if (dragCount == 0) {
+			return;
+		}
+		int count = dragCount;
+		dragCount = 0;
+		double lastX = dragPoints[count - 2];
+		double lastY = dragPoints[count - 1];
+		if (zoomLevel != 0) {
+			pan(lastX, lastY);
+			return;
+		}
+		if (commandLog != null) {
+			for (int point = 0; point < count; point += 2) {
+				commandLog.addPoint(dragPoints[point], dragPoints[point + 1]);
+			}
+		}
 		try {
 			if (currentTool instanceof Select) {
-				gc.drawImage(currentTool.moveSelected(gc, event.getX(), event.getY()).snapshot(null, null), 0, 0);
+				currentTool.moveSelected(gc, lastX, lastY);
 			} else if (currentTool != null) {
-				currentTool.drawDragged(this, event.getX(), event.getY());
+				currentTool.drawDragged(this, dragPoints, count);
 
 			} else {
 				// Continue drawing as the mouse is dragged
-				gc.lineTo(event.getX(), event.getY());
+				for (int point = 0; point < count; point += 2) {
+					gc.lineTo(dragPoints[point], dragPoints[point + 1]);
+					markFreehand(dragPoints[point], dragPoints[point + 1]);
+				}
 				gc.stroke();
 			}
 		} catch (Exception e) {
 		}
-		hasChanges = true;
 	}
 
 	/**
@@ -171,12 +408,1059 @@ public class DrawingCanvas extends Canvas implements Serializable {
 	 * @param event contains info about where the mouse was released
 	 */
 	private void handleMouseReleased(MouseEvent event) {
+		// Draw the points still queued before the operation ends
+		flushDrags();
+		if (zoomLevel != 0) {
+			return;
+		}
 		try {
-			if (currentTool instanceof Select) {
-				gc.drawImage(currentTool.mouseReleased(gc, event.getX(), event.getY()).snapshot(null, null), 0, 0);
+			// Select drops the selection here, and brushes draw the end of the stroke
+			if (currentTool != null) {
+				currentTool.mouseReleased(gc, event.getX(), event.getY());
 			}
 		} catch (Exception e) {
 		}
+
+		// Record the operation only if it changed any pixels
+		Rectangle2D region = currentTool == null ? null : currentTool.takeDirtyRegion();
+		if (freehandRegion != null) {
+			region = region == null ? freehandRegion : union(region, freehandRegion);
+			freehandRegion = null;
+		}
+		boolean changed = region != null || writtenLeft < writtenRight;
+		// Bring the drawing up to date first, since the command log reads it
+		recordOperation(region);
+		if (commandLog != null) {
+			commandLog.end(this, changed);
+		}
+	}
+
+	/**
+	 * Adds the area a stroke drawn without a tool can reach through a point to
+	 * the freehand region, padded by a pixel for antialiasing.
+	 */
+	private void markFreehand(double x, double y) {
+		double reach = DrawingTool.strokeReach(gc) + 1;
+		Rectangle2D point = new Rectangle2D(Math.floor(x - reach), Math.floor(y - reach),
+				Math.ceil(2 * reach) + 1, Math.ceil(2 * reach) + 1);
+		freehandRegion = freehandRegion == null ? point : union(freehandRegion, point);
+	}
+
+	/**
+	 * Scrolls the viewport over the drawing with the mouse wheel, or zooms it
+	 * around the mouse while Ctrl is held.
+	 *
+	 * @param event The ScrollEvent containing how far the wheel was turned.
+	 */
+	private void handleScroll(ScrollEvent event) {
+		if (event.isControlDown()) {
+			if (event.getDeltaY() != 0) {
+				setZoomLevel(zoomLevel + (event.getDeltaY() > 0 ? 1 : -1), event.getX(), event.getY());
+			}
+			return;
+		}
+		scrollTo(viewX - (int) (event.getDeltaX() / getZoom()), viewY - (int) (event.getDeltaY() / getZoom()));
+	}
+
+	/**
+	 * Pans a zoomed view with the mouse, by whole pixels of what is shown.
+	 */
+	private void pan(double x, double y) {
+		int dx = zoomLevel < 0 ? (int) (x - panX) << -zoomLevel : (int) ((x - panX) / getZoom());
+		int dy = zoomLevel < 0 ? (int) (y - panY) << -zoomLevel : (int) ((y - panY) / getZoom());
+		panX += dx * getZoom();
+		panY += dy * getZoom();
+		scrollTo(viewX - dx, viewY - dy);
+	}
+
+	/**
+	 * Moves the viewport to a position on the drawing, keeping it inside the
+	 * drawing. Zoomed out, the position is rounded to the pixels shown.
+	 *
+	 * @param x The x-coordinate on the drawing to show at the left of the canvas.
+	 * @param y The y-coordinate on the drawing to show at the top of the canvas.
+	 */
+	public void scrollTo(int x, int y) {
+		int oldX = viewX;
+		int oldY = viewY;
+		viewX = x;
+		viewY = y;
+		clampViewport();
+		if (viewX == oldX && viewY == oldY) {
+			return;
+		}
+		render(viewX, viewY, document.getWidth() - viewX, document.getHeight() - viewY);
+		updateEffect();
+		if (commandLog != null && zoomLevel == 0) {
+			// The commands were recorded against what the canvas showed before
+			restartCommandLog();
+		}
+	}
+
+	/**
+	 * Records a change the current tool made outside of the mouse events, like
+	 * the text tool does when text is entered.
+	 */
+	private void handleToolChanged() {
+		Rectangle2D region = currentTool == null ? null : currentTool.takeDirtyRegion();
+		if (region != null) {
+			recordChange(region.getMinX(), region.getMinY(), region.getWidth(), region.getHeight());
+		}
+	}
+
+	/**
+	 * Records a change made to the canvas by something other than the drawing
+	 * tools, such as the text tool, so it can be undone.
+	 *
+	 * @param x      The x-coordinate of the changed area.
+	 * @param y      The y-coordinate of the changed area.
+	 * @param width  The width of the changed area.
+	 * @param height The height of the changed area.
+	 */
+	public void recordChange(double x, double y, double width, double height) {
+		if (zoomLevel != 0) {
+			// The canvas does not hold the drawing pixel for pixel; drop what was drawn
+			render(viewX, viewY, document.getWidth() - viewX, document.getHeight() - viewY);
+			return;
+		}
+		recordOperation(new Rectangle2D(x, y, width, height));
+		if (commandLog != null) {
+			commandLog.recordChange(this);
+		}
+	}
+
+	/**
+	 * Records everything an operation changed: an area drawn on the canvas, and
+	 * the pixels written into the drawing directly.
+	 *
+	 * @param region The area drawn on the canvas, or null if none.
+	 */
+	private void recordOperation(Rectangle2D region) {
+		Rectangle2D changed = null;
+		if (region != null) {
+			captureChange(region);
+			changed = toDocument(region);
+		}
+		if (writtenLeft < writtenRight) {
+			if (commandLog == null) {
+				if (undoRedoManager.addNewAction(document, writtenLeft, writtenTop, writtenRight - writtenLeft,
+						writtenBottom - writtenTop)) {
+					recordHistory(undoRedoManager);
+				}
+			}
+			Rectangle2D written = new Rectangle2D(writtenLeft, writtenTop, writtenRight - writtenLeft,
+					writtenBottom - writtenTop);
+			changed = changed == null ? written : union(changed, written);
+			writtenLeft = writtenTop = Integer.MAX_VALUE;
+			writtenRight = writtenBottom = Integer.MIN_VALUE;
+		}
+		if (changed != null) {
+			hasChanges = true;
+			changeCount++;
+			notifyChanged(changed);
+		}
+	}
+
+	/**
+	 * Notes that undo histories recorded an action, which is then the first to be
+	 * undone.
+	 */
+	private void recordHistory(UndoRedoManager... histories) {
+		settleCaptures(true);
+		undoOrder.push(histories);
+		redoOrder.clear();
+	}
+
+	/**
+	 * Records the histories of the pending captures that recorded an action, in
+	 * the order they were captured. A capture that found no changed pixels
+	 * leaves the undo and redo orders as they were.
+	 *
+	 * @param wait Whether to wait for the captures still running, or to stop at
+	 *             the first of them.
+	 */
+	private void settleCaptures(boolean wait) {
+		while (!pendingCaptures.isEmpty() && (wait || pendingCaptures.peek().isDone())) {
+			Future<Boolean> capture = pendingCaptures.poll();
+			UndoRedoManager history = pendingHistories.poll();
+			try {
+				if (capture.get()) {
+					undoOrder.push(new UndoRedoManager[] { history });
+					redoOrder.clear();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest rectangle holding two rectangles.
+	 */
+	private static Rectangle2D union(Rectangle2D a, Rectangle2D b) {
+		double minX = Math.min(a.getMinX(), b.getMinX());
+		double minY = Math.min(a.getMinY(), b.getMinY());
+		return new Rectangle2D(minX, minY, Math.max(a.getMaxX(), b.getMaxX()) - minX,
+				Math.max(a.getMaxY(), b.getMaxY()) - minY);
+	}
+
+	/**
+	 * Reads pixels of the canvas from the drawing in memory.
+	 *
+	 * @param x            The x-coordinate of the area on the canvas.
+	 * @param y            The y-coordinate of the area on the canvas.
+	 * @param regionWidth  The width of the area, which must lie on the canvas.
+	 * @param regionHeight The height of the area.
+	 * @param pixels       Receives the pixels as ARGB ints.
+	 * @param offset       The index of the first pixel to receive.
+	 * @param stride       The distance between two rows in the pixels.
+	 */
+	public void readPixels(int x, int y, int regionWidth, int regionHeight, int[] pixels, int offset, int stride) {
+		if (replaying) {
+			// Commands being replayed read what the canvas shows
+			snapshotRegion(x, y, regionWidth, regionHeight).getPixelReader().getPixels(0, 0, regionWidth,
+					regionHeight, PixelFormat.getIntArgbInstance(), pixels, offset, stride);
+			return;
+		}
+		document.getPixels(viewX + x, viewY + y, regionWidth, regionHeight, pixels, offset, stride);
+	}
+
+	/**
+	 * Writes pixels into the drawing and shows them on the canvas. The change is
+	 * recorded with the operation that wrote them.
+	 *
+	 * @param x            The x-coordinate of the area on the canvas.
+	 * @param y            The y-coordinate of the area on the canvas.
+	 * @param regionWidth  The width of the area, which must lie on the canvas.
+	 * @param regionHeight The height of the area.
+	 * @param pixels       The pixels as ARGB ints.
+	 * @param offset       The index of the first pixel to write.
+	 * @param stride       The distance between two rows in the pixels.
+	 */
+	public void writePixels(int x, int y, int regionWidth, int regionHeight, int[] pixels, int offset, int stride) {
+		gc.getPixelWriter().setPixels(x, y, regionWidth, regionHeight, PixelFormat.getIntArgbInstance(), pixels,
+				offset, stride);
+		if (replaying) {
+			return;
+		}
+		document.setPixels(viewX + x, viewY + y, regionWidth, regionHeight, pixels, offset, stride);
+		writtenLeft = Math.min(writtenLeft, viewX + x);
+		writtenTop = Math.min(writtenTop, viewY + y);
+		writtenRight = Math.max(writtenRight, viewX + x + regionWidth);
+		writtenBottom = Math.max(writtenBottom, viewY + y + regionHeight);
+	}
+
+	/**
+	 * Returns whether tools can work on the whole drawing of the active layer
+	 * through getDocumentLayer and documentWritten, rather than on the part
+	 * the canvas shows. They cannot while the command log records undo, since
+	 * its commands replay onto the canvas only, or while the view is zoomed.
+	 *
+	 * @return true if the whole drawing can be read and written.
+	 */
+	public boolean isDocumentWritable() {
+		return commandLog == null && !replaying && zoomLevel == 0;
+	}
+
+	/**
+	 * Returns the active layer, for a tool to change anywhere on the drawing in
+	 * place. The tool must report the area it changed with documentWritten.
+	 *
+	 * @return The image of the active layer.
+	 */
+	public TiledImage getDocumentLayer() {
+		return document;
+	}
+
+	/**
+	 * Reports an area of the active layer a tool changed in place and shows the
+	 * part of it the canvas covers. Like writePixels, the change is recorded with
+	 * the operation that wrote it.
+	 *
+	 * @param x            The x-coordinate of the area on the drawing.
+	 * @param y            The y-coordinate of the area on the drawing.
+	 * @param regionWidth  The width of the area, which must lie on the drawing.
+	 * @param regionHeight The height of the area.
+	 */
+	public void documentWritten(int x, int y, int regionWidth, int regionHeight) {
+		writtenLeft = Math.min(writtenLeft, x);
+		writtenTop = Math.min(writtenTop, y);
+		writtenRight = Math.max(writtenRight, x + regionWidth);
+		writtenBottom = Math.max(writtenBottom, y + regionHeight);
+		render(x, y, regionWidth, regionHeight);
+	}
+
+	/**
+	 * Copies the pixels of a changed area of the canvas into the drawing and hands
+	 * them to the undo history, unless undo replays commands.
+	 *
+	 * @param region The changed area, in the coordinates of the canvas.
+	 */
+	private void captureChange(Rectangle2D region) {
+		// Clip the area to the canvas
+		int left = Math.max(0, (int) Math.floor(region.getMinX()));
+		int top = Math.max(0, (int) Math.floor(region.getMinY()));
+		int right = Math.min((int) getWidth(), (int) Math.ceil(region.getMaxX()));
+		int bottom = Math.min((int) getHeight(), (int) Math.ceil(region.getMaxY()));
+		if (left >= right || top >= bottom) {
+			return;
+		}
+
+		int regionWidth = right - left;
+		int regionHeight = bottom - top;
+		WritableImage image = snapshotRegion(left, top, regionWidth, regionHeight);
+		int[] pixels = new int[regionWidth * regionHeight];
+		image.getPixelReader().getPixels(0, 0, regionWidth, regionHeight, PixelFormat.getIntArgbInstance(), pixels, 0,
+				regionWidth);
+		document.setPixels(viewX + left, viewY + top, regionWidth, regionHeight, pixels, 0, regionWidth);
+		if (commandLog == null) {
+			// The history is recorded once the capture is known to have changed it
+			pendingCaptures.add(undoRedoManager.addNewAction(image, viewX + left, viewY + top));
+			pendingHistories.add(undoRedoManager);
+			settleCaptures(false);
+		}
+	}
+
+	/**
+	 * Draws part of the drawing onto the canvas at the current zoom, clipped to
+	 * the viewport.
+	 *
+	 * @param x            The x-coordinate of the area on the drawing.
+	 * @param y            The y-coordinate of the area on the drawing.
+	 * @param regionWidth  The width of the area.
+	 * @param regionHeight The height of the area.
+	 */
+	private void render(int x, int y, int regionWidth, int regionHeight) {
+		// The area on the canvas, rounded out to whole pixels of the canvas
+		int left;
+		int top;
+		int right;
+		int bottom;
+		if (zoomLevel < 0) {
+			int round = (1 << -zoomLevel) - 1;
+			left = (x - viewX) >> -zoomLevel;
+			top = (y - viewY) >> -zoomLevel;
+			right = (x + regionWidth - viewX + round) >> -zoomLevel;
+			bottom = (y + regionHeight - viewY + round) >> -zoomLevel;
+		} else {
+			left = (x - viewX) << zoomLevel;
+			top = (y - viewY) << zoomLevel;
+			right = (x + regionWidth - viewX) << zoomLevel;
+			bottom = (y + regionHeight - viewY) << zoomLevel;
+		}
+		left = Math.max(0, left);
+		top = Math.max(0, top);
+		right = Math.min((int) getWidth(), right);
+		bottom = Math.min((int) getHeight(), bottom);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+
+		int areaWidth = right - left;
+		int areaHeight = bottom - top;
+		int[] pixels = new int[areaWidth * areaHeight];
+		if (zoomLevel == 0) {
+			document.getPixels(viewX + left, viewY + top, areaWidth, areaHeight, pixels, 0, areaWidth);
+		} else if (zoomLevel < 0) {
+			TiledImage composite = layers.getComposite();
+			if (pyramid == null || !pyramid.isFor(composite)) {
+				pyramid = new MipmapPyramid(composite);
+			}
+			pyramid.getPixels(-zoomLevel, (viewX >> -zoomLevel) + left, (viewY >> -zoomLevel) + top, areaWidth,
+					areaHeight, pixels, 0, areaWidth);
+		} else {
+			magnify(left, top, areaWidth, areaHeight, pixels);
+		}
+		gc.getPixelWriter().setPixels(left, top, areaWidth, areaHeight, PixelFormat.getIntArgbInstance(), pixels, 0,
+				areaWidth);
+	}
+
+	/**
+	 * Reads an area of the canvas zoomed in, each pixel of the drawing repeated
+	 * over a square of the canvas.
+	 */
+	private void magnify(int left, int top, int areaWidth, int areaHeight, int[] pixels) {
+		int sourceLeft = left >> zoomLevel;
+		int sourceTop = top >> zoomLevel;
+		int sourceWidth = ((left + areaWidth - 1) >> zoomLevel) - sourceLeft + 1;
+		int sourceHeight = ((top + areaHeight - 1) >> zoomLevel) - sourceTop + 1;
+		int[] source = new int[sourceWidth * sourceHeight];
+		layers.getComposite().getPixels(viewX + sourceLeft, viewY + sourceTop, sourceWidth, sourceHeight, source, 0,
+				sourceWidth);
+		for (int row = 0; row < areaHeight; row++) {
+			int sourceRow = (((top + row) >> zoomLevel) - sourceTop) * sourceWidth - sourceLeft;
+			for (int column = 0; column < areaWidth; column++) {
+				pixels[row * areaWidth + column] = source[sourceRow + ((left + column) >> zoomLevel)];
+			}
+		}
+	}
+
+	/**
+	 * Sizes the canvas to the drawing at the current zoom, up to the largest
+	 * viewport, and draws the viewport anew.
+	 */
+	private void fitViewport() {
+		setWidth(Math.min(getZoomedWidth(), maxViewWidth));
+		setHeight(Math.min(getZoomedHeight(), maxViewHeight));
+		clampViewport();
+		render(viewX, viewY, document.getWidth() - viewX, document.getHeight() - viewY);
+		updateEffect();
+	}
+
+	/**
+	 * Shows the layers under and over the active one around the canvas, which
+	 * holds only the pixels of the active layer at the actual size. Zoomed, or
+	 * with a single plain layer, the canvas shows the composite itself. Layers
+	 * over the active one are flattened together, so their own blend modes only
+	 * apply among themselves until the view is zoomed.
+	 */
+	private void updateEffect() {
+		if (zoomLevel != 0 || layers.isPlain()) {
+			setEffect(null);
+			return;
+		}
+		Blend layer = new Blend(layers.getBlendMode(activeLayer), viewportImage(0, activeLayer), null);
+		layer.setOpacity(layers.isVisible(activeLayer) ? layers.getOpacity(activeLayer) : 0);
+		setEffect(new Blend(BlendMode.SRC_OVER, layer, viewportImage(activeLayer + 1, layers.size())));
+	}
+
+	/**
+	 * Composites a range of layers over the viewport into an image input.
+	 */
+	private ImageInput viewportImage(int from, int to) {
+		int viewWidth = (int) getWidth();
+		int viewHeight = (int) getHeight();
+		int[] pixels = new int[viewWidth * viewHeight];
+		layers.composite(from, to, viewX, viewY, viewWidth, viewHeight, pixels);
+		WritableImage image = new WritableImage(viewWidth, viewHeight);
+		image.getPixelWriter().setPixels(0, 0, viewWidth, viewHeight, PixelFormat.getIntArgbInstance(), pixels, 0,
+				viewWidth);
+		return new ImageInput(image);
+	}
+
+	/**
+	 * Keeps the viewport inside the drawing. Zoomed out, it is also moved onto
+	 * the pixels of the pyramid level shown.
+	 */
+	private void clampViewport() {
+		if (zoomLevel < 0) {
+			int shift = -zoomLevel;
+			viewX = Math.max(0, Math.min(viewX >> shift, getZoomedWidth() - (int) getWidth())) << shift;
+			viewY = Math.max(0, Math.min(viewY >> shift, getZoomedHeight() - (int) getHeight())) << shift;
+		} else {
+			int visibleWidth = ((int) getWidth() + (1 << zoomLevel) - 1) >> zoomLevel;
+			int visibleHeight = ((int) getHeight() + (1 << zoomLevel) - 1) >> zoomLevel;
+			viewX = Math.max(0, Math.min(viewX, document.getWidth() - visibleWidth));
+			viewY = Math.max(0, Math.min(viewY, document.getHeight() - visibleHeight));
+		}
+	}
+
+	/**
+	 * Returns the width of the whole drawing at the current zoom.
+	 */
+	private int getZoomedWidth() {
+		return zoomLevel < 0 ? (document.getWidth() + (1 << -zoomLevel) - 1) >> -zoomLevel
+				: document.getWidth() << zoomLevel;
+	}
+
+	/**
+	 * Returns the height of the whole drawing at the current zoom.
+	 */
+	private int getZoomedHeight() {
+		return zoomLevel < 0 ? (document.getHeight() + (1 << -zoomLevel) - 1) >> -zoomLevel
+				: document.getHeight() << zoomLevel;
+	}
+
+	/**
+	 * Zooms the view, keeping the point of the drawing under an anchor on the
+	 * canvas where it is. The canvas is resized to the zoomed drawing, up to the
+	 * largest viewport.
+	 *
+	 * @param level   The new zoom level, clamped to MIN_ZOOM_LEVEL and
+	 *                MAX_ZOOM_LEVEL.
+	 * @param anchorX The x-coordinate of the anchor on the canvas.
+	 * @param anchorY The y-coordinate of the anchor on the canvas.
+	 */
+	public void setZoomLevel(int level, double anchorX, double anchorY) {
+		level = Math.max(MIN_ZOOM_LEVEL, Math.min(MAX_ZOOM_LEVEL, level));
+		if (level == zoomLevel) {
+			return;
+		}
+		if (zoomLevel == 0) {
+			logViewX = viewX;
+			logViewY = viewY;
+		}
+
+		double documentX = viewX + anchorX / getZoom();
+		double documentY = viewY + anchorY / getZoom();
+		zoomLevel = level;
+		viewX = (int) Math.round(documentX - anchorX / getZoom());
+		viewY = (int) Math.round(documentY - anchorY / getZoom());
+		fitViewport();
+
+		if (zoomLevel == 0) {
+			if (commandLog != null && (logStale || viewX != logViewX || viewY != logViewY)) {
+				// The commands were recorded against what the canvas showed before
+				restartCommandLog();
+			}
+			logStale = false;
+		}
+	}
+
+	/**
+	 * Returns the zoom level, the power of two the drawing is scaled by.
+	 *
+	 * @return The zoom level, 0 at the actual size.
+	 */
+	public int getZoomLevel() {
+		return zoomLevel;
+	}
+
+	/**
+	 * Returns the scale the drawing is shown at.
+	 *
+	 * @return The zoom, 1 at the actual size.
+	 */
+	public double getZoom() {
+		return Math.scalb(1.0, zoomLevel);
+	}
+
+	/**
+	 * Converts an area of the canvas to the coordinates of the drawing.
+	 */
+	private Rectangle2D toDocument(Rectangle2D region) {
+		return new Rectangle2D(region.getMinX() + viewX, region.getMinY() + viewY, region.getWidth(),
+				region.getHeight());
+	}
+
+	/**
+	 * Replaces the whole drawing, resizing the canvas to it. The drawing becomes
+	 * a single layer, which keeps the undo history of the active layer. The
+	 * change can be undone and counts as unsaved.
+	 *
+	 * @param newDocument The new drawing. It belongs to the canvas afterwards.
+	 */
+	public void replaceDocument(TiledImage newDocument) {
+		if (layers.size() > 1) {
+			layers.keepOnly(activeLayer);
+			activeLayer = 0;
+		}
+		layers.setImage(0, newDocument);
+		document = newDocument;
+		recordLayersReplaced();
+	}
+
+	/**
+	 * Records that the pixels of every layer were replaced, such as by a resize:
+	 * the canvas is fitted to them, and the change can be undone and counts as
+	 * unsaved.
+	 */
+	private void recordLayersReplaced() {
+		pyramid = null;
+		notifyChanged(new Rectangle2D(0, 0, document.getWidth(), document.getHeight()));
+		fitViewport();
+		if (commandLog != null) {
+			if (zoomLevel == 0) {
+				commandLog.recordChange(this);
+			} else {
+				logStale = true;
+			}
+		} else {
+			recordAllLayers();
+		}
+		hasChanges = true;
+		changeCount++;
+	}
+
+	/**
+	 * Hands the current pixels of every layer to its undo history, as one action
+	 * that undoes them together.
+	 */
+	private void recordAllLayers() {
+		List<UndoRedoManager> histories = new ArrayList<>();
+		for (int index = 0; index < layers.size(); index++) {
+			if (layers.getHistory(index).addNewAction(layers.getImage(index))) {
+				histories.add(layers.getHistory(index));
+			}
+		}
+		if (!histories.isEmpty()) {
+			recordHistory(histories.toArray(new UndoRedoManager[0]));
+		}
+	}
+
+	/**
+	 * Erases the active layer to transparency. The change can be undone and
+	 * counts as unsaved.
+	 */
+	public void clearLayer() {
+		document.fill(0, 0, document.getWidth(), document.getHeight(), 0);
+		notifyChanged(new Rectangle2D(0, 0, document.getWidth(), document.getHeight()));
+		render(viewX, viewY, document.getWidth() - viewX, document.getHeight() - viewY);
+		if (commandLog != null) {
+			if (zoomLevel == 0) {
+				commandLog.recordChange(this);
+			} else {
+				logStale = true;
+			}
+		} else {
+			if (undoRedoManager.addNewAction(document)) {
+				recordHistory(undoRedoManager);
+			}
+		}
+		hasChanges = true;
+		changeCount++;
+	}
+
+	/**
+	 * Changes the size of the drawing, keeping what is drawn on it and the undo
+	 * history. Only the tiles at the edges that move are touched, and the resize
+	 * can be undone like any other change. Every layer is resized; the area
+	 * added is filled on the bottom layer and transparent on the others.
+	 *
+	 * @param newWidth  The new width of the drawing.
+	 * @param newHeight The new height of the drawing.
+	 * @param anchor    The part of the drawing that stays in place, such as
+	 *                  Pos.TOP_LEFT to add or remove space at the right and
+	 *                  bottom, or Pos.CENTER to do so evenly on all sides.
+	 * @param fill      The color of the area added to the drawing.
+	 */
+	public void resizeDocument(int newWidth, int newHeight, Pos anchor, Color fill) {
+		int x = offset(document.getWidth(), newWidth, anchor.getHpos() == HPos.LEFT, anchor.getHpos() == HPos.CENTER);
+		int y = offset(document.getHeight(), newHeight, anchor.getVpos() == VPos.TOP,
+				anchor.getVpos() == VPos.CENTER);
+		int color = (int) Math.round(fill.getOpacity() * 255) << 24 | (int) Math.round(fill.getRed() * 255) << 16
+				| (int) Math.round(fill.getGreen() * 255) << 8 | (int) Math.round(fill.getBlue() * 255);
+
+		// Keep the part of the drawing that was shown in view
+		viewX += x;
+		viewY += y;
+		for (int index = 0; index < layers.size(); index++) {
+			layers.setImage(index, layers.getImage(index).resized(newWidth, newHeight, x, y, index == 0 ? color : 0));
+		}
+		document = layers.getImage(activeLayer);
+		recordLayersReplaced();
+	}
+
+	/**
+	 * Returns where the old edge of the drawing goes when it is resized along one
+	 * side.
+	 *
+	 * @param oldSize The old width or height.
+	 * @param newSize The new width or height.
+	 * @param start   Whether the left or top edge stays in place.
+	 * @param center  Whether the center stays in place. The right or bottom edge
+	 *                does when neither does.
+	 */
+	private static int offset(int oldSize, int newSize, boolean start, boolean center) {
+		if (start) {
+			return 0;
+		}
+		return center ? (newSize - oldSize) / 2 : newSize - oldSize;
+	}
+
+	/**
+	 * Returns the whole drawing, the composite of its visible layers. It must
+	 * only be read, and only on the JavaFX thread; TiledImage.copy gives a copy
+	 * to hand to other threads.
+	 *
+	 * @return The drawing.
+	 */
+	public TiledImage getDocument() {
+		return layers.getComposite();
+	}
+
+	/**
+	 * Returns the number of layers of the drawing.
+	 *
+	 * @return The number of layers, at least 1.
+	 */
+	public int getLayerCount() {
+		return layers.size();
+	}
+
+	/**
+	 * Returns the position of the layer the tools draw on.
+	 *
+	 * @return The position of the active layer, 0 for the bottom.
+	 */
+	public int getActiveLayer() {
+		return activeLayer;
+	}
+
+	/**
+	 * Returns the name of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The name of the layer.
+	 */
+	public String getLayerName(int index) {
+		return layers.getName(index);
+	}
+
+	/**
+	 * Makes the tools draw on another layer.
+	 *
+	 * @param index The position of the layer.
+	 */
+	public void setActiveLayer(int index) {
+		if (index == activeLayer || index < 0 || index >= layers.size()) {
+			return;
+		}
+		activeLayer = index;
+		layersChanged(false);
+	}
+
+	/**
+	 * Adds a transparent layer over the active one and makes it active.
+	 */
+	public void addLayer() {
+		layersAdded++;
+		layers.addLayer(activeLayer + 1, new TiledImage(document.getWidth(), document.getHeight(), 0),
+				"Layer " + layersAdded);
+		activeLayer++;
+		layersChanged(false);
+	}
+
+	/**
+	 * Removes the active layer, unless it is the only one. The layer under it
+	 * becomes active. Removing a layer cannot be undone.
+	 */
+	public void removeLayer() {
+		if (layers.size() == 1) {
+			return;
+		}
+		layers.removeLayer(activeLayer);
+		activeLayer = Math.max(0, activeLayer - 1);
+		layersChanged(true);
+	}
+
+	/**
+	 * Moves the active layer up or down the stack.
+	 *
+	 * @param offset The number of positions to move it up, negative for down.
+	 */
+	public void moveLayer(int offset) {
+		int to = Math.max(0, Math.min(layers.size() - 1, activeLayer + offset));
+		if (to == activeLayer) {
+			return;
+		}
+		layers.moveLayer(activeLayer, to);
+		activeLayer = to;
+		layersChanged(true);
+	}
+
+	/**
+	 * Returns the opacity of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The opacity, from 0 to 1.
+	 */
+	public double getLayerOpacity(int index) {
+		return layers.getOpacity(index);
+	}
+
+	/**
+	 * Sets the opacity of the active layer.
+	 *
+	 * @param opacity The opacity, from 0 to 1.
+	 */
+	public void setLayerOpacity(double opacity) {
+		layers.setOpacity(activeLayer, opacity);
+		layersChanged(true);
+	}
+
+	/**
+	 * Returns the blend mode of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The blend mode.
+	 */
+	public BlendMode getLayerBlendMode(int index) {
+		return layers.getBlendMode(index);
+	}
+
+	/**
+	 * Sets how the active layer is blended with the layers under it.
+	 *
+	 * @param blendMode One of LayerStack.BLEND_MODES.
+	 */
+	public void setLayerBlendMode(BlendMode blendMode) {
+		layers.setBlendMode(activeLayer, blendMode);
+		layersChanged(true);
+	}
+
+	/**
+	 * Returns whether a layer is shown.
+	 *
+	 * @param index The position of the layer.
+	 * @return true if the layer is visible.
+	 */
+	public boolean isLayerVisible(int index) {
+		return layers.isVisible(index);
+	}
+
+	/**
+	 * Shows or hides the active layer.
+	 *
+	 * @param visible true to show the layer.
+	 */
+	public void setLayerVisible(boolean visible) {
+		layers.setVisible(activeLayer, visible);
+		layersChanged(true);
+	}
+
+	/**
+	 * Shows the layers again after they were added, removed, moved, or changed in
+	 * how they are shown, and points the tools at the active layer.
+	 *
+	 * @param compositeChanged Whether the flattened drawing changed.
+	 */
+	private void layersChanged(boolean compositeChanged) {
+		document = layers.getImage(activeLayer);
+		undoRedoManager = layers.getHistory(activeLayer);
+		if (compositeChanged) {
+			hasChanges = true;
+			changeCount++;
+			notifyChanged(new Rectangle2D(0, 0, document.getWidth(), document.getHeight()));
+		}
+		render(viewX, viewY, document.getWidth() - viewX, document.getHeight() - viewY);
+		updateEffect();
+		if (commandLog != null) {
+			// The commands were recorded against the pixels of another layer
+			if (zoomLevel == 0) {
+				restartCommandLog();
+			} else {
+				logStale = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the x-coordinate on the drawing shown at the left of the canvas.
+	 *
+	 * @return The x-coordinate of the viewport.
+	 */
+	public int getViewX() {
+		return viewX;
+	}
+
+	/**
+	 * Returns the y-coordinate on the drawing shown at the top of the canvas.
+	 *
+	 * @return The y-coordinate of the viewport.
+	 */
+	public int getViewY() {
+		return viewY;
+	}
+
+	/**
+	 * Adds a listener that is told about every area of the drawing that changed,
+	 * whether by drawing, undoing or loading. Each operation is reported once,
+	 * as the bounds of everything it changed, when it ends. The areas are given
+	 * in the coordinates of the drawing.
+	 *
+	 * @param changeListener The listener to add.
+	 */
+	public void addChangeListener(Consumer<Rectangle2D> changeListener) {
+		changeListeners.add(changeListener);
+	}
+
+	/**
+	 * Removes a listener added with addChangeListener.
+	 *
+	 * @param changeListener The listener to remove.
+	 */
+	public void removeChangeListener(Consumer<Rectangle2D> changeListener) {
+		changeListeners.remove(changeListener);
+	}
+
+	/**
+	 * Tells the change listeners about a changed area.
+	 */
+	private void notifyChanged(Rectangle2D region) {
+		if (region == null) {
+			return;
+		}
+		int left = (int) Math.floor(region.getMinX());
+		int top = (int) Math.floor(region.getMinY());
+		int right = (int) Math.ceil(region.getMaxX());
+		int bottom = (int) Math.ceil(region.getMaxY());
+		layers.invalidate(left, top, right - left, bottom - top);
+		if (pyramid != null) {
+			pyramid.invalidate(left, top, right - left, bottom - top);
+		}
+		for (Consumer<Rectangle2D> changeListener : changeListeners) {
+			changeListener.accept(region);
+		}
+	}
+
+	/**
+	 * Takes a snapshot of part of the canvas.
+	 *
+	 * @param x            The x-coordinate of the area on the canvas.
+	 * @param y            The y-coordinate of the area on the canvas.
+	 * @param regionWidth  The width of the area.
+	 * @param regionHeight The height of the area.
+	 * @return A new image holding the area.
+	 */
+	private WritableImage snapshotRegion(int x, int y, int regionWidth, int regionHeight) {
+		// The viewport is given in the coordinates of the parent
+		Bounds area = localToParent(new BoundingBox(x, y, regionWidth, regionHeight));
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+		parameters.setViewport(new Rectangle2D(area.getMinX(), area.getMinY(), regionWidth, regionHeight));
+		// Only the pixels of the active layer, not the layers shown around them
+		Effect effect = getEffect();
+		setEffect(null);
+		WritableImage image = snapshot(parameters, new WritableImage(regionWidth, regionHeight));
+		setEffect(effect);
+		return image;
+	}
+
+	/**
+	 * Undo the most recent action on the canvas. In the command log undo mode,
+	 * the tile history is undone once the command log has nothing left to undo.
+	 */
+	public void undo() {
+		if (commandLog != null) {
+			// Commands replay onto the canvas at the actual size
+			setZoomLevel(0, getWidth() / 2, getHeight() / 2);
+			if (!commandLog.canUndo()) {
+				if (moveHistory(undoOrder, redoOrder, true)) {
+					// The log starts from what the canvas shows now
+					commandLog = new CommandLog();
+					commandLog.start(this);
+				}
+				return;
+			}
+			replaying = true;
+			commandLog.undo(this);
+			replaying = false;
+			recordViewport();
+		} else {
+			moveHistory(undoOrder, redoOrder, true);
+		}
+	}
+
+	/**
+	 * Redo the previously undone action on the canvas. In the command log undo
+	 * mode, the tile history is redone only while the command log is empty, as
+	 * anything it recorded was drawn over what the tile history would redo.
+	 */
+	public void redo() {
+		if (commandLog != null) {
+			setZoomLevel(0, getWidth() / 2, getHeight() / 2);
+			if (commandLog.canRedo()) {
+				replaying = true;
+				commandLog.redo(this);
+				replaying = false;
+				recordViewport();
+			} else if (!commandLog.canUndo() && moveHistory(redoOrder, undoOrder, false)) {
+				commandLog = new CommandLog();
+				commandLog.start(this);
+			}
+		} else {
+			moveHistory(redoOrder, undoOrder, false);
+		}
+	}
+
+	/**
+	 * Undoes or redoes the most recent entry of one history order that still
+	 * changes something, and moves it to the other order. Entries of layers that
+	 * were removed are dropped.
+	 *
+	 * @return true if an entry was undone or redone, false if none changed
+	 *         anything.
+	 */
+	private boolean moveHistory(Deque<UndoRedoManager[]> from, Deque<UndoRedoManager[]> to, boolean undo) {
+		settleCaptures(true);
+		while (!from.isEmpty()) {
+			UndoRedoManager[] histories = from.pop();
+			Rectangle2D change = null;
+			for (UndoRedoManager history : histories) {
+				int index = layers.indexOf(history);
+				if (index >= 0 && (undo ? history.undo(layers.getImage(index)) : history.redo(layers.getImage(index)))) {
+					change = change == null ? history.getLastChange() : union(change, history.getLastChange());
+				}
+			}
+			if (change != null) {
+				to.push(histories);
+				showChange(change);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Draws an area of the drawing the undo history just changed, resizing the
+	 * canvas first if the size of the drawing changed.
+	 *
+	 * @param change The changed area, in the coordinates of the drawing.
+	 */
+	private void showChange(Rectangle2D change) {
+		// Listeners first, so the pyramid drops its stale tiles before rendering
+		notifyChanged(change);
+		if (Math.min(getZoomedWidth(), maxViewWidth) != (int) getWidth()
+				|| Math.min(getZoomedHeight(), maxViewHeight) != (int) getHeight()) {
+			fitViewport();
+		} else {
+			render((int) change.getMinX(), (int) change.getMinY(), (int) change.getWidth(), (int) change.getHeight());
+			if (!layers.isPlain()) {
+				// The change may be on a layer shown around the canvas
+				updateEffect();
+			}
+		}
+	}
+
+	/**
+	 * Copies the whole canvas into the drawing after the command log replayed
+	 * commands onto it.
+	 */
+	private void recordViewport() {
+		Rectangle2D viewport = new Rectangle2D(0, 0, getWidth(), getHeight());
+		captureChange(viewport);
+		notifyChanged(toDocument(viewport));
+	}
+
+	/**
+	 * Switches between undoing with the tile history of the UndoRedoManager and
+	 * undoing by replaying tool commands from a CommandLog. Turning the command
+	 * log off hands what it recorded to the tile history; turning it on keeps the
+	 * tile history to undo once the command log is exhausted.
+	 *
+	 * @param enabled true to record tool commands, false to record pixels.
+	 */
+	public void setCommandLogUndo(boolean enabled) {
+		if (enabled && commandLog == null) {
+			commandLog = new CommandLog();
+			commandLog.start(this);
+		} else if (!enabled && commandLog != null) {
+			// Catch the tile history up with everything the command log recorded
+			commandLog = null;
+			recordAllLayers();
+		}
+	}
+
+	/**
+	 * Starts the command log anew once the commands it recorded no longer match
+	 * what the canvas shows. Everything the old log recorded is first handed to
+	 * the tile history as one action, so it can still be undone.
+	 */
+	private void restartCommandLog() {
+		setCommandLogUndo(false);
+		setCommandLogUndo(true);
+	}
+
+	/**
+	 * Checks whether undo replays tool commands.
+	 *
+	 * @return true if the command log undo mode is on, false otherwise.
+	 */
+	public boolean isCommandLogUndo() {
+		return commandLog != null;
 	}
 
 	/**
@@ -185,7 +1469,13 @@ public class DrawingCanvas extends Canvas implements Serializable {
 	 * @param drawingTool Object of abstract DrawingTool class.
 	 */
 	public void setDrawingTool(DrawingTool drawingTool) {
+		if (currentTool != null && currentTool != drawingTool) {
+			currentTool.setChangeListener(null);
+		}
 		this.currentTool = drawingTool;
+		if (drawingTool != null) {
+			drawingTool.setChangeListener(this::handleToolChanged);
+		}
 	}
 
 	/**
@@ -238,6 +1528,15 @@ public class DrawingCanvas extends Canvas implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns the number of changes made to the canvas so far.
+	 * 
+	 * @return The change count, which grows with every recorded change.
+	 */
+	public int getChangeCount() {
+		return changeCount;
+	}
+
 	/**
 	 * Getter for the current drawing tool.
 	 * 
@@ -249,14 +1548,24 @@ public class DrawingCanvas extends Canvas implements Serializable {
 
 	/**
 	 * Loads a saved drawing from the specified file path and displays it on the
-	 * canvas.
+	 * canvas. Files with the ProjectFile extension are opened as projects.
 	 *
 	 * @param filePath The file path to the saved drawing that will be loaded onto
 	 *                 the canvas.
 	 */
 	public void loadCanvas(String filePath) {
+		if (filePath.endsWith(ProjectFile.EXTENSION)) {
+			try (ProjectFile project = ProjectFile.open(Paths.get(filePath))) {
+				loadProject(project);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
 		try {
 			// Load the image from the file
+			setZoomLevel(0, 0, 0);
 			Image loadedImage = new Image(new FileInputStream(filePath));
 
 			// Clear the current canvas
@@ -264,9 +1573,54 @@ public class DrawingCanvas extends Canvas implements Serializable {
 
 			// Draw the loaded image onto the canvas
 			this.getGraphicsContext2D().drawImage(loadedImage, 0, 0);
+			recordChange(0, 0, this.getWidth(), this.getHeight());
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Replaces the drawing with the given pixels, resizing the canvas to them. The
+	 * change can be undone and counts as unsaved.
+	 *
+	 * @param pixels The pixels of the drawing, row by row, as ARGB ints.
+	 * @param width  The width of the drawing.
+	 * @param height The height of the drawing.
+	 */
+	public void loadPixels(int[] pixels, int width, int height) {
+		TiledImage image = new TiledImage(width, height, 0);
+		image.setPixels(0, 0, width, height, pixels, 0, width);
+		replaceDocument(image);
+	}
+
+	/**
+	 * Loads a project onto the canvas, resizing the canvas to it. Tiles of a
+	 * single color are kept as a color, and the others are left to the file and
+	 * only decoded the first time they are used, such as when they are shown. The
+	 * tiles are read as stored now, so the project may be saved again or closed
+	 * afterwards.
+	 *
+	 * @param project The open project file.
+	 * @throws IOException If a tile cannot be read.
+	 */
+	public void loadProject(ProjectFile project) throws IOException {
+		TiledImage image = new TiledImage(project.getWidth(), project.getHeight(), 0);
+		TiledImage.TileSource tiles = project.getTiles();
+		int[] color = new int[ProjectFile.TILE_SIZE * ProjectFile.TILE_SIZE];
+		for (int tileY = 0; tileY < project.getTilesY(); tileY++) {
+			for (int tileX = 0; tileX < project.getTilesX(); tileX++) {
+				if (project.isUniform(tileX, tileY)) {
+					project.readTile(tileX, tileY, color);
+					image.fill(tileX * ProjectFile.TILE_SIZE, tileY * ProjectFile.TILE_SIZE,
+							project.getTileWidth(tileX), project.getTileHeight(tileY), color[0]);
+				} else {
+					image.setSource(tileX, tileY, tiles);
+				}
+			}
+		}
+
+		replaceDocument(image);
+		hasChanges = false;
+	}
+}
@@ -1,35 +1,50 @@
 package controller_view;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
-import javafx.scene.canvas.GraphicsContext;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ColorPicker;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.CustomMenuItem;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
+import javafx.scene.control.Toggle;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.effect.BlendMode;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.stage.Screen;
+import model.Autosave;
 import model.Brush;
 import model.Circle;
 import model.DrawingExplorer;
 import model.DrawingTool;
 import model.Eraser;
 import model.Fill;
+import model.LayerStack;
 import model.Rectangle;
+import model.RecoveryJournal;
 import model.Select;
 import model.SprayPaintBrush;
 import model.Square;
@@ -70,11 +85,15 @@ public class PaintCanvasGUI extends BorderPane {
 
 	private ColorPicker colorPicker = new ColorPicker();
 	private Slider brushSizeSlider = null;
+	private final Slider toleranceSlider = new Slider(0, 128, 0);
+	private final CheckMenuItem euclideanMenuItem = new CheckMenuItem("Color Distance");
+	private final Slider densitySlider = new Slider(10, 500, 100); // The particles the spray puts down per dab.
 	/**
 	 * The main drawing canvas where users can create and edit drawings.
 	 */
 	public DrawingCanvas drawingCanvas;
 	private DrawingExplorer drawingExplorer;
+	private Autosave autosave; // Journals the changes of the canvas for crash recovery.
 	private PaintGUI parentGUI;
 
 	/**
@@ -87,8 +106,13 @@ public class PaintCanvasGUI extends BorderPane {
 		parentGUI = parent;
 		
 		// Initialize the drawing canvas and the drawing
-		drawingCanvas = new DrawingCanvas(1280, 710);
+		// Drawings resized past the screen are scrolled in a viewport
+		Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+		drawingCanvas = new DrawingCanvas(1280, 710, screen.getWidth(), screen.getHeight() - 58);
 		drawingExplorer = new DrawingExplorer();
+		autosave = new Autosave(new RecoveryJournal(RecoveryJournal.defaultPath()));
+		autosave.attach(drawingCanvas);
+		autosave.setFailureListener(this::autosaveFailed);
 
 		// Initialize color picker and set default color
 		colorPicker.setValue(Color.BLACK); // Set the default color to black
@@ -109,11 +133,45 @@ public class PaintCanvasGUI extends BorderPane {
 	}
 
 	/**
-	 * Setup Undo/Redo filters
+	 * Setup Undo/Redo and zoom filters
 	 */
 	private void setupEventFilters() {
 		addUndoFilter();
 		addRedoFilter();
+		addZoomFilter();
+	}
+
+	/**
+	 * Adds an event filter for zooming in (Ctrl+=), zooming out (Ctrl+-) and
+	 * returning to the actual size (Ctrl+0).
+	 */
+	private void addZoomFilter() {
+		addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+			if (!event.isControlDown()) {
+				return;
+			}
+			if (event.getCode() == KeyCode.EQUALS || event.getCode() == KeyCode.PLUS || event.getCode() == KeyCode.ADD) {
+				zoomBy(1);
+				event.consume();
+			} else if (event.getCode() == KeyCode.MINUS || event.getCode() == KeyCode.SUBTRACT) {
+				zoomBy(-1);
+				event.consume();
+			} else if (event.getCode() == KeyCode.DIGIT0 || event.getCode() == KeyCode.NUMPAD0) {
+				zoomBy(-drawingCanvas.getZoomLevel());
+				event.consume();
+			}
+		});
+	}
+
+	/**
+	 * Zooms the canvas around its center.
+	 *
+	 * @param levels The number of times to double the zoom, negative to halve it.
+	 */
+	private void zoomBy(int levels) {
+		drawingCanvas.setZoomLevel(drawingCanvas.getZoomLevel() + levels, drawingCanvas.getWidth() / 2,
+				drawingCanvas.getHeight() / 2);
+		parentGUI.resizeWindow(drawingCanvas.getWidth(), drawingCanvas.getHeight());
 	}
 
 	/**
@@ -148,6 +206,7 @@ public class PaintCanvasGUI extends BorderPane {
 	public void setTopBar() {
 		createFileMenu(menuBar);
 		createViewMenu(menuBar);
+		createLayersMenu(menuBar);
 		createMenuItemUndo(menuBar);
 		createMenuItemRedo(menuBar);
 		createAdditionalComponents(secondMenuBar);
@@ -163,13 +222,22 @@ public class PaintCanvasGUI extends BorderPane {
 	private void createFileMenu(MenuBar menuBar) {
 		Menu fileMenu = new Menu("File");
 		MenuItem saveMenuItem = new MenuItem("Save");
+		MenuItem saveProjectMenuItem = new MenuItem("Save Project As");
+		MenuItem openProjectMenuItem = new MenuItem("Open Project");
 		MenuItem loadButton = new MenuItem("Load");
+		MenuItem exportMenuItem = new MenuItem("Export PNG");
 		fileMenu.getItems().add(saveMenuItem);
+		fileMenu.getItems().add(saveProjectMenuItem);
+		fileMenu.getItems().add(openProjectMenuItem);
 		fileMenu.getItems().add(loadButton);
+		fileMenu.getItems().add(exportMenuItem);
 		menuBar.getMenus().add(fileMenu);
 
 		saveMenuItem.setOnAction(event -> saveCanvas());
+		saveProjectMenuItem.setOnAction(event -> drawingExplorer.saveProjectAs(drawingCanvas));
+		openProjectMenuItem.setOnAction(event -> drawingExplorer.openProject(drawingCanvas));
 		loadButton.setOnAction(event -> loadCanvas());
+		exportMenuItem.setOnAction(event -> drawingExplorer.exportDrawing(drawingCanvas));
 	}
 
 	/**
@@ -180,24 +248,102 @@ public class PaintCanvasGUI extends BorderPane {
 	private void createViewMenu(MenuBar menuBar) {
 		Menu viewMenu = new Menu("View");
 		MenuItem clearCanvasMenuItem = new MenuItem("Clear");
+		CheckMenuItem commandLogMenuItem = new CheckMenuItem("Replay Undo");
+		MenuItem zoomInMenuItem = new MenuItem("Zoom In");
+		MenuItem zoomOutMenuItem = new MenuItem("Zoom Out");
+		MenuItem actualSizeMenuItem = new MenuItem("Actual Size");
 
 		clearCanvasMenuItem.setOnAction(e -> clearCanvas());
+		commandLogMenuItem.setOnAction(e -> drawingCanvas.setCommandLogUndo(commandLogMenuItem.isSelected()));
+		zoomInMenuItem.setOnAction(e -> zoomBy(1));
+		zoomOutMenuItem.setOnAction(e -> zoomBy(-1));
+		actualSizeMenuItem.setOnAction(e -> zoomBy(-drawingCanvas.getZoomLevel()));
 
-		viewMenu.getItems().add(clearCanvasMenuItem);
+		viewMenu.getItems().addAll(clearCanvasMenuItem, commandLogMenuItem, zoomInMenuItem, zoomOutMenuItem,
+				actualSizeMenuItem);
 		menuBar.getMenus().add(viewMenu);
 	}
 
 	/**
-	 * Clears canvas by overwriting the canvas
+	 * Clears canvas by erasing the active layer to transparency
 	 * 
 	 * @return null
 	 */
 	private EventHandler<ActionEvent> clearCanvas() {
-		GraphicsContext gc = drawingCanvas.getGraphicsContext2D();
-		gc.clearRect(0, 0, drawingCanvas.getWidth(), drawingCanvas.getHeight());
+		drawingCanvas.clearLayer();
 		return null;
 	}
 
+	/**
+	 * Creates the "Layers" menu and adds it to the menu bar. The list of layers
+	 * and the settings of the active one are filled in whenever the menu opens.
+	 *
+	 * @param menuBar The MenuBar to which the "Layers" menu will be added.
+	 */
+	private void createLayersMenu(MenuBar menuBar) {
+		Menu layersMenu = new Menu("Layers");
+		MenuItem newLayerMenuItem = new MenuItem("New Layer");
+		MenuItem deleteLayerMenuItem = new MenuItem("Delete Layer");
+		MenuItem moveUpMenuItem = new MenuItem("Move Layer Up");
+		MenuItem moveDownMenuItem = new MenuItem("Move Layer Down");
+		CheckMenuItem visibleMenuItem = new CheckMenuItem("Layer Visible");
+		Menu opacityMenu = new Menu("Opacity");
+		Menu blendModeMenu = new Menu("Blend Mode");
+
+		newLayerMenuItem.setOnAction(e -> drawingCanvas.addLayer());
+		deleteLayerMenuItem.setOnAction(e -> drawingCanvas.removeLayer());
+		moveUpMenuItem.setOnAction(e -> drawingCanvas.moveLayer(1));
+		moveDownMenuItem.setOnAction(e -> drawingCanvas.moveLayer(-1));
+		visibleMenuItem.setOnAction(e -> drawingCanvas.setLayerVisible(visibleMenuItem.isSelected()));
+
+		ToggleGroup opacityGroup = new ToggleGroup();
+		for (int percent = 100; percent > 0; percent -= 25) {
+			double opacity = percent / 100.0;
+			RadioMenuItem opacityMenuItem = new RadioMenuItem(percent + "%");
+			opacityMenuItem.setToggleGroup(opacityGroup);
+			opacityMenuItem.setUserData(opacity);
+			opacityMenuItem.setOnAction(e -> drawingCanvas.setLayerOpacity(opacity));
+			opacityMenu.getItems().add(opacityMenuItem);
+		}
+
+		ToggleGroup blendModeGroup = new ToggleGroup();
+		for (BlendMode blendMode : LayerStack.BLEND_MODES) {
+			RadioMenuItem blendModeMenuItem = new RadioMenuItem(blendMode == BlendMode.SRC_OVER ? "NORMAL"
+					: blendMode.name());
+			blendModeMenuItem.setToggleGroup(blendModeGroup);
+			blendModeMenuItem.setUserData(blendMode);
+			blendModeMenuItem.setOnAction(e -> drawingCanvas.setLayerBlendMode(blendMode));
+			blendModeMenu.getItems().add(blendModeMenuItem);
+		}
+
+		List<MenuItem> fixedItems = List.of(newLayerMenuItem, deleteLayerMenuItem, moveUpMenuItem,
+				moveDownMenuItem, visibleMenuItem, opacityMenu, blendModeMenu, new SeparatorMenuItem());
+		layersMenu.getItems().addAll(fixedItems);
+		layersMenu.setOnShowing(e -> {
+			int active = drawingCanvas.getActiveLayer();
+			visibleMenuItem.setSelected(drawingCanvas.isLayerVisible(active));
+			for (Toggle toggle : opacityGroup.getToggles()) {
+				toggle.setSelected((double) toggle.getUserData() == drawingCanvas.getLayerOpacity(active));
+			}
+			for (Toggle toggle : blendModeGroup.getToggles()) {
+				toggle.setSelected(toggle.getUserData() == drawingCanvas.getLayerBlendMode(active));
+			}
+
+			// One item per layer, the top layer first
+			layersMenu.getItems().setAll(fixedItems);
+			ToggleGroup layerGroup = new ToggleGroup();
+			for (int index = drawingCanvas.getLayerCount() - 1; index >= 0; index--) {
+				int layer = index;
+				RadioMenuItem layerMenuItem = new RadioMenuItem(drawingCanvas.getLayerName(layer));
+				layerMenuItem.setToggleGroup(layerGroup);
+				layerMenuItem.setSelected(layer == active);
+				layerMenuItem.setOnAction(event -> drawingCanvas.setActiveLayer(layer));
+				layersMenu.getItems().add(layerMenuItem);
+			}
+		});
+		menuBar.getMenus().add(layersMenu);
+	}
+
 	/**
 	 * Creates the "Undo" menu item and adds it to the provided menu.
 	 *
@@ -221,10 +367,7 @@ public class PaintCanvasGUI extends BorderPane {
 	 * Handles the undo action.
 	 */
 	private void undoAction() {
-		WritableImage image = drawingCanvas.undoRedoManager.undo(drawingCanvas.snapshot(null, null));
-		GraphicsContext gtx = drawingCanvas.getGraphicsContext2D();
-		gtx.drawImage(image, 0, 0);
-
+		drawingCanvas.undo();
 	}
 
 	/**
@@ -250,9 +393,7 @@ public class PaintCanvasGUI extends BorderPane {
 	 * Handles the redo action.
 	 */
 	private void redoAction() {
-		WritableImage image = drawingCanvas.undoRedoManager.redo(drawingCanvas.snapshot(null, null));
-		GraphicsContext gtx = drawingCanvas.getGraphicsContext2D();
-		gtx.drawImage(image, 0, 0);
+		drawingCanvas.redo();
 	}
 
 	/**
@@ -470,7 +611,18 @@ public class PaintCanvasGUI extends BorderPane {
 		MenuItem watercolorBrushItem = createBrushMenuItem("Watercolor", "/documents/watercolorBrush.png");
 		MenuItem sprayPaintBrushItem = createBrushMenuItem("Spray", "/documents/sprayPaintBrush.png");
 
-		brushMenu.getItems().addAll(defaultBrushItem, watercolorBrushItem, sprayPaintBrushItem);
+		// The density of the spray, set on it right away while it is the tool
+		Label densityLabel = new Label("Spray Density");
+		CustomMenuItem densityItem = new CustomMenuItem(new VBox(densityLabel, densitySlider));
+		densityItem.setHideOnClick(false);
+		densitySlider.valueProperty().addListener((observable, oldNum, newNum) -> {
+			if (drawingCanvas.getDrawingTool() instanceof SprayPaintBrush spray) {
+				spray.setDensity(newNum.intValue());
+			}
+		});
+
+		brushMenu.getItems().addAll(defaultBrushItem, watercolorBrushItem, sprayPaintBrushItem,
+				new SeparatorMenuItem(), densityItem);
 		return brushMenu;
 	}
 
@@ -536,7 +688,9 @@ public class PaintCanvasGUI extends BorderPane {
 			drawingCanvas.setDrawingTool(new WatercolorBrush(brushColor, brushSize));
 			break;
 		case "Spray":
-			drawingCanvas.setDrawingTool(new SprayPaintBrush(brushColor, brushSize));
+			SprayPaintBrush spray = new SprayPaintBrush(brushColor, brushSize);
+			spray.setDensity((int) densitySlider.getValue());
+			drawingCanvas.setDrawingTool(spray);
 			break;
 		default:
 			break;
@@ -563,6 +717,8 @@ public class PaintCanvasGUI extends BorderPane {
 		Color fillColor = colorPicker.getValue();
 		double fillSize = brushSizeSlider.getValue();
 		Fill fillTool = new Fill(fillColor, fillSize);
+		fillTool.setTolerance((int) toleranceSlider.getValue());
+		fillTool.setEuclideanTolerance(euclideanMenuItem.isSelected());
 		// Set the drawing tool to the fill tool
 		drawingCanvas.setDrawingTool(fillTool);
 		fillButton.setStyle("-fx-background-color: #ADD8E6");
@@ -596,11 +752,20 @@ public class PaintCanvasGUI extends BorderPane {
 
 		TextField heightField = new TextField();
 		TextField widthField = new TextField();
+		ComboBox<Pos> anchorBox = new ComboBox<>();
+		anchorBox.getItems().addAll(Pos.TOP_LEFT, Pos.TOP_CENTER, Pos.TOP_RIGHT, Pos.CENTER_LEFT, Pos.CENTER,
+				Pos.CENTER_RIGHT, Pos.BOTTOM_LEFT, Pos.BOTTOM_CENTER, Pos.BOTTOM_RIGHT);
+		anchorBox.setValue(Pos.TOP_LEFT);
+		ColorPicker fillPicker = new ColorPicker(Color.web("#f4f4f4"));
 
 		grid.add(new Label("Height:"), 0, 0);
 		grid.add(heightField, 1, 0);
 		grid.add(new Label("Width:"), 0, 1);
 		grid.add(widthField, 1, 1);
+		grid.add(new Label("Anchor:"), 0, 2);
+		grid.add(anchorBox, 1, 2);
+		grid.add(new Label("Fill:"), 0, 3);
+		grid.add(fillPicker, 1, 3);
 
 		inputPrompt.getDialogPane().setContent(grid);
 
@@ -615,7 +780,7 @@ public class PaintCanvasGUI extends BorderPane {
 				double newHeight = Double.parseDouble(heightField.getText());
 				double newWidth = Double.parseDouble(widthField.getText());
 
-				resizeCanvas(newWidth, newHeight);
+				resizeCanvas(newWidth, newHeight, anchorBox.getValue(), fillPicker.getValue());
 
 			} catch (NumberFormatException e) {
 				// Handle invalid input (non-numeric values)
@@ -625,26 +790,21 @@ public class PaintCanvasGUI extends BorderPane {
 	}
 
 	/**
-	 * Copies the canvas and contents of it onto a new properly sized canvas
-	 * before setting the new one as the one being used
-	 * @param width is the width in pixels of the canvas
-	 * @param height is the height in pixels of the canvas
+	 * Resizes the drawing in place, keeping its undo history and the current
+	 * tool. Drawings larger than the screen are shown in a viewport that is
+	 * scrolled with the mouse wheel.
+	 * @param width is the width in pixels of the drawing
+	 * @param height is the height in pixels of the drawing
+	 * @param anchor is the part of the drawing that stays in place
+	 * @param fill is the color of the area added to the drawing
 	 */
-	private void resizeCanvas(double width, double height) {
-		GraphicsContext gc = drawingCanvas.getGraphicsContext2D();
-
-		DrawingCanvas newCanvas = new DrawingCanvas(width, height);
-		GraphicsContext newGC = newCanvas.getGraphicsContext2D();
-
-		// Transfer content from old canvas to new canvas
-		newGC.drawImage(drawingCanvas.snapshot(null, null), 0, 0);
-
-		drawingCanvas = newCanvas;
-		gc = newGC;
-
-		setBottom(drawingCanvas);
-
-        parentGUI.resizeWindow(width, height);
+	private void resizeCanvas(double width, double height, Pos anchor, Color fill) {
+		if ((int) width <= 0 || (int) height <= 0) {
+			System.out.println("Invalid input. Please enter a positive width and height.");
+			return;
+		}
+		drawingCanvas.resizeDocument((int) width, (int) height, anchor, fill);
+		parentGUI.resizeWindow(drawingCanvas.getWidth(), drawingCanvas.getHeight());
 	}
 
 	/**
@@ -690,6 +850,8 @@ public class PaintCanvasGUI extends BorderPane {
 		Menu selectMenu = new Menu("", selectButton);
 		Menu resizeMenu = new Menu("", resizeButton);
 		Menu fillMenu = new Menu("", fillButton);
+		Menu toleranceMenu = createToleranceMenu();
+		Menu saveProgressMenu = createSaveProgressMenu();
 		Menu textMenu = new Menu("", textButton);
 		Menu brushMenu = createBrushesMenu();
 		Menu eraserMenu = new Menu("", eraserButton);
@@ -697,12 +859,53 @@ public class PaintCanvasGUI extends BorderPane {
 		Menu colorPickerMenu = new Menu("", colorPicker);
 		Menu brushSizeMenu = new Menu("", brushSizeSlider);
 
-		secondMenuBar.getMenus().addAll(selectMenu, fillMenu, textMenu, shapeMenu, brushMenu, eraserMenu,
-				colorPickerMenu, brushSizeMenu, resizeMenu);
+		secondMenuBar.getMenus().addAll(selectMenu, fillMenu, toleranceMenu, textMenu, shapeMenu, brushMenu, eraserMenu,
+				colorPickerMenu, brushSizeMenu, resizeMenu, saveProgressMenu);
 
 		initializeColorPicker();
 	}
 
+	/**
+	 * Creates the menu with the tolerance slider and distance option of the fill
+	 * tool.
+	 *
+	 * @return The created Menu.
+	 */
+	private Menu createToleranceMenu() {
+		Menu toleranceMenu = new Menu("Tolerance");
+		CustomMenuItem sliderItem = new CustomMenuItem(toleranceSlider);
+		sliderItem.setHideOnClick(false);
+
+		toleranceSlider.valueProperty().addListener((observable, oldNum, newNum) -> {
+			if (drawingCanvas.getDrawingTool() instanceof Fill fill) {
+				fill.setTolerance(newNum.intValue());
+			}
+		});
+		euclideanMenuItem.setOnAction(event -> {
+			if (drawingCanvas.getDrawingTool() instanceof Fill fill) {
+				fill.setEuclideanTolerance(euclideanMenuItem.isSelected());
+			}
+		});
+
+		toleranceMenu.getItems().addAll(sliderItem, euclideanMenuItem);
+		return toleranceMenu;
+	}
+
+	/**
+	 * Creates the menu showing the progress of a save, which is only visible while
+	 * a save is being written.
+	 *
+	 * @return The created Menu.
+	 */
+	private Menu createSaveProgressMenu() {
+		ProgressBar saveProgressBar = new ProgressBar();
+		saveProgressBar.progressProperty().bind(drawingExplorer.saveProgressProperty());
+
+		Menu saveProgressMenu = new Menu("Saving", saveProgressBar);
+		saveProgressMenu.visibleProperty().bind(drawingExplorer.savingProperty());
+		return saveProgressMenu;
+	}
+
 	/**
 	 * Initializes the ColorPicker action and brushSizeSlider listener.
 	 */
@@ -768,11 +971,54 @@ public class PaintCanvasGUI extends BorderPane {
 	}
 
 	/**
-	 * Saves the current state of the drawingCanvas by exporting it to a file using
-	 * the associated DrawingExplorer.
+	 * Saves the current state of the drawingCanvas using the associated
+	 * DrawingExplorer: to the open project if there is one, otherwise by exporting
+	 * it to a file.
 	 */
 	public void saveCanvas() {
-		drawingExplorer.exportDrawing(drawingCanvas);
+		if (drawingExplorer.hasProject()) {
+			drawingExplorer.saveProject(drawingCanvas);
+		} else {
+			drawingExplorer.exportDrawing(drawingCanvas);
+		}
+	}
+
+	/**
+	 * Waits until a save that is still being written is on disk.
+	 */
+	public void awaitSave() {
+		drawingExplorer.awaitSave();
+	}
+
+	/**
+	 * Offers to recover the drawing the application was working on when it last
+	 * died, if it left a recovery journal.
+	 */
+	public void offerRecovery() {
+		drawingExplorer.recoveryAlert(drawingCanvas, RecoveryJournal.defaultPath());
+	}
+
+	/**
+	 * Tells the user that the drawing is no longer journaled for recovery,
+	 * because the journal could not be written.
+	 *
+	 * @param error Why the journal could not be written.
+	 */
+	private void autosaveFailed(IOException error) {
+		Alert alert = new Alert(Alert.AlertType.WARNING);
+		alert.setTitle("Autosave Stopped");
+		alert.setHeaderText(null);
+		alert.setContentText("Your drawing can no longer be autosaved for recovery: " + error.getMessage()
+				+ "\nSave your work to keep it safe.");
+		alert.show();
+	}
+
+	/**
+	 * Stops the autosave and deletes its journal, because the application is
+	 * closing normally.
+	 */
+	public void discardAutosave() {
+		autosave.discard();
 	}
 
 	/**
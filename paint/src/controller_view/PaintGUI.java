@@ -53,8 +53,20 @@ public class PaintGUI extends Application {
         primaryStage.setOnCloseRequest(event -> handleCloseRequest(event, primaryStage));
         initialStage = primaryStage;
         primaryStage.show();
+
+        // Offer the drawing left behind if the application died last time
+        paintWindowCanvasGUI.offerRecovery();
     }
 
+	/**
+	 * Called when the application exits normally. The recovery journal is no
+	 * longer needed then.
+	 */
+	@Override
+	public void stop() {
+		paintWindowCanvasGUI.discardAutosave();
+	}
+
     /**
      * Initializes the GUI layout and sets up the primary stage.
      */
@@ -0,0 +1,309 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import controller_view.DrawingCanvas;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * Autosave: Keeps a RecoveryJournal up to date with the canvas while the user
+ * draws.
+ *
+ * The canvas tells the autosave about every area of the drawing that changed,
+ * and on the JavaFX thread the autosave only marks the tiles under it as dirty.
+ * A background thread wakes up at a fixed interval and has a few of the dirty
+ * tiles copied from the drawing on the JavaFX thread, then compresses them and
+ * appends them to the journal itself. Tiles of a single color are journaled as
+ * that color, so a large blank drawing costs next to nothing. Copying a bounded
+ * number of tiles per interval keeps the autosave from ever holding up input,
+ * at the cost of the journal catching up over a few intervals after a big
+ * change.
+ *
+ * Nothing is written until the canvas first changes, so an untouched drawing
+ * leaves no journal behind. A failed write is retried by writing the whole
+ * canvas again, at most MAX_FAILURES times in a row; then the autosave stops
+ * and tells its failure listener once.
+ *
+ * @author Tanay Desai
+ * @file: Autosave.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class Autosave {
+	/**
+	 * The default time between two writes to the journal, in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * The width and height of the tiles changes are tracked in. They match the
+	 * tiles of the drawing, so that blank tiles are recognized without reading
+	 * them.
+	 */
+	public static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	/**
+	 * The number of writes in a row that may fail before the autosave stops.
+	 */
+	public static final int MAX_FAILURES = 3;
+
+	private static final int TILES_PER_PULSE = 16; // The most tiles copied on the JavaFX thread at a time.
+
+	private final RecoveryJournal journal;
+	private final ScheduledExecutorService executor; // Copies and writes the tiles.
+	private final AtomicBoolean copyScheduled = new AtomicBoolean();
+	private final Consumer<Rectangle2D> changeListener = this::changed;
+	private int failures; // The writes that failed in a row, used on the autosave thread only.
+
+	// Used on the JavaFX thread only
+	private DrawingCanvas canvas;
+	private BitSet dirty = new BitSet(); // The tiles changed since they were last copied.
+	private int width;
+	private int height;
+	private int tilesX;
+	private boolean active; // Set once the canvas changed.
+	private boolean sizeChanged; // The journal has to start anew before the next tiles.
+	private boolean failed; // Set once the writes failed too often.
+	private Consumer<IOException> failureListener;
+
+	/**
+	 * Constructor for the Autosave class, writing at the default interval.
+	 *
+	 * @param journal The journal to write to.
+	 */
+	public Autosave(RecoveryJournal journal) {
+		this(journal, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Constructor for the Autosave class.
+	 *
+	 * @param journal        The journal to write to.
+	 * @param intervalMillis The time between two writes, in milliseconds.
+	 */
+	public Autosave(RecoveryJournal journal, long intervalMillis) {
+		this.journal = journal;
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "autosave");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::scheduleCopy, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts following the changes of a canvas, such as one that replaced the
+	 * previous canvas. Must be called on the JavaFX thread.
+	 *
+	 * @param canvas The canvas to follow.
+	 */
+	public void attach(DrawingCanvas canvas) {
+		if (this.canvas != null) {
+			this.canvas.removeChangeListener(changeListener);
+		}
+		this.canvas = canvas;
+		canvas.addChangeListener(changeListener);
+		startCanvas();
+	}
+
+	/**
+	 * Sets what is told when the autosave stops because the journal cannot be
+	 * written. Must be called on the JavaFX thread, and is called on it.
+	 *
+	 * @param failureListener Told the error of the last failed write, or null.
+	 */
+	public void setFailureListener(Consumer<IOException> failureListener) {
+		this.failureListener = failureListener;
+	}
+
+	/**
+	 * Stops writing and deletes the journal, because the drawing was closed on
+	 * purpose. Waits for the write in progress to finish.
+	 */
+	public void discard() {
+		if (canvas != null) {
+			canvas.removeChangeListener(changeListener);
+			canvas = null;
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+			journal.discard();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Marks the tiles under a changed area of the canvas as dirty.
+	 */
+	private void changed(Rectangle2D region) {
+		active = true;
+		TiledImage document = canvas.getDocument();
+		if (document.getWidth() != width || document.getHeight() != height) {
+			startCanvas();
+			return;
+		}
+
+		int left = Math.max(0, (int) Math.floor(region.getMinX())) / TILE_SIZE;
+		int top = Math.max(0, (int) Math.floor(region.getMinY())) / TILE_SIZE;
+		int right = Math.min(width, (int) Math.ceil(region.getMaxX()));
+		int bottom = Math.min(height, (int) Math.ceil(region.getMaxY()));
+		for (int tileY = top; tileY * TILE_SIZE < bottom; tileY++) {
+			for (int tileX = left; tileX * TILE_SIZE < right; tileX++) {
+				dirty.set(tileY * tilesX + tileX);
+			}
+		}
+	}
+
+	/**
+	 * Makes the journal start anew with the current size of the canvas and all of
+	 * its tiles.
+	 */
+	private void startCanvas() {
+		width = canvas.getDocument().getWidth();
+		height = canvas.getDocument().getHeight();
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		dirty.clear();
+		dirty.set(0, tilesX * tilesY);
+		sizeChanged = true;
+	}
+
+	/**
+	 * Has the dirty tiles copied on the JavaFX thread, unless a copy is still
+	 * waiting there. Runs on the autosave thread.
+	 */
+	private void scheduleCopy() {
+		if (copyScheduled.compareAndSet(false, true)) {
+			Platform.runLater(this::copyDirtyTiles);
+		}
+	}
+
+	/**
+	 * Copies some of the dirty tiles and hands them to the autosave thread to be
+	 * written. Runs on the JavaFX thread.
+	 */
+	private void copyDirtyTiles() {
+		copyScheduled.set(false);
+		if (!active || failed || canvas == null || executor.isShutdown()) {
+			return;
+		}
+
+		boolean startJournal = sizeChanged;
+		sizeChanged = false;
+		TiledImage document = canvas.getDocument();
+		List<Tile> tiles = new ArrayList<>();
+		for (int tile = dirty.nextSetBit(0); tile >= 0 && tiles.size() < TILES_PER_PULSE; tile = dirty
+				.nextSetBit(tile + 1)) {
+			int tileX = tile % tilesX;
+			int tileY = tile / tilesX;
+			int x = tileX * TILE_SIZE;
+			int y = tileY * TILE_SIZE;
+			int tileWidth = document.getTileWidth(tileX);
+			int tileHeight = document.getTileHeight(tileY);
+			if (document.isUniform(tileX, tileY)) {
+				tiles.add(new Tile(x, y, tileWidth, tileHeight, null, document.getUniformColor(tileX, tileY)));
+			} else {
+				int[] pixels = new int[tileWidth * tileHeight];
+				document.getPixels(x, y, tileWidth, tileHeight, pixels, 0, tileWidth);
+				tiles.add(new Tile(x, y, tileWidth, tileHeight, pixels, 0));
+			}
+			dirty.clear(tile);
+		}
+		if (!startJournal && tiles.isEmpty()) {
+			return;
+		}
+
+		int journalWidth = width;
+		int journalHeight = height;
+		executor.execute(() -> write(startJournal, journalWidth, journalHeight, tiles));
+	}
+
+	/**
+	 * Appends copied tiles to the journal and compacts it when it grew too much.
+	 * Runs on the autosave thread.
+	 */
+	private void write(boolean startJournal, int journalWidth, int journalHeight, List<Tile> tiles) {
+		try {
+			if (startJournal) {
+				journal.startCanvas(journalWidth, journalHeight);
+			}
+			for (Tile tile : tiles) {
+				if (tile.pixels == null) {
+					journal.appendFill(tile.x, tile.y, tile.tileWidth, tile.tileHeight, tile.color);
+				} else {
+					journal.append(tile.x, tile.y, tile.tileWidth, tile.tileHeight, tile.pixels);
+				}
+			}
+			journal.flush();
+			if (journal.needsCompaction()) {
+				journal.compact();
+			}
+			failures = 0;
+		} catch (IOException e) {
+			e.printStackTrace();
+			int failuresInRow = ++failures;
+			Platform.runLater(() -> writeFailed(e, failuresInRow));
+		}
+	}
+
+	/**
+	 * Writes the whole canvas again after a failed write, rather than leave a gap
+	 * in the journal, or stops once too many writes failed in a row. Runs on the
+	 * JavaFX thread.
+	 *
+	 * @param error         Why the write failed.
+	 * @param failuresInRow The number of writes that failed in a row.
+	 */
+	private void writeFailed(IOException error, int failuresInRow) {
+		if (canvas == null || failed) {
+			return;
+		}
+		if (failuresInRow < MAX_FAILURES) {
+			startCanvas();
+			return;
+		}
+		failed = true;
+		if (failureListener != null) {
+			failureListener.accept(error);
+		}
+	}
+
+	/**
+	 * A copied tile waiting to be written.
+	 */
+	private static class Tile {
+		private final int x;
+		private final int y;
+		private final int tileWidth;
+		private final int tileHeight;
+		private final int[] pixels; // Null for a tile of a single color.
+		private final int color;
+
+		/**
+		 * Constructor for the Tile class.
+		 */
+		private Tile(int x, int y, int tileWidth, int tileHeight, int[] pixels, int color) {
+			this.x = x;
+			this.y = y;
+			this.tileWidth = tileWidth;
+			this.tileHeight = tileHeight;
+			this.pixels = pixels;
+			this.color = color;
+		}
+	}
+}
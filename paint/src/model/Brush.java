@@ -3,6 +3,8 @@ package model;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
 
 /**
  * Represents the main class for a Paint graphical user interface. This class
@@ -18,6 +20,10 @@ import javafx.scene.paint.Color;
  * @version 1.6
  */
 public class Brush extends DrawingTool {
+	private double lastX; // The end of the stroke so far.
+	private double lastY;
+	private final StrokeSmoother smoother = new StrokeSmoother(); // Turns the points into curves.
+	private boolean stroking; // Set while a stroke started by draw goes on.
 
 	/**
 	 * Constructor for the Brush class.
@@ -30,7 +36,8 @@ public class Brush extends DrawingTool {
 	}
 
 	/**
-	 * Draw method to draw free hand lines on the canvas.
+	 * Draw method to draw free hand lines on the canvas. Starts a stroke at the
+	 * point, leaving a round dot there in case the mouse is not dragged.
 	 * 
 	 * @param canvas The canvas on which to draw.
 	 * @param x      The x-coordinate of the drawing point.
@@ -39,18 +46,112 @@ public class Brush extends DrawingTool {
 	@Override
 	public void draw(Canvas canvas, double x, double y) {
 		GraphicsContext gc = canvas.getGraphicsContext2D();
-		gc.beginPath();
-		gc.setStroke(color);
+		gc.setStroke(strokeColor());
 		gc.setLineWidth((Math.pow(getSize(), 2) / 2));
-		gc.lineTo(x, y);
-		gc.stroke();
+		double diameter = gc.getLineWidth();
+		gc.save();
+		gc.setFill(strokeColor());
+		gc.fillOval(x - diameter / 2, y - diameter / 2, diameter, diameter);
+		gc.restore();
+		markDirty(x - diameter / 2, y - diameter / 2, diameter, diameter);
+		lastX = x;
+		lastY = y;
+		stroking = true;
+		smoother.start(x, y);
 	}
 
+	/**
+	 * Extends the stroke to a point. The point goes through the smoother, so the
+	 * stroke is drawn as far as the curves it completed.
+	 * 
+	 * @param canvas The canvas on which to draw.
+	 * @param x      The x-coordinate of the drawing point.
+	 * @param y      The y-coordinate of the drawing point.
+	 */
 	@Override
 	public void drawDragged(Canvas canvas, double x, double y) {
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-		gc.lineTo(x, y);
+		smoother.add(x, y);
+		drawCurves(canvas.getGraphicsContext2D());
+	}
+
+	/**
+	 * Extends the stroke through all the points of a frame, drawing the curves
+	 * they completed as one new segment. A subclass that does not start its
+	 * strokes with the draw of the Brush, like the spray, gets each point through
+	 * drawDragged in turn instead, so it keeps its own drag behavior.
+	 * 
+	 * @param canvas The canvas on which to draw.
+	 * @param points The points as x, y pairs.
+	 * @param count  The number of values used in points.
+	 */
+	@Override
+	public void drawDragged(Canvas canvas, double[] points, int count) {
+		if (!stroking) {
+			super.drawDragged(canvas, points, count);
+			return;
+		}
+		for (int point = 0; point < count; point += 2) {
+			smoother.add(points[point], points[point + 1]);
+		}
+		drawCurves(canvas.getGraphicsContext2D());
+	}
+
+	/**
+	 * Returns the color the stroke is drawn with.
+	 * 
+	 * @return The color of the stroke.
+	 */
+	protected Color strokeColor() {
+		return color;
+	}
+
+	/**
+	 * Draws the curves the smoother completed since they were last drawn.
+	 */
+	private void drawCurves(GraphicsContext gc) {
+		int count = smoother.getCurveCount();
+		if (count == 0) {
+			return;
+		}
+		double[] curves = smoother.getCurves();
+		beginSegment(gc);
+		for (int curve = 0; curve < count; curve += 6) {
+			gc.bezierCurveTo(curves[curve], curves[curve + 1], curves[curve + 2], curves[curve + 3], curves[curve + 4],
+					curves[curve + 5]);
+			// A curve stays within its control points
+			markStroked(gc, curves[curve], curves[curve + 1]);
+			markStroked(gc, curves[curve + 2], curves[curve + 3]);
+		}
+		endSegment(gc, curves[count - 2], curves[count - 1]);
+		smoother.clearCurves();
+	}
+
+	/**
+	 * Starts a path at the end of the stroke so far. Its round cap covers the
+	 * round cap the previous segment ended with, which makes the two meet in a
+	 * round join. Only this path is rasterized, so extending a stroke costs the
+	 * same however long it already is. With a translucent color the joins are
+	 * painted twice and show a little darker.
+	 */
+	private void beginSegment(GraphicsContext gc) {
+		gc.save();
+		gc.setLineCap(StrokeLineCap.ROUND);
+		gc.setLineJoin(StrokeLineJoin.ROUND);
+		gc.beginPath();
+		gc.moveTo(lastX, lastY);
+	}
+
+	/**
+	 * Strokes the segment started by beginSegment, which ends at a point. The
+	 * reach is marked before restore, while the round cap and join still bound
+	 * it to half the line width.
+	 */
+	private void endSegment(GraphicsContext gc, double x, double y) {
 		gc.stroke();
+		markStroked(gc, x, y);
+		gc.restore();
+		lastX = x;
+		lastY = y;
 	}
 
 	@Override
@@ -59,9 +160,19 @@ public class Brush extends DrawingTool {
 		return null;
 	}
 
+	/**
+	 * Ends the stroke, drawing the rest of it the smoother held back.
+	 * 
+	 * @param gc The GraphicsContext for drawing.
+	 * @param x  The x-coordinate where the mouse button was released.
+	 * @param y  The y-coordinate where the mouse button was released.
+	 * @return null, since the stroke is drawn on the canvas itself.
+	 */
 	@Override
 	public Canvas mouseReleased(GraphicsContext gc, double x, double y) {
-		// Doesn't do anything in this class
+		smoother.finish();
+		drawCurves(gc);
+		stroking = false;
 		return null;
 	}
 }
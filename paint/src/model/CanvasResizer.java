@@ -7,15 +7,15 @@ package model;
  * @author Hannibal Oyebode
  */
 import controller_view.DrawingCanvas;
+import javafx.geometry.Pos;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
 
 /**
  * CanvasResizer: Manages the resizing of a drawing canvas.
  * 
- * This class facilitates the creation of a new canvas with a specified width
- * and height, transferring the content from an existing canvas to the new one.
- * It is used to resize the drawing canvas while preserving its content.
+ * This class resizes the drawing of a canvas to a specified width and height
+ * while preserving its content.
  * 
  * @author Hannibal, Doom Al Rajhi
  * @file: CanvasResizer.java
@@ -39,26 +39,17 @@ public class CanvasResizer {
 	}
 
 	/**
-	 * Creates a new drawing canvas with the specified width and height,
-	 * transferring the content from the original canvas to the new canvas.
+	 * Resizes the drawing of the canvas to the specified width and height, keeping
+	 * its content at the top left, its undo history and its tool. The canvas
+	 * itself is kept rather than replaced.
 	 * 
 	 * @param width  The new width of the canvas.
 	 * @param height The new height of the canvas.
-	 * @return The new drawing canvas with transferred content.
+	 * @return The resized drawing canvas.
 	 */
 	public DrawingCanvas makeNewCanvas(int width, int height) {
-		DrawingCanvas newCanvas = new DrawingCanvas(width, height);
-		GraphicsContext newGC = newCanvas.getGraphicsContext2D();
-
-		// Transfer content from old canvas to new canvas
-		newGC.drawImage(canvas.snapshot(null, null), 0, 0);
-
-		canvas = newCanvas;
-		gc = newGC;
-
-		StackPane root = (StackPane) canvas.getParent();
-		root.getChildren().setAll(canvas);
-
+		canvas.resizeDocument(width, height, Pos.TOP_LEFT, Color.web("#f4f4f4"));
+		gc = canvas.getGraphicsContext2D();
 		return canvas;
 	}
 }
@@ -73,6 +73,8 @@ public class Circle extends DrawingTool {
 		gc.strokeArc(arcLower.getCenterX() - arcLower.getRadiusX(), arcLower.getCenterY() - arcLower.getRadiusY(),
 				2 * arcLower.getRadiusX(), 2 * arcLower.getRadiusY(), arcLower.getStartAngle(), arcLower.getLength(),
 				arcLower.getType());
+
+		markOutlined(gc, x - radius, y - radius, 2 * radius, 2 * radius);
 	}
 
 	@Override
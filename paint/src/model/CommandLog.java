@@ -0,0 +1,430 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.Color;
+
+/**
+ * CommandLog: Undo and redo by replaying the tool commands of the user.
+ *
+ * Instead of storing pixels for every action, this class records which tool
+ * was used, its color and size, and the points it was given through draw and
+ * drawDragged. The records are kept in a few primitive arrays, so a brush
+ * stroke costs a few bytes per point. Every CHECKPOINT_INTERVAL commands a full
+ * copy of the canvas is taken. Undoing restores the nearest checkpoint and
+ * replays the commands after it.
+ *
+ * A fill also keeps its tolerance and how it measures color distance, so it
+ * covers the same area when it is replayed.
+ *
+ * Tools that cannot be replayed exactly (the spray brush is random, the select
+ * and text tools depend on more than their points) are recorded as raster
+ * commands: the canvas is copied right after them, so they are never replayed.
+ * The state before them is rebuilt from the earlier checkpoints like any other.
+ * Commands that change no pixels are not recorded at all.
+ *
+ * @author Tanay Desai
+ * @file: CommandLog.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class CommandLog {
+	/**
+	 * The default number of commands between two checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+	/**
+	 * The tool id of commands that are restored from checkpoints only.
+	 */
+	private static final int RASTER = -1;
+
+	/**
+	 * The bit set in the fill options of a fill with the Euclidean distance.
+	 */
+	private static final int EUCLIDEAN = 1 << 16;
+
+	/**
+	 * The tools that can be replayed, by tool id.
+	 */
+	private static final List<Class<? extends DrawingTool>> TOOLS = List.of(Brush.class, WatercolorBrush.class,
+			Eraser.class, Fill.class, Circle.class, Square.class, Rectangle.class, Triangle.class);
+
+	/**
+	 * Creates a tool to replay a command with, by tool id.
+	 */
+	private static final List<BiFunction<Color, Double, DrawingTool>> FACTORIES = List.of(Brush::new,
+			WatercolorBrush::new, Eraser::new, Fill::new, Circle::new, Square::new, Rectangle::new, Triangle::new);
+
+	private int checkpointInterval;
+
+	// The commands, one entry per command in each array.
+	private int[] tools = new int[64];
+	private int[] colors = new int[64];
+	private double[] sizes = new double[64];
+	private double[] alphas = new double[64];
+	private double[] lineWidths = new double[64];
+	private int[] fillOptions = new int[64]; // The tolerance of a fill, plus EUCLIDEAN if set.
+	private int[] firstPoint = new int[65]; // Index into points, one extra at the end.
+
+	// The points of all commands as x, y pairs.
+	private float[] points = new float[1024];
+	private int pointCount;
+
+	private int applied; // The number of commands currently on the canvas.
+	private int recorded; // The number of commands in the log, including redoable ones.
+
+	// The command being recorded, until it is known whether it changed anything.
+	private boolean recording;
+	private int pendingTool;
+	private int pendingColor;
+	private double pendingSize;
+	private double pendingAlpha;
+	private double pendingLineWidth;
+	private int pendingFillOptions;
+	private float[] pendingPoints = new float[256];
+	private int pendingPointCount;
+
+	private List<Checkpoint> checkpoints = new ArrayList<>();
+
+	/**
+	 * Constructor for the CommandLog class.
+	 */
+	public CommandLog() {
+		this(DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Constructor for the CommandLog class with a custom checkpoint interval.
+	 *
+	 * @param checkpointInterval The number of commands between two checkpoints.
+	 */
+	public CommandLog(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Takes the first checkpoint, which holds the canvas before any recorded
+	 * command. Must be called before anything is recorded.
+	 *
+	 * @param canvas The canvas being recorded.
+	 */
+	public void start(Canvas canvas) {
+		if (checkpoints.isEmpty()) {
+			takeCheckpoint(canvas);
+		}
+	}
+
+	/**
+	 * Starts recording a command. Must be called before the tool draws. The
+	 * command is only added to the log by end, once it is known whether the tool
+	 * changed anything.
+	 *
+	 * @param canvas The canvas the tool draws on.
+	 * @param tool   The tool being used, or null if none is selected.
+	 * @param x      The x-coordinate given to draw.
+	 * @param y      The y-coordinate given to draw.
+	 */
+	public void begin(Canvas canvas, DrawingTool tool, double x, double y) {
+		start(canvas);
+		recording = true;
+		pendingTool = toolId(tool);
+		pendingColor = tool == null ? 0 : DrawingTool.toArgb(tool.getColor());
+		pendingSize = tool == null ? 0 : tool.getSize();
+		pendingAlpha = canvas.getGraphicsContext2D().getGlobalAlpha();
+		pendingLineWidth = canvas.getGraphicsContext2D().getLineWidth();
+		pendingFillOptions = fillOptions(tool);
+		pendingPointCount = 0;
+		addPoint(x, y);
+	}
+
+	/**
+	 * Adds a point given to drawDragged to the command being recorded.
+	 *
+	 * @param x The x-coordinate of the point.
+	 * @param y The y-coordinate of the point.
+	 */
+	public void addPoint(double x, double y) {
+		if (!recording) {
+			return;
+		}
+		if (pendingPointCount + 2 > pendingPoints.length) {
+			pendingPoints = Arrays.copyOf(pendingPoints, pendingPoints.length * 2);
+		}
+		pendingPoints[pendingPointCount++] = (float) x;
+		pendingPoints[pendingPointCount++] = (float) y;
+	}
+
+	/**
+	 * Finishes the command being recorded. A command that changed nothing is
+	 * dropped and leaves the redo history alone. Otherwise it is added to the log
+	 * and a checkpoint is taken if one is due.
+	 *
+	 * @param canvas  The canvas the tool draws on.
+	 * @param changed Whether the tool changed any pixels.
+	 */
+	public void end(Canvas canvas, boolean changed) {
+		if (!recording) {
+			return;
+		}
+		recording = false;
+		if (!changed) {
+			return;
+		}
+
+		append(pendingTool, pendingColor, pendingSize, pendingAlpha, pendingLineWidth, pendingFillOptions,
+				pendingPoints, pendingPointCount);
+		if (pendingTool == RASTER || applied - lastCheckpoint().index >= checkpointInterval) {
+			takeCheckpoint(canvas);
+		}
+	}
+
+	/**
+	 * Records a change made to the canvas by something other than a tool command,
+	 * such as text being entered or the canvas being cleared. The change is kept
+	 * as a checkpoint.
+	 *
+	 * @param canvas The canvas after the change.
+	 */
+	public void recordChange(Canvas canvas) {
+		start(canvas);
+		append(RASTER, 0, 0, 1, 1, 0, pendingPoints, 0);
+		takeCheckpoint(canvas);
+	}
+
+	/**
+	 * Undo the most recent command.
+	 *
+	 * @param canvas The canvas to restore.
+	 * @return true if a command was undone, false if there's nothing to undo.
+	 */
+	public boolean undo(Canvas canvas) {
+		if (!canUndo()) {
+			return false;
+		}
+		applied--;
+		restore(canvas, applied);
+		return true;
+	}
+
+	/**
+	 * Redo the previously undone command.
+	 *
+	 * @param canvas The canvas to restore.
+	 * @return true if a command was redone, false if there's nothing to redo.
+	 */
+	public boolean redo(Canvas canvas) {
+		if (!canRedo()) {
+			return false;
+		}
+		if (tools[applied] == RASTER) {
+			restore(canvas, applied + 1);
+		} else {
+			replay(canvas, applied);
+		}
+		applied++;
+		return true;
+	}
+
+	/**
+	 * Adds a command to the log after the applied ones, dropping the commands
+	 * that were undone.
+	 */
+	private void append(int tool, int color, double size, double alpha, double lineWidth, int options,
+			float[] commandPoints, int commandPointCount) {
+		recorded = applied;
+		pointCount = firstPoint[applied];
+		checkpoints.removeIf(checkpoint -> checkpoint.index > applied);
+
+		ensureCommandCapacity();
+		tools[recorded] = tool;
+		colors[recorded] = color;
+		sizes[recorded] = size;
+		alphas[recorded] = alpha;
+		lineWidths[recorded] = lineWidth;
+		fillOptions[recorded] = options;
+
+		if (pointCount + commandPointCount > points.length) {
+			points = Arrays.copyOf(points, Math.max(points.length * 2, pointCount + commandPointCount));
+		}
+		System.arraycopy(commandPoints, 0, points, pointCount, commandPointCount);
+		pointCount += commandPointCount;
+
+		recorded++;
+		applied = recorded;
+		firstPoint[recorded] = pointCount;
+	}
+
+	/**
+	 * Check if there are commands that can be undone.
+	 *
+	 * @return true if there are commands that can be undone, false otherwise.
+	 */
+	public boolean canUndo() {
+		return applied > 0;
+	}
+
+	/**
+	 * Check if there are commands that can be redone.
+	 *
+	 * @return true if there are commands that can be redone, false otherwise.
+	 */
+	public boolean canRedo() {
+		return applied < recorded;
+	}
+
+	/**
+	 * Brings the canvas to the state after the given number of commands by
+	 * restoring the nearest checkpoint and replaying the commands after it.
+	 *
+	 * @param canvas The canvas to restore.
+	 * @param target The number of commands that should be on the canvas.
+	 */
+	private void restore(Canvas canvas, int target) {
+		Checkpoint checkpoint = checkpoints.get(0);
+		for (Checkpoint candidate : checkpoints) {
+			if (candidate.index <= target) {
+				checkpoint = candidate;
+			}
+		}
+
+		if (canvas.getWidth() != checkpoint.width || canvas.getHeight() != checkpoint.height) {
+			canvas.setWidth(checkpoint.width);
+			canvas.setHeight(checkpoint.height);
+		}
+		canvas.getGraphicsContext2D().getPixelWriter().setPixels(0, 0, checkpoint.width, checkpoint.height,
+				PixelFormat.getIntArgbInstance(), checkpoint.pixels, 0, checkpoint.width);
+
+		for (int command = checkpoint.index; command < target; command++) {
+			replay(canvas, command);
+		}
+	}
+
+	/**
+	 * Draws a recorded command again with a new instance of its tool.
+	 *
+	 * @param canvas  The canvas to draw on.
+	 * @param command The index of the command.
+	 */
+	private void replay(Canvas canvas, int command) {
+		DrawingTool tool = FACTORIES.get(tools[command]).apply(toColor(colors[command]), sizes[command]);
+		if (tool instanceof Fill fill) {
+			fill.setTolerance(fillOptions[command] & (EUCLIDEAN - 1));
+			fill.setEuclideanTolerance((fillOptions[command] & EUCLIDEAN) != 0);
+		}
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+
+		// some tools draw with state left behind by earlier ones, so put it back
+		gc.save();
+		gc.setGlobalAlpha(alphas[command]);
+		gc.setLineWidth(lineWidths[command]);
+
+		int point = firstPoint[command];
+		tool.draw(canvas, points[point], points[point + 1]);
+		for (point += 2; point < firstPoint[command + 1]; point += 2) {
+			tool.drawDragged(canvas, points[point], points[point + 1]);
+		}
+		tool.mouseReleased(gc, points[point - 2], points[point - 1]);
+		gc.restore();
+	}
+
+	/**
+	 * Copies the canvas as the checkpoint for the commands applied so far.
+	 */
+	private void takeCheckpoint(Canvas canvas) {
+		int width = (int) canvas.getWidth();
+		int height = (int) canvas.getHeight();
+		int[] pixels = new int[width * height];
+		DrawingTool.readPixels(canvas, 0, 0, width, height, pixels);
+		checkpoints.removeIf(checkpoint -> checkpoint.index == applied);
+		checkpoints.add(new Checkpoint(applied, pixels, width, height));
+	}
+
+	/**
+	 * Returns the most recent checkpoint.
+	 */
+	private Checkpoint lastCheckpoint() {
+		return checkpoints.get(checkpoints.size() - 1);
+	}
+
+	/**
+	 * Grows the command arrays when they are full.
+	 */
+	private void ensureCommandCapacity() {
+		if (recorded + 1 < tools.length) {
+			return;
+		}
+		int capacity = tools.length * 2;
+		tools = Arrays.copyOf(tools, capacity);
+		colors = Arrays.copyOf(colors, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		alphas = Arrays.copyOf(alphas, capacity);
+		lineWidths = Arrays.copyOf(lineWidths, capacity);
+		fillOptions = Arrays.copyOf(fillOptions, capacity);
+		firstPoint = Arrays.copyOf(firstPoint, capacity + 1);
+	}
+
+	/**
+	 * Returns the id a tool is recorded with.
+	 *
+	 * @param tool The tool.
+	 * @return The index of the tool's class in TOOLS, or RASTER if the tool cannot
+	 *         be replayed.
+	 */
+	private static int toolId(DrawingTool tool) {
+		return tool == null ? RASTER : TOOLS.indexOf(tool.getClass());
+	}
+
+	/**
+	 * Packs the tolerance settings of a fill into a single int.
+	 *
+	 * @param tool The tool.
+	 * @return The tolerance, plus EUCLIDEAN if set, or 0 if the tool is not a fill.
+	 */
+	private static int fillOptions(DrawingTool tool) {
+		if (!(tool instanceof Fill fill)) {
+			return 0;
+		}
+		return fill.getTolerance() | (fill.isEuclideanTolerance() ? EUCLIDEAN : 0);
+	}
+
+	/**
+	 * Unpacks a color from a single ARGB int.
+	 */
+	private static Color toColor(int argb) {
+		return Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+	}
+
+	/**
+	 * A full copy of the canvas after a number of commands.
+	 */
+	private static class Checkpoint {
+		private final int index;
+		private final int[] pixels;
+		private final int width;
+		private final int height;
+
+		/**
+		 * Constructor for the Checkpoint class.
+		 *
+		 * @param index  The number of commands applied to the copied canvas.
+		 * @param pixels The canvas as ARGB pixels.
+		 * @param width  The width of the canvas.
+		 * @param height The height of the canvas.
+		 */
+		public Checkpoint(int index, int[] pixels, int width, int height) {
+			this.index = index;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
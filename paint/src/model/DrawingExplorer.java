@@ -4,17 +4,33 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-
-import javax.imageio.ImageIO;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 import controller_view.DrawingCanvas;
 import controller_view.PaintCanvasGUI;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
@@ -28,6 +44,19 @@ import javafx.stage.WindowEvent;
  * handles actions such as exporting, importing, saving drawings, and showing
  * alerts.
  * 
+ * Saving copies the drawing on the JavaFX thread and then encodes
+ * and writes them on a background thread, so drawing can go on meanwhile. The
+ * file is written to a temporary file next to it, forced to disk and then
+ * renamed over the old file, so a crash never leaves a half-written drawing.
+ * The canvas is only marked as saved once the file is on disk, and only if it
+ * did not change while it was being saved.
+ * 
+ * Drawings can also be saved as projects in the native ProjectFile format.
+ * Once a project is open, saving it only writes the tiles that changed, and PNG
+ * stays available as an export. The tiles that changed are followed through
+ * the change notifications of the canvas, the way the Autosave follows them, so
+ * a save does not have to read the tiles nobody touched.
+ * 
  * @author Doom Al Rajhi, Tanay Desai
  * @file: DrawingExplorer.java
  * @assignment: Paint Application Final Project
@@ -37,12 +66,31 @@ import javafx.stage.WindowEvent;
  */
 public class DrawingExplorer implements Serializable {
 	private static final long serialVersionUID = 4211396090447480389L;
+	private static final int IMPORT_BAND_PIXELS = 1 << 20; // About how many pixels are copied at a time on import.
 	/**
 	 * The primary stage of the application, used for managing the main user
 	 * interface.
 	 */
 	private Stage primaryStage;
 
+	private transient ExecutorService saveExecutor; // Writes the saves one after another.
+	private transient CompletableFuture<Void> pendingSave; // The save being written, if any.
+	private transient DrawingCanvas savedCanvas; // The canvas of the pending save.
+	private transient int savedChangeCount; // The change count of the canvas when it was copied.
+	private transient Throwable saveError; // Why the last save failed, or null if it was written.
+	private transient DoubleProperty saveProgress = new SimpleDoubleProperty();
+	private transient BooleanProperty saving = new SimpleBooleanProperty();
+	private int maxImportPixels = ImageImporter.DEFAULT_MAX_PIXELS; // Larger images are scaled down on import.
+	private transient volatile ProjectFile project; // The open project, which saves go to.
+
+	// The tiles changed since the project was saved, used on the JavaFX thread only
+	private transient DrawingCanvas trackedCanvas; // The canvas whose changes are followed.
+	private transient Consumer<Rectangle2D> changeListener = this::tilesChanged;
+	private transient BitSet changedTiles = new BitSet();
+	private transient BitSet savedTiles; // The changed tiles the pending save writes.
+	private transient int trackedWidth;
+	private transient int trackedHeight;
+
 	/**
 	 * Constructor for the DrawingExplorer class.
 	 *
@@ -61,7 +109,10 @@ public class DrawingExplorer implements Serializable {
 	/**
 	 * Export the current drawing from the given drawingCanvas to a file. The
 	 * exported file format is typically in PNG, which supports images with
-	 * transparency.
+	 * transparency. The tiles of the drawing are copied here, which shares their
+	 * pixels, and handed to a PngWriter on the save thread. It reads them a strip
+	 * of rows at a time, compresses the strips on several threads and streams
+	 * them to the file.
 	 *
 	 * @param drawingCanvas The drawingCanvas containing the artwork to be exported.
 	 */
@@ -72,79 +123,431 @@ public class DrawingExplorer implements Serializable {
 		File selectedFile = fileChooser.showSaveDialog(drawingCanvas.getScene().getWindow());
 
 		if (selectedFile != null) {
-			WritableImage writableImage = drawingCanvas.snapshot(null, null);
+			TiledImage image = drawingCanvas.getDocument().copy();
+			Path target = selectedFile.toPath().toAbsolutePath();
+			startSave(drawingCanvas, progress -> writeDurably(image, target, progress));
+		}
+	}
 
-			PixelReader pixelReader = writableImage.getPixelReader();
+	/**
+	 * Saves the drawing to the open project file, writing only the tiles that
+	 * changed since it was last saved. Asks for a file first if no project is
+	 * open.
+	 *
+	 * @param drawingCanvas The drawingCanvas containing the artwork to be saved.
+	 */
+	public void saveProject(DrawingCanvas drawingCanvas) {
+		// The project is only replaced after the pending save is done
+		awaitSave();
+		if (project == null) {
+			saveProjectAs(drawingCanvas);
+			return;
+		}
 
-			int width = (int) writableImage.getWidth();
-			int height = (int) writableImage.getHeight();
+		ProjectFile target = project;
+		BitSet changed = null;
+		if (trackedCanvas == drawingCanvas) {
+			changed = changedTiles;
+			changedTiles = new BitSet();
+		} else {
+			// Changes made before the canvas was followed are unknown
+			trackChanges(drawingCanvas);
+		}
+		TiledImage image = drawingCanvas.getDocument().copy();
+		BitSet tiles = changed;
+		startSave(drawingCanvas, progress -> target.save(image, tiles, progress));
+		savedTiles = changed;
+	}
 
-			int[] pixels = new int[width * height];
+	/**
+	 * Saves the drawing to a new project file chosen by the user, which becomes
+	 * the open project.
+	 *
+	 * @param drawingCanvas The drawingCanvas containing the artwork to be saved.
+	 */
+	public void saveProjectAs(DrawingCanvas drawingCanvas) {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Save Project");
+		fileChooser.getExtensionFilters()
+				.add(new FileChooser.ExtensionFilter("Paint Projects", "*" + ProjectFile.EXTENSION));
+		File selectedFile = fileChooser.showSaveDialog(drawingCanvas.getScene().getWindow());
 
-			pixelReader.getPixels(0, 0, width, height, javafx.scene.image.PixelFormat.getIntArgbInstance(), pixels, 0,
-					width);
+		if (selectedFile != null) {
+			Path target = selectedFile.toPath().toAbsolutePath();
+			if (!target.getFileName().toString().endsWith(ProjectFile.EXTENSION)) {
+				target = target.resolveSibling(target.getFileName() + ProjectFile.EXTENSION);
+			}
+			awaitSave();
+			closeProject();
+
+			Path path = target;
+			trackChanges(drawingCanvas);
+			TiledImage image = drawingCanvas.getDocument().copy();
+			startSave(drawingCanvas, progress -> {
+				project = ProjectFile.create(path, image, progress);
+				forceDirectory(path.getParent());
+			});
+		}
+	}
 
-			BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-			bufferedImage.setRGB(0, 0, width, height, pixels, 0, width);
+	/**
+	 * Opens a project file chosen by the user and loads it into the
+	 * drawingCanvas. Later saves go to this project.
+	 *
+	 * @param drawingCanvas The drawingCanvas where the project will be loaded.
+	 */
+	public void openProject(DrawingCanvas drawingCanvas) {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Open Project");
+		fileChooser.getExtensionFilters()
+				.add(new FileChooser.ExtensionFilter("Paint Projects", "*" + ProjectFile.EXTENSION));
+		File selectedFile = fileChooser.showOpenDialog(drawingCanvas.getScene().getWindow());
 
+		if (selectedFile != null) {
+			awaitSave();
+			closeProject();
 			try {
-				ImageIO.write(bufferedImage, "png", selectedFile);
+				project = ProjectFile.open(selectedFile.toPath().toAbsolutePath());
+				drawingCanvas.loadProject(project);
+				trackChanges(drawingCanvas);
 			} catch (IOException e) {
+				closeProject();
 				e.printStackTrace();
 			}
 		}
-		drawingCanvas.hasChanges = false;
+	}
+
+	/**
+	 * Returns whether a project file is open, so saves go to it.
+	 *
+	 * @return true if a project is open.
+	 */
+	public boolean hasProject() {
+		return project != null;
+	}
+
+	/**
+	 * Closes the open project file, if any.
+	 */
+	private void closeProject() {
+		if (trackedCanvas != null) {
+			trackedCanvas.removeChangeListener(changeListener);
+			trackedCanvas = null;
+		}
+		if (project != null) {
+			try {
+				project.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			project = null;
+		}
+	}
+
+	/**
+	 * Starts following the changes of a canvas, with none of its tiles changed
+	 * since the project was saved.
+	 */
+	private void trackChanges(DrawingCanvas drawingCanvas) {
+		if (trackedCanvas != null) {
+			trackedCanvas.removeChangeListener(changeListener);
+		}
+		trackedCanvas = drawingCanvas;
+		drawingCanvas.addChangeListener(changeListener);
+		trackedWidth = drawingCanvas.getDocument().getWidth();
+		trackedHeight = drawingCanvas.getDocument().getHeight();
+		changedTiles.clear();
+	}
+
+	/**
+	 * Marks the tiles under a changed area of the canvas as changed. After a
+	 * resize every tile counts as changed.
+	 */
+	private void tilesChanged(Rectangle2D region) {
+		TiledImage document = trackedCanvas.getDocument();
+		int tilesX = document.getTilesX();
+		if (document.getWidth() != trackedWidth || document.getHeight() != trackedHeight) {
+			trackedWidth = document.getWidth();
+			trackedHeight = document.getHeight();
+			changedTiles.set(0, tilesX * document.getTilesY());
+			return;
+		}
+
+		int tileSize = TiledImage.TILE_SIZE;
+		int left = Math.max(0, (int) Math.floor(region.getMinX())) / tileSize;
+		int top = Math.max(0, (int) Math.floor(region.getMinY())) / tileSize;
+		int right = Math.min(trackedWidth, (int) Math.ceil(region.getMaxX()));
+		int bottom = Math.min(trackedHeight, (int) Math.ceil(region.getMaxY()));
+		for (int tileY = top; tileY * tileSize < bottom; tileY++) {
+			for (int tileX = left; tileX * tileSize < right; tileX++) {
+				changedTiles.set(tileY * tilesX + tileX);
+			}
+		}
+	}
+
+	/**
+	 * Starts writing a save on the save thread, after the pending save is done.
+	 * Its progress is shown while it is written.
+	 */
+	private void startSave(DrawingCanvas drawingCanvas, SaveTask task) {
+		// Only one save is written at a time
+		awaitSave();
+
+		savedCanvas = drawingCanvas;
+		savedChangeCount = drawingCanvas.getChangeCount();
+		saveError = null;
+		saveProgress.set(0);
+		saving.set(true);
+		DoubleConsumer progress = value -> Platform.runLater(() -> saveProgress.set(value));
+		pendingSave = CompletableFuture.runAsync(() -> {
+			try {
+				task.write(progress);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, getSaveExecutor());
+		pendingSave.whenComplete((result, error) -> Platform.runLater(this::finishSave));
+	}
+
+	/**
+	 * Writes a PNG file through a temporary file that is forced to disk and then
+	 * renamed to the target, so the target is always either the old or the new
+	 * drawing.
+	 */
+	private void writeDurably(TiledImage image, Path target, DoubleConsumer progress) throws IOException {
+		Path directory = target.getParent();
+		Path temporary = null;
+		try {
+			temporary = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				new PngWriter().write(image, channel, progress);
+				channel.force(true);
+			}
+
+			try {
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			forceDirectory(directory);
+		} catch (IOException e) {
+			try {
+				if (temporary != null) {
+					Files.deleteIfExists(temporary);
+				}
+			} catch (IOException deleteError) {
+				e.addSuppressed(deleteError);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Forces the entry of a renamed file to disk. Not every platform can open a
+	 * directory, in which case the rename is left to the file system.
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// The directory cannot be opened on this platform
+		}
+	}
+
+	/**
+	 * Finishes the pending save on the JavaFX thread: marks the canvas as saved if
+	 * the file was written and the canvas has not changed since it was copied.
+	 */
+	private void finishSave() {
+		if (pendingSave == null || !pendingSave.isDone()) {
+			return;
+		}
+		try {
+			pendingSave.get();
+			if (savedCanvas.getChangeCount() == savedChangeCount) {
+				savedCanvas.hasChanges = false;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			saveError = e.getCause();
+			if (savedTiles != null) {
+				// The tiles were not written, so the next save has to check them again
+				changedTiles.or(savedTiles);
+			}
+		}
+		savedTiles = null;
+		pendingSave = null;
+		savedCanvas = null;
+		saving.set(false);
+	}
+
+	/**
+	 * Waits until the save being written, if any, is on disk. Must be called on
+	 * the JavaFX thread.
+	 */
+	public void awaitSave() {
+		CompletableFuture<Void> save = pendingSave;
+		if (save == null) {
+			return;
+		}
+		try {
+			save.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Reported by finishSave
+		}
+		finishSave();
+	}
+
+	/**
+	 * Returns the progress of the save being written.
+	 *
+	 * @return The part of the drawing written so far, from 0 to 1.
+	 */
+	public ReadOnlyDoubleProperty saveProgressProperty() {
+		return saveProgress;
+	}
+
+	/**
+	 * Returns whether a save is being written.
+	 *
+	 * @return A property that is true while a save is being written.
+	 */
+	public ReadOnlyBooleanProperty savingProperty() {
+		return saving;
+	}
+
+	/**
+	 * Returns the thread saves are written on, starting it on the first save.
+	 */
+	private ExecutorService getSaveExecutor() {
+		if (saveExecutor == null) {
+			saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "save");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return saveExecutor;
+	}
+
+	/**
+	 * A save written on the save thread.
+	 */
+	private interface SaveTask {
+		void write(DoubleConsumer progress) throws IOException;
 	}
 
 	/**
 	 * Imports a saved drawing from a file and loads it into the provided
-	 * drawingCanvas.
+	 * drawingCanvas. Images with more pixels than the import limit are scaled
+	 * down while they are decoded, and the pixels are copied to the drawing a band
+	 * of rows at a time.
 	 *
 	 * @param drawingCanvas The drawingCanvas where the imported drawing will be
 	 *                      loaded. The saved drawing should be in a compatible
-	 *                      format (e.g., PNG).
+	 *                      format (PNG, JPEG, BMP or GIF).
 	 */
 	public void importDrawing(DrawingCanvas drawingCanvas) {
 		FileChooser fileChooser = new FileChooser();
 		fileChooser.setTitle("Load Drawing");
-		fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG Files", "*.png"));
+		fileChooser.getExtensionFilters().addAll(
+				new FileChooser.ExtensionFilter("Image Files", "*.png", "*.jpg", "*.jpeg", "*.bmp", "*.gif"),
+				new FileChooser.ExtensionFilter("PNG Files", "*.png"),
+				new FileChooser.ExtensionFilter("JPEG Files", "*.jpg", "*.jpeg"),
+				new FileChooser.ExtensionFilter("BMP Files", "*.bmp"),
+				new FileChooser.ExtensionFilter("GIF Files", "*.gif"));
 		File selectedFile = fileChooser.showOpenDialog(drawingCanvas.getScene().getWindow());
 
 		if (selectedFile != null) {
-			Image image = new Image(selectedFile.toURI().toString());
-			PixelReader pixelReader = image.getPixelReader();
-
-			int width = (int) image.getWidth();
-			int height = (int) image.getHeight();
+			try {
+				BufferedImage image = new ImageImporter(maxImportPixels).read(selectedFile);
 
-			WritableImage writableImage = new WritableImage(width, height);
-			drawingCanvas.setWidth(width);
-			drawingCanvas.setHeight(height);
+				int width = image.getWidth();
+				int height = image.getHeight();
 
-			PixelWriter pixelWriter = writableImage.getPixelWriter();
-			for (int x = 0; x < width; x++) {
-				for (int y = 0; y < height; y++) {
-					pixelWriter.setArgb(x, y, pixelReader.getArgb(x, y));
+				// Copy whole rows at a time through a small buffer
+				TiledImage document = new TiledImage(width, height, 0);
+				int bandRows = Math.max(1, IMPORT_BAND_PIXELS / width);
+				int[] band = new int[Math.min(bandRows, height) * width];
+				for (int y = 0; y < height; y += bandRows) {
+					int rows = Math.min(bandRows, height - y);
+					image.getRGB(0, y, width, rows, band, 0, width);
+					document.setPixels(0, y, width, rows, band, 0, width);
 				}
+
+				drawingCanvas.replaceDocument(document);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
+		}
+
+		drawingCanvas.hasChanges = false;
+
+	}
 
-			drawingCanvas.getGraphicsContext2D().drawImage(writableImage, 0, 0);
+	/**
+	 * Sets the largest number of pixels an imported image may have before it is
+	 * scaled down.
+	 *
+	 * @param maxImportPixels The pixel limit for imported images.
+	 */
+	public void setMaxImportPixels(int maxImportPixels) {
+		this.maxImportPixels = maxImportPixels;
+	}
 
+	/**
+	 * Offers to recover the drawing from a recovery journal left behind when the
+	 * application did not close properly. The journal is left alone if the user
+	 * declines, and is replaced once the canvas changes.
+	 *
+	 * @param drawingCanvas The drawingCanvas where the drawing will be recovered.
+	 * @param journal       The recovery journal.
+	 */
+	public void recoveryAlert(DrawingCanvas drawingCanvas, Path journal) {
+		RecoveryJournal.Recovery recovery;
+		try {
+			recovery = RecoveryJournal.recover(journal);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (recovery == null) {
+			return;
 		}
 
-		drawingCanvas.hasChanges = false;
+		Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+		alert.setTitle("Recover Drawing");
+		alert.setHeaderText(null);
+		alert.setContentText("Paint did not close properly. Do you want to recover your last drawing?");
 
+		ButtonType recoverButton = new ButtonType("Recover");
+		ButtonType discardButton = new ButtonType("Discard");
+		alert.getButtonTypes().setAll(recoverButton, discardButton);
+
+		alert.showAndWait().ifPresent(response -> {
+			if (response == recoverButton) {
+				drawingCanvas.replaceDocument(recovery.getImage());
+			}
+		});
 	}
 
 	/**
 	 * Displays a confirmation alert when the user attempts to close the application
-	 * with unsaved changes.
+	 * with unsaved changes. If the user chooses to save, the window only closes
+	 * once the save is on disk. A save that failed or was cancelled keeps the
+	 * window open, and with it the recovery journal of the drawing.
 	 * 
 	 * @param event                The WindowEvent representing the close request.
 	 * @param paintWindowCanvasGUI The PaintCanvasGUI instance managing the
 	 *                             application.
 	 */
 	public void closingAlert(WindowEvent event, PaintCanvasGUI paintWindowCanvasGUI) {
+		// Let a save that is still being written finish before deciding
+		paintWindowCanvasGUI.awaitSave();
 		if (paintWindowCanvasGUI.drawingCanvas.hasChanges) {
 			Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
 			alert.setTitle("Save Confirmation");
@@ -160,8 +563,17 @@ public class DrawingExplorer implements Serializable {
 			// Show the alert and handle the user's choice
 			alert.showAndWait().ifPresent(response -> {
 				if (response == saveButton) {
+					saveError = null;
 					paintWindowCanvasGUI.saveCanvas();
-					primaryStage.close();
+					paintWindowCanvasGUI.awaitSave();
+					if (!paintWindowCanvasGUI.drawingCanvas.hasChanges) {
+						primaryStage.close();
+						return;
+					}
+					event.consume();
+					if (saveError != null) {
+						saveErrorAlert(saveError);
+					}
 				} else if (response == dontSaveButton) {
 					primaryStage.close();
 				} else if (response == cancelButton) {
@@ -171,4 +583,17 @@ public class DrawingExplorer implements Serializable {
 			});
 		}
 	}
+
+	/**
+	 * Displays an error alert telling the user that the drawing was not saved.
+	 *
+	 * @param error Why the save failed.
+	 */
+	private void saveErrorAlert(Throwable error) {
+		Alert alert = new Alert(Alert.AlertType.ERROR);
+		alert.setTitle("Save Failed");
+		alert.setHeaderText(null);
+		alert.setContentText("Your drawing could not be saved: " + error.getMessage());
+		alert.showAndWait();
+	}
 }
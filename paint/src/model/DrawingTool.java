@@ -1,8 +1,16 @@
 package model;
 
+import controller_view.DrawingCanvas;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
 
 /**
  * Abstract base class for drawing tools.
@@ -11,6 +19,15 @@ import javafx.scene.paint.Color;
  * application, providing a common structure and managing properties like color
  * and size. Subclasses must implement the 'draw' method.
  * 
+ * Tools also report which part of the canvas they changed. Every time a tool
+ * changes pixels it marks the affected area as dirty, and the canvas collects
+ * that area when an operation ends, so that clicks that change nothing are not
+ * recorded as actions.
+ * 
+ * Tools that work on pixels rather than shapes read and write them through
+ * readPixels and writePixels. On a DrawingCanvas these go straight to the
+ * drawing it keeps in memory, which the canvas only displays, so nothing has
+ * to be read back from the screen.
  * 
  * @author Doom Al Rajhi, Hannibal Oyebode
  * @file: DrawingTool.java
@@ -23,6 +40,14 @@ public abstract class DrawingTool {
 	protected Color color; // The color used by the drawing tool.
 	protected double size; // The size or thickness of the drawing tool's stroke.
 
+	// The bounds of the area changed since the dirty region was last taken.
+	private double dirtyMinX = Double.POSITIVE_INFINITY;
+	private double dirtyMinY = Double.POSITIVE_INFINITY;
+	private double dirtyMaxX = Double.NEGATIVE_INFINITY;
+	private double dirtyMaxY = Double.NEGATIVE_INFINITY;
+
+	private Runnable changeListener; // Told about changes made outside mouse events.
+
 	/**
 	 * Constructor for creating a new DrawingTool instance.
 	 * 
@@ -54,6 +79,23 @@ public abstract class DrawingTool {
 	 */
 	public abstract void drawDragged(Canvas canvas, double x, double y);
 
+	/**
+	 * Handles all the points the mouse was dragged through during one frame. By
+	 * default each point goes to drawDragged in turn; tools that can draw them
+	 * with fewer calls override this. The array is reused after the call, so it
+	 * must not be kept.
+	 * 
+	 * @param canvas The canvas on which to draw.
+	 * @param points The points in the order they were reached, as x, y pairs.
+	 * @param count  The number of values used in points, twice the number of
+	 *               points.
+	 */
+	public void drawDragged(Canvas canvas, double[] points, int count) {
+		for (int point = 0; point < count; point += 2) {
+			drawDragged(canvas, points[point], points[point + 1]);
+		}
+	}
+
 	/**
 	 * Get the color currently set for the drawing tool.
 	 * 
@@ -112,4 +154,186 @@ public abstract class DrawingTool {
 	 *         release.
 	 */
 	public abstract Canvas mouseReleased(GraphicsContext gc, double x, double y);
+
+	/**
+	 * Packs a color into a single ARGB int, the format the tools use for bulk
+	 * pixel access.
+	 * 
+	 * @param color The color to pack.
+	 * @return The color as an ARGB int.
+	 */
+	protected static int toArgb(Color color) {
+		return (int) Math.round(color.getOpacity() * 255) << 24 | (int) Math.round(color.getRed() * 255) << 16
+				| (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+	}
+
+	/**
+	 * Reads part of a canvas as ARGB pixels. A DrawingCanvas is read from the
+	 * drawing in memory, and any other canvas is read back with a snapshot.
+	 * 
+	 * @param canvas The canvas to read.
+	 * @param x      The x-coordinate of the area on the canvas.
+	 * @param y      The y-coordinate of the area on the canvas.
+	 * @param width  The width of the area.
+	 * @param height The height of the area.
+	 * @param pixels Receives the pixels of the area, row by row.
+	 */
+	protected static void readPixels(Canvas canvas, int x, int y, int width, int height, int[] pixels) {
+		if (canvas instanceof DrawingCanvas) {
+			((DrawingCanvas) canvas).readPixels(x, y, width, height, pixels, 0, width);
+			return;
+		}
+
+		// The viewport is given in the coordinates of the parent
+		Bounds area = canvas.localToParent(new BoundingBox(x, y, width, height));
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+		parameters.setViewport(new Rectangle2D(area.getMinX(), area.getMinY(), width, height));
+		canvas.snapshot(parameters, null).getPixelReader().getPixels(0, 0, width, height,
+				PixelFormat.getIntArgbInstance(), pixels, 0, width);
+	}
+
+	/**
+	 * Writes ARGB pixels over part of a canvas, replacing what was there. On a
+	 * DrawingCanvas they go into the drawing and the canvas records the change
+	 * itself; on any other canvas the area is marked as dirty.
+	 * 
+	 * @param canvas The canvas to write to.
+	 * @param x      The x-coordinate of the area on the canvas.
+	 * @param y      The y-coordinate of the area on the canvas.
+	 * @param width  The width of the area.
+	 * @param height The height of the area.
+	 * @param pixels The pixels to write.
+	 * @param offset The index of the first pixel to write.
+	 * @param stride The distance between two rows in the pixels.
+	 */
+	protected void writePixels(Canvas canvas, int x, int y, int width, int height, int[] pixels, int offset,
+			int stride) {
+		if (canvas instanceof DrawingCanvas) {
+			((DrawingCanvas) canvas).writePixels(x, y, width, height, pixels, offset, stride);
+		} else {
+			canvas.getGraphicsContext2D().getPixelWriter().setPixels(x, y, width, height,
+					PixelFormat.getIntArgbInstance(), pixels, offset, stride);
+			markDirty(x, y, width, height);
+		}
+	}
+
+	/**
+	 * Marks an area of the canvas as changed by the tool. Subclasses call this
+	 * every time they change pixels.
+	 * 
+	 * @param x      The x-coordinate of the top-left corner of the area.
+	 * @param y      The y-coordinate of the top-left corner of the area.
+	 * @param width  The width of the area.
+	 * @param height The height of the area.
+	 */
+	protected void markDirty(double x, double y, double width, double height) {
+		dirtyMinX = Math.min(dirtyMinX, x);
+		dirtyMinY = Math.min(dirtyMinY, y);
+		dirtyMaxX = Math.max(dirtyMaxX, x + width);
+		dirtyMaxY = Math.max(dirtyMaxY, y + height);
+	}
+
+	/**
+	 * Marks the area a stroke through a point can reach as changed, using the
+	 * line width, join and cap currently set on the GraphicsContext.
+	 * 
+	 * @param gc The GraphicsContext the stroke is drawn with.
+	 * @param x  The x-coordinate of the point.
+	 * @param y  The y-coordinate of the point.
+	 */
+	protected void markStroked(GraphicsContext gc, double x, double y) {
+		double reach = strokeReach(gc);
+		markDirty(x - reach, y - reach, 2 * reach, 2 * reach);
+	}
+
+	/**
+	 * Marks the area of a stroked outline of a rectangle or an ellipse as
+	 * changed. Such an outline has no corners sharper than a right angle, so it
+	 * reaches half the line width out of its bounds and no further.
+	 * 
+	 * @param gc     The GraphicsContext the outline is drawn with.
+	 * @param x      The x-coordinate of the bounds of the shape.
+	 * @param y      The y-coordinate of the bounds of the shape.
+	 * @param width  The width of the bounds of the shape.
+	 * @param height The height of the bounds of the shape.
+	 */
+	protected void markOutlined(GraphicsContext gc, double x, double y, double width, double height) {
+		double reach = gc.getLineWidth() / 2;
+		if (gc.getLineCap() == StrokeLineCap.SQUARE) {
+			reach *= Math.sqrt(2);
+		}
+		markDirty(x - reach, y - reach, width + 2 * reach, height + 2 * reach);
+	}
+
+	/**
+	 * Returns how far a stroke can reach from the points of its path, using the
+	 * line width, join and cap currently set on a GraphicsContext. Miter joins
+	 * reach the furthest, up to the miter limit times half the line width.
+	 * 
+	 * @param gc The GraphicsContext a stroke is drawn with.
+	 * @return The largest distance from a point of the path to a stroked pixel.
+	 */
+	public static double strokeReach(GraphicsContext gc) {
+		double factor = 1;
+		if (gc.getLineJoin() == StrokeLineJoin.MITER) {
+			factor = Math.max(factor, gc.getMiterLimit());
+		}
+		if (gc.getLineCap() == StrokeLineCap.SQUARE) {
+			factor = Math.max(factor, Math.sqrt(2));
+		}
+		return gc.getLineWidth() / 2 * factor;
+	}
+
+	/**
+	 * Checks whether the tool changed any pixels since the dirty region was last
+	 * taken.
+	 * 
+	 * @return true if pixels were changed, false otherwise.
+	 */
+	public boolean isDirty() {
+		return dirtyMinX <= dirtyMaxX;
+	}
+
+	/**
+	 * Returns the area changed since the last call and starts a new one. The area
+	 * is rounded out to whole pixels and padded by one pixel for antialiasing.
+	 * 
+	 * @return The changed area, or null if no pixels were changed.
+	 */
+	public Rectangle2D takeDirtyRegion() {
+		if (!isDirty()) {
+			return null;
+		}
+		double minX = Math.floor(dirtyMinX) - 1;
+		double minY = Math.floor(dirtyMinY) - 1;
+		Rectangle2D region = new Rectangle2D(minX, minY, Math.ceil(dirtyMaxX) + 1 - minX,
+				Math.ceil(dirtyMaxY) + 1 - minY);
+
+		dirtyMinX = Double.POSITIVE_INFINITY;
+		dirtyMinY = Double.POSITIVE_INFINITY;
+		dirtyMaxX = Double.NEGATIVE_INFINITY;
+		dirtyMaxY = Double.NEGATIVE_INFINITY;
+		return region;
+	}
+
+	/**
+	 * Sets the listener to call when the tool changes the canvas outside of the
+	 * draw, drawDragged and mouseReleased methods, like the text tool does when
+	 * text is entered.
+	 * 
+	 * @param changeListener The listener, or null for none.
+	 */
+	public void setChangeListener(Runnable changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	/**
+	 * Tells the change listener that the tool changed the canvas on its own.
+	 */
+	protected void fireChanged() {
+		if (changeListener != null) {
+			changeListener.run();
+		}
+	}
 }
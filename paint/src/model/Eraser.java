@@ -42,6 +42,7 @@ public class Eraser extends DrawingTool {
 		GraphicsContext gc = canvas.getGraphicsContext2D();
 		double defaultSize = (Math.pow(this.getSize(), 2) / 2);
 		gc.clearRect(x - defaultSize / 2, y - defaultSize / 2, defaultSize, defaultSize);
+		markDirty(x - defaultSize / 2, y - defaultSize / 2, defaultSize, defaultSize);
 	}
 
 	@Override
@@ -49,6 +50,7 @@ public class Eraser extends DrawingTool {
 		GraphicsContext gc = canvas.getGraphicsContext2D();
 		double defaultSize = (Math.pow(this.getSize(), 2) / 2);
 		gc.clearRect(x - defaultSize / 2, y - defaultSize / 2, defaultSize, defaultSize);
+		markDirty(x - defaultSize / 2, y - defaultSize / 2, defaultSize, defaultSize);
 	}
 
 	@Override
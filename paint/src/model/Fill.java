@@ -1,12 +1,8 @@
 package model;
 
-import java.util.Stack;
-
-import javafx.geometry.Point2D;
+import controller_view.DrawingCanvas;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.paint.Color;
 
 /**
@@ -15,7 +11,12 @@ import javafx.scene.paint.Color;
  * This class represents a drawing tool for filling enclosed areas on a canvas.
  * It extends the DrawingTool class and implements the 'draw' method to fill
  * enclosed areas on the canvas. Users can choose the fill color when using this
- * tool.
+ * tool. On a DrawingCanvas the FloodFill works on the tiles of the drawing in
+ * memory, never the screen, and only reads the tiles the fill reaches. On any
+ * other canvas, the canvas is read into an array of ARGB pixels, filled, and
+ * only the bounds of the filled area are written back. A
+ * tolerance lets the fill also cover colors close to the clicked one, such as
+ * the anti-aliased edges of shapes.
  * 
  * @author Vivian Alonso, Doom Al Rajhi
  * @file: Fill.java
@@ -25,6 +26,8 @@ import javafx.scene.paint.Color;
  * @version 1.6
  */
 public class Fill extends DrawingTool {
+	private FloodFill floodFill = new FloodFill(); // The fill engine, reused between fills.
+	private int[] pixels; // The pixels of a canvas other than a DrawingCanvas, reused between fills.
 
 	/**
 	 * Constructor for the Fill class.
@@ -37,7 +40,9 @@ public class Fill extends DrawingTool {
 	}
 
 	/**
-	 * Draw method to fill enclosed areas on the canvas.
+	 * Draw method to fill enclosed areas on the canvas. On a DrawingCanvas the
+	 * area is filled on the whole drawing, including the parts that are scrolled
+	 * out of view. Large drawings are filled in parallel by the FloodFill.
 	 * 
 	 * @param canvas The canvas on which to perform the fill.
 	 * @param x      The x-coordinate within the area to start filling.
@@ -45,43 +50,74 @@ public class Fill extends DrawingTool {
 	 */
 	@Override
 	public void draw(Canvas canvas, double x, double y) {
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-
-		PixelWriter pixelWriter = gc.getPixelWriter();
-		PixelReader pixelReader = canvas.snapshot(null, null).getPixelReader();
+		if (canvas instanceof DrawingCanvas drawing && drawing.isDocumentWritable()) {
+			fillDocument(drawing, drawing.getViewX() + (int) x, drawing.getViewY() + (int) y);
+			return;
+		}
 
-		// Get the color of the starting pixel
-		Color startColor = pixelReader.getColor((int) x, (int) y);
+		int width = (int) canvas.getWidth();
+		int height = (int) canvas.getHeight();
 
-		boolean[][] visited = new boolean[(int) canvas.getWidth()][(int) canvas.getHeight()];
+		// Read the whole canvas into the reused buffer in one call
+		if (pixels == null || pixels.length != width * height) {
+			pixels = new int[width * height];
+		}
+		readPixels(canvas, 0, 0, width, height, pixels);
+
+		if (floodFill.fill(pixels, width, height, (int) x, (int) y, toArgb(color))) {
+			// Write back only the bounds of the filled area
+			int left = floodFill.getMinX();
+			int top = floodFill.getMinY();
+			int fillWidth = floodFill.getFilledWidth();
+			int fillHeight = floodFill.getFilledHeight();
+			writePixels(canvas, left, top, fillWidth, fillHeight, pixels, top * width + left, width);
+		}
+	}
 
-		// Stack for a flood fill algorithm
-		Stack<Point2D> stack = new Stack<>();
-		stack.push(new Point2D(x, y));
+	/**
+	 * Fills an area of the whole drawing of a DrawingCanvas on its tiles.
+	 */
+	private void fillDocument(DrawingCanvas drawing, int x, int y) {
+		if (floodFill.fill(drawing.getDocumentLayer(), x, y, toArgb(color))) {
+			drawing.documentWritten(floodFill.getMinX(), floodFill.getMinY(), floodFill.getFilledWidth(),
+					floodFill.getFilledHeight());
+		}
+	}
 
-		while (!stack.isEmpty()) {
-			Point2D point = stack.pop();
-			int px = (int) point.getX();
-			int py = (int) point.getY();
+	/**
+	 * Sets how far a color may be from the clicked color to still be filled.
+	 * 
+	 * @param tolerance The largest color distance to fill, 0 for the exact color.
+	 */
+	public void setTolerance(int tolerance) {
+		floodFill.setTolerance(tolerance);
+	}
 
-			if (px >= 0 && px < canvas.getWidth() && py >= 0 && py < canvas.getHeight()) {
-				if (!visited[px][py]) {
-					// Mark pixel location as visited
-					visited[px][py] = true;
+	/**
+	 * Returns how far a color may be from the clicked color to still be filled.
+	 * 
+	 * @return The tolerance, 0 for the exact color.
+	 */
+	public int getTolerance() {
+		return floodFill.getTolerance();
+	}
 
-					if (pixelReader.getColor(px, py).equals(startColor)) {
-						// Set the color of the pixel to the fill color
-						pixelWriter.setColor(px, py, color);
+	/**
+	 * Sets whether the color distance is Euclidean instead of per channel.
+	 * 
+	 * @param euclidean true for the Euclidean distance over all channels.
+	 */
+	public void setEuclideanTolerance(boolean euclidean) {
+		floodFill.setEuclidean(euclidean);
+	}
 
-						// Push remaining spots to color
-						stack.push(new Point2D(px + 1, py));
-						stack.push(new Point2D(px - 1, py));
-						stack.push(new Point2D(px, py + 1));
-						stack.push(new Point2D(px, py - 1));
-					}
-				}
-			}
-		}
+	/**
+	 * Returns whether the color distance is Euclidean instead of per channel.
+	 * 
+	 * @return true for the Euclidean distance over all channels.
+	 */
+	public boolean isEuclideanTolerance() {
+		return floodFill.isEuclidean();
 	}
 
 	@Override
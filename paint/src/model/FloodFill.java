@@ -0,0 +1,618 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FloodFill: A scanline flood fill over an array of ARGB pixels.
+ *
+ * This class fills the area of connected pixels that have the same color as
+ * a starting pixel. Instead of visiting pixels one by one, it fills whole
+ * horizontal runs (spans) at a time and only remembers one seed for every run
+ * of matching pixels found above and below a filled span. The seeds are kept
+ * on a stack of primitive ints that is reused between fills, so a fill does not
+ * create an object per pixel.
+ *
+ * The bounds of the last fill are kept so that callers can write back and
+ * record only the part of the canvas that changed.
+ *
+ * With a tolerance, pixels whose color is close to the starting color are
+ * filled too, so the fill also covers the anti-aliased edges of shapes. The
+ * distance is measured per channel (no channel differs by more than the
+ * tolerance) or as the Euclidean distance over the four channels. Because a
+ * filled pixel may still be close to the starting color, a tolerant fill
+ * remembers the pixels it has filled in a bit mask.
+ *
+ * Images with at least PARALLEL_THRESHOLD pixels are filled by a
+ * ParallelFloodFill instead when there are enough cores and no tolerance. It
+ * fills exactly the same pixels on several threads. The Fill tool reaches it
+ * by filling the whole drawing rather than the part the canvas shows.
+ *
+ * A TiledImage is filled on its tiles rather than copied into one array. Only
+ * the tiles the fill reaches are read: a tile of a single color is filled as a
+ * whole without reading its pixels, and the pixels of any other tile are copied
+ * out when the fill first enters it and written back and dropped at the end.
+ * Filling a blank drawing of any size therefore reads no pixels at all.
+ *
+ * @author Vivian Alonso, Tanay Desai
+ * @file: FloodFill.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class FloodFill {
+	/**
+	 * The number of pixels from which the fill runs on several threads. Below it,
+	 * handing the tiles to other threads costs more than it saves.
+	 */
+	public static final int PARALLEL_THRESHOLD = 4096 * 4096;
+
+	/**
+	 * The number of cores needed to fill in parallel. Labeling every area of the
+	 * image takes about three times as long as the sequential fill on one core,
+	 * so fewer cores would only make the fill slower.
+	 */
+	private static final int PARALLEL_CORES = 4;
+
+	private int parallelThreshold = PARALLEL_THRESHOLD;
+	private ParallelFloodFill parallelFill; // Created for the first large image.
+
+	// Bytes with only the lowest bit of every 16-bit lane set, for the SWAR match.
+	private static final int LANE_CARRY = 0x01000100;
+
+	private int tolerance; // The largest distance from the starting color to still fill.
+	private boolean euclidean; // Whether the distance is Euclidean instead of per channel.
+	private long[] visited = new long[0]; // A bit per pixel filled by a tolerant fill.
+
+	// The per-channel range to fill, with the even (blue, red) and odd (green,
+	// alpha) channels each in the low byte of a 16-bit lane.
+	private int lowEven;
+	private int highEven;
+	private int lowOdd;
+	private int highOdd;
+
+	private int[] stack = new int[256]; // Seeds as x, y pairs.
+	private int stackSize;
+	private int[] spans = new int[384]; // Rows to fill in a TiledImage as left, right, y triples.
+	private int spanCount;
+
+	// The bounds of the pixels changed by the last fill, inclusive.
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+
+	/**
+	 * Fills the area connected to a starting pixel that has the same color as it.
+	 *
+	 * @param pixels      The pixels to fill, row by row, as ARGB ints.
+	 * @param width       The width of the image.
+	 * @param height      The height of the image.
+	 * @param x           The x-coordinate of the starting pixel.
+	 * @param y           The y-coordinate of the starting pixel.
+	 * @param replacement The ARGB color to fill with.
+	 * @return true if any pixel was changed, false otherwise.
+	 */
+	public boolean fill(int[] pixels, int width, int height, int x, int y, int replacement) {
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		int target = pixels[y * width + x];
+		if (tolerance > 0) {
+			// Even with the clicked color, the pixels close to it may differ
+			return fillTolerant(pixels, width, height, x, y, target, replacement);
+		}
+		if (target == replacement) {
+			// Filling with the same color would never finish
+			return false;
+		}
+
+		if ((long) width * height >= parallelThreshold
+				&& ForkJoinPool.getCommonPoolParallelism() >= PARALLEL_CORES) {
+			if (parallelFill == null) {
+				parallelFill = new ParallelFloodFill();
+			}
+			boolean changed = parallelFill.fill(pixels, width, height, x, y, replacement);
+			if (changed) {
+				minX = parallelFill.getMinX();
+				minY = parallelFill.getMinY();
+				maxX = minX + parallelFill.getFilledWidth() - 1;
+				maxY = minY + parallelFill.getFilledHeight() - 1;
+			}
+			return changed;
+		}
+
+		stackSize = 0;
+		push(x, y);
+		while (stackSize > 0) {
+			int seedY = stack[--stackSize];
+			int seedX = stack[--stackSize];
+			int row = seedY * width;
+			if (pixels[row + seedX] != target) {
+				// Already filled through another seed
+				continue;
+			}
+
+			// Find the ends of the span through the seed
+			int left = seedX;
+			while (left > 0 && pixels[row + left - 1] == target) {
+				left--;
+			}
+			int right = seedX;
+			while (right < width - 1 && pixels[row + right + 1] == target) {
+				right++;
+			}
+
+			Arrays.fill(pixels, row + left, row + right + 1, replacement);
+			minX = Math.min(minX, left);
+			maxX = Math.max(maxX, right);
+			minY = Math.min(minY, seedY);
+			maxY = Math.max(maxY, seedY);
+
+			if (seedY > 0) {
+				pushRuns(pixels, (seedY - 1) * width, seedY - 1, left, right, target);
+			}
+			if (seedY < height - 1) {
+				pushRuns(pixels, (seedY + 1) * width, seedY + 1, left, right, target);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fills the area connected to a starting pixel of a TiledImage that has the
+	 * same color as it, or a color within the tolerance of it. Large images are
+	 * filled in parallel like arrays are.
+	 *
+	 * @param image       The image to fill.
+	 * @param x           The x-coordinate of the starting pixel.
+	 * @param y           The y-coordinate of the starting pixel.
+	 * @param replacement The ARGB color to fill with.
+	 * @return true if any pixel was changed, false otherwise.
+	 */
+	public boolean fill(TiledImage image, int x, int y, int replacement) {
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		int target = image.getPixel(x, y);
+		if (tolerance > 0) {
+			setRange(target);
+		} else if (target == replacement) {
+			return false;
+		} else if ((long) width * height >= parallelThreshold
+				&& ForkJoinPool.getCommonPoolParallelism() >= PARALLEL_CORES) {
+			if (parallelFill == null) {
+				parallelFill = new ParallelFloodFill();
+			}
+			boolean changed = parallelFill.fill(image, x, y, replacement);
+			if (changed) {
+				minX = parallelFill.getMinX();
+				minY = parallelFill.getMinY();
+				maxX = minX + parallelFill.getFilledWidth() - 1;
+				maxY = minY + parallelFill.getFilledHeight() - 1;
+			}
+			return changed;
+		}
+
+		int tilesX = image.getTilesX();
+		int tileCount = tilesX * image.getTilesY();
+		int[][] tilePixels = new int[tileCount][]; // The tiles copied out so far.
+		long[][] tileVisited = new long[tileCount][]; // A bit per pixel filled, for a tolerant fill.
+		BitSet filledTiles = new BitSet(); // The tiles of a single color filled as a whole.
+		BitSet changedTiles = new BitSet(); // The copied tiles that have to be written back.
+		boolean changed = false;
+
+		spanCount = 0;
+		pushSpan(x, x, y);
+		while (spanCount > 0) {
+			int spanY = spans[--spanCount];
+			int spanRight = spans[--spanCount];
+			int spanLeft = spans[--spanCount];
+			int tileX = spanLeft / TiledImage.TILE_SIZE;
+			int tileY = spanY / TiledImage.TILE_SIZE;
+			int tile = tileY * tilesX + tileX;
+			int tileLeft = tileX * TiledImage.TILE_SIZE;
+			int tileTop = tileY * TiledImage.TILE_SIZE;
+			int tileWidth = image.getTileWidth(tileX);
+			int tileHeight = image.getTileHeight(tileY);
+
+			if (tilePixels[tile] == null && image.isUniform(tileX, tileY)) {
+				// The whole tile is connected, so it is filled at once or not at all
+				int color = image.getUniformColor(tileX, tileY);
+				if (filledTiles.get(tile) || (tolerance > 0 ? !matches(color, target) : color != target)) {
+					continue;
+				}
+				filledTiles.set(tile);
+				image.fill(tileLeft, tileTop, tileWidth, tileHeight, replacement);
+				changed |= color != replacement;
+				minX = Math.min(minX, tileLeft);
+				maxX = Math.max(maxX, tileLeft + tileWidth - 1);
+				minY = Math.min(minY, tileTop);
+				maxY = Math.max(maxY, tileTop + tileHeight - 1);
+				for (int row = tileTop; row < tileTop + tileHeight; row++) {
+					if (tileLeft > 0) {
+						pushSpan(tileLeft - 1, tileLeft - 1, row);
+					}
+					if (tileLeft + tileWidth < width) {
+						pushSpan(tileLeft + tileWidth, tileLeft + tileWidth, row);
+					}
+				}
+				if (tileTop > 0) {
+					pushSpan(tileLeft, tileLeft + tileWidth - 1, tileTop - 1);
+				}
+				if (tileTop + tileHeight < height) {
+					pushSpan(tileLeft, tileLeft + tileWidth - 1, tileTop + tileHeight);
+				}
+				continue;
+			}
+
+			int[] pixels = tilePixels[tile];
+			if (pixels == null) {
+				pixels = new int[tileWidth * tileHeight];
+				image.getPixels(tileLeft, tileTop, tileWidth, tileHeight, pixels, 0, tileWidth);
+				tilePixels[tile] = pixels;
+				if (tolerance > 0) {
+					tileVisited[tile] = new long[(pixels.length + 63) >>> 6];
+				}
+			}
+			long[] mask = tileVisited[tile];
+			int row = (spanY - tileTop) * tileWidth;
+
+			// Fill every run of fillable pixels that starts within the span
+			for (int column = spanLeft - tileLeft; column <= spanRight - tileLeft; column++) {
+				if (!canFill(pixels, mask, row + column, target)) {
+					continue;
+				}
+				int left = column;
+				while (left > 0 && canFill(pixels, mask, row + left - 1, target)) {
+					left--;
+				}
+				int right = column;
+				while (right < tileWidth - 1 && canFill(pixels, mask, row + right + 1, target)) {
+					right++;
+				}
+
+				for (int index = row + left; !changed && index <= row + right; index++) {
+					changed = pixels[index] != replacement;
+				}
+				if (mask != null) {
+					markVisited(mask, row + left, row + right);
+				}
+				Arrays.fill(pixels, row + left, row + right + 1, replacement);
+				changedTiles.set(tile);
+				minX = Math.min(minX, tileLeft + left);
+				maxX = Math.max(maxX, tileLeft + right);
+				minY = Math.min(minY, spanY);
+				maxY = Math.max(maxY, spanY);
+
+				// The rows above and below, and the tiles beside the ends of the run
+				if (spanY > 0) {
+					pushSpan(tileLeft + left, tileLeft + right, spanY - 1);
+				}
+				if (spanY < height - 1) {
+					pushSpan(tileLeft + left, tileLeft + right, spanY + 1);
+				}
+				if (left == 0 && tileLeft > 0) {
+					pushSpan(tileLeft - 1, tileLeft - 1, spanY);
+				}
+				if (right == tileWidth - 1 && tileLeft + tileWidth < width) {
+					pushSpan(tileLeft + tileWidth, tileLeft + tileWidth, spanY);
+				}
+				column = right;
+			}
+		}
+
+		for (int tile = changedTiles.nextSetBit(0); tile >= 0; tile = changedTiles.nextSetBit(tile + 1)) {
+			int tileX = tile % tilesX;
+			int tileY = tile / tilesX;
+			int tileWidth = image.getTileWidth(tileX);
+			image.setPixels(tileX * TiledImage.TILE_SIZE, tileY * TiledImage.TILE_SIZE, tileWidth,
+					image.getTileHeight(tileY), tilePixels[tile], 0, tileWidth);
+		}
+		return changed;
+	}
+
+	/**
+	 * Sets how far a color may be from the starting color to still be filled.
+	 *
+	 * @param tolerance The largest distance to fill, from 0 (only the exact
+	 *                  color) up to 255 per channel or 510 for the Euclidean
+	 *                  distance.
+	 */
+	public void setTolerance(int tolerance) {
+		this.tolerance = Math.max(0, Math.min(tolerance, 510));
+	}
+
+	/**
+	 * Returns how far a color may be from the starting color to still be filled.
+	 *
+	 * @return The tolerance.
+	 */
+	public int getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets how the distance between colors is measured.
+	 *
+	 * @param euclidean true to use the Euclidean distance over the four channels,
+	 *                  false to use the largest difference of a single channel.
+	 */
+	public void setEuclidean(boolean euclidean) {
+		this.euclidean = euclidean;
+	}
+
+	/**
+	 * Returns whether the distance between colors is Euclidean.
+	 *
+	 * @return true for the Euclidean distance, false for per channel.
+	 */
+	public boolean isEuclidean() {
+		return euclidean;
+	}
+
+	/**
+	 * Sets the number of pixels from which the fill runs on several threads.
+	 *
+	 * @param parallelThreshold The smallest image size, in pixels, to fill in
+	 *                          parallel. Integer.MAX_VALUE always fills on the
+	 *                          calling thread.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Fills the pixels connected to a seed that are within the tolerance of the
+	 * target color. Filled pixels are marked in the visited mask instead of being
+	 * recognized by their color, so this finishes even when the replacement is
+	 * the target color.
+	 *
+	 * @return true if any pixel was changed.
+	 */
+	private boolean fillTolerant(int[] pixels, int width, int height, int x, int y, int target, int replacement) {
+		setRange(target);
+		int words = (width * height + 63) >>> 6;
+		if (visited.length < words) {
+			visited = new long[words];
+		} else {
+			Arrays.fill(visited, 0, words, 0L);
+		}
+
+		boolean changed = false;
+		stackSize = 0;
+		push(x, y);
+		while (stackSize > 0) {
+			int seedY = stack[--stackSize];
+			int seedX = stack[--stackSize];
+			int row = seedY * width;
+			if (isVisited(row + seedX)) {
+				continue;
+			}
+
+			int left = seedX;
+			while (left > 0 && canFill(pixels, row + left - 1, target)) {
+				left--;
+			}
+			int right = seedX;
+			while (right < width - 1 && canFill(pixels, row + right + 1, target)) {
+				right++;
+			}
+
+			markVisited(row + left, row + right);
+			for (int index = row + left; !changed && index <= row + right; index++) {
+				changed = pixels[index] != replacement;
+			}
+			Arrays.fill(pixels, row + left, row + right + 1, replacement);
+			minX = Math.min(minX, left);
+			maxX = Math.max(maxX, right);
+			minY = Math.min(minY, seedY);
+			maxY = Math.max(maxY, seedY);
+
+			if (seedY > 0) {
+				pushTolerantRuns(pixels, (seedY - 1) * width, seedY - 1, left, right, target);
+			}
+			if (seedY < height - 1) {
+				pushTolerantRuns(pixels, (seedY + 1) * width, seedY + 1, left, right, target);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Pushes one seed for every run of fillable pixels in part of a row.
+	 */
+	private void pushTolerantRuns(int[] pixels, int row, int y, int left, int right, int target) {
+		boolean inRun = false;
+		for (int x = left; x <= right; x++) {
+			if (canFill(pixels, row + x, target)) {
+				if (!inRun) {
+					push(x, y);
+					inRun = true;
+				}
+			} else {
+				inRun = false;
+			}
+		}
+	}
+
+	/**
+	 * Marks a span of pixels as filled in the mask of the current fill.
+	 */
+	private void markVisited(int first, int last) {
+		markVisited(visited, first, last);
+	}
+
+	/**
+	 * Marks a span of pixels as filled in a mask, a whole word of it at a time.
+	 */
+	private static void markVisited(long[] visited, int first, int last) {
+		int firstWord = first >>> 6;
+		int lastWord = last >>> 6;
+		long firstMask = -1L << first;
+		long lastMask = -1L >>> (63 - (last & 63));
+		if (firstWord == lastWord) {
+			visited[firstWord] |= firstMask & lastMask;
+			return;
+		}
+		visited[firstWord] |= firstMask;
+		Arrays.fill(visited, firstWord + 1, lastWord, -1L);
+		visited[lastWord] |= lastMask;
+	}
+
+	/**
+	 * Returns whether a pixel has been filled by the current tolerant fill.
+	 */
+	private boolean isVisited(int index) {
+		return (visited[index >>> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * Returns whether a pixel of a tile has not been filled yet and can be. An
+	 * exact fill, which has no mask, recognizes filled pixels by their color.
+	 */
+	private boolean canFill(int[] pixels, long[] mask, int index, int target) {
+		if (mask == null) {
+			return pixels[index] == target;
+		}
+		return (mask[index >>> 6] & 1L << index) == 0 && matches(pixels[index], target);
+	}
+
+	/**
+	 * Returns whether a pixel has not been filled yet and is within the tolerance
+	 * of the target color.
+	 */
+	private boolean canFill(int[] pixels, int index, int target) {
+		return !isVisited(index) && matches(pixels[index], target);
+	}
+
+	/**
+	 * Returns whether a color is within the tolerance of the target color, using
+	 * the range set for the current fill.
+	 */
+	private boolean matches(int argb, int target) {
+		if (euclidean) {
+			int alpha = (argb >>> 24) - (target >>> 24);
+			int red = (argb >> 16 & 0xFF) - (target >> 16 & 0xFF);
+			int green = (argb >> 8 & 0xFF) - (target >> 8 & 0xFF);
+			int blue = (argb & 0xFF) - (target & 0xFF);
+			return alpha * alpha + red * red + green * green + blue * blue <= tolerance * tolerance;
+		}
+
+		// Test all four channels at once. With every channel in its own 16-bit
+		// lane, (channel + 256 - low) keeps bit 8 of the lane set exactly when
+		// channel >= low, and (high + 256 - channel) when channel <= high.
+		int even = argb & 0x00FF00FF;
+		int odd = argb >>> 8 & 0x00FF00FF;
+		int inRange = ((even | LANE_CARRY) - lowEven) & ((highEven | LANE_CARRY) - even)
+				& ((odd | LANE_CARRY) - lowOdd) & ((highOdd | LANE_CARRY) - odd);
+		return (inRange & LANE_CARRY) == LANE_CARRY;
+	}
+
+	/**
+	 * Sets the per-channel range of colors that match the target color.
+	 */
+	private void setRange(int target) {
+		int low = 0;
+		int high = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int channel = target >>> shift & 0xFF;
+			low |= Math.max(channel - tolerance, 0) << shift;
+			high |= Math.min(channel + tolerance, 0xFF) << shift;
+		}
+		lowEven = low & 0x00FF00FF;
+		highEven = high & 0x00FF00FF;
+		lowOdd = low >>> 8 & 0x00FF00FF;
+		highOdd = high >>> 8 & 0x00FF00FF;
+	}
+
+	/**
+	 * Pushes one seed for every run of target-colored pixels in part of a row.
+	 */
+	private void pushRuns(int[] pixels, int row, int y, int left, int right, int target) {
+		boolean inRun = false;
+		for (int x = left; x <= right; x++) {
+			if (pixels[row + x] == target) {
+				if (!inRun) {
+					push(x, y);
+					inRun = true;
+				}
+			} else {
+				inRun = false;
+			}
+		}
+	}
+
+	/**
+	 * Pushes a span of a row of a TiledImage to fill, which lies within one tile.
+	 */
+	private void pushSpan(int left, int right, int y) {
+		if (spanCount + 3 > spans.length) {
+			spans = Arrays.copyOf(spans, spans.length * 2);
+		}
+		spans[spanCount++] = left;
+		spans[spanCount++] = right;
+		spans[spanCount++] = y;
+	}
+
+	/**
+	 * Pushes a seed onto the stack, growing it when it is full.
+	 */
+	private void push(int x, int y) {
+		if (stackSize + 2 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		stack[stackSize++] = x;
+		stack[stackSize++] = y;
+	}
+
+	/**
+	 * Returns the x-coordinate of the left edge of the last filled area.
+	 *
+	 * @return The smallest filled x-coordinate.
+	 */
+	public int getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns the y-coordinate of the top edge of the last filled area.
+	 *
+	 * @return The smallest filled y-coordinate.
+	 */
+	public int getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Returns the width of the last filled area.
+	 *
+	 * @return The width of the bounds of the filled pixels, or 0 if none.
+	 */
+	public int getFilledWidth() {
+		return maxX < minX ? 0 : maxX - minX + 1;
+	}
+
+	/**
+	 * Returns the height of the last filled area.
+	 *
+	 * @return The height of the bounds of the filled pixels, or 0 if none.
+	 */
+	public int getFilledHeight() {
+		return maxY < minY ? 0 : maxY - minY + 1;
+	}
+}
@@ -0,0 +1,110 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * ImageImporter: Decodes image files for loading them onto the canvas.
+ *
+ * This class reads PNG, JPEG, BMP and GIF files (and any other format ImageIO
+ * has a reader for) through an ImageReader. When an image has more pixels than
+ * the configured limit, the reader is asked to decode only every n-th pixel of
+ * every n-th row, so a huge photo is scaled down while it is decoded instead of
+ * being decoded at full resolution first.
+ *
+ * @author Tanay Desai
+ * @file: ImageImporter.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ImageImporter {
+	/**
+	 * The default largest number of pixels of an imported image.
+	 */
+	public static final int DEFAULT_MAX_PIXELS = 4096 * 4096;
+
+	private int maxPixels; // The largest number of pixels to decode.
+
+	/**
+	 * Constructor for the ImageImporter class, using the default pixel limit.
+	 */
+	public ImageImporter() {
+		this(DEFAULT_MAX_PIXELS);
+	}
+
+	/**
+	 * Constructor for the ImageImporter class.
+	 *
+	 * @param maxPixels The largest number of pixels to decode. Larger images are
+	 *                  subsampled to fit.
+	 */
+	public ImageImporter(int maxPixels) {
+		this.maxPixels = Math.max(1, maxPixels);
+	}
+
+	/**
+	 * Decodes the first image of a file, subsampled if it has more pixels than the
+	 * limit.
+	 *
+	 * @param file The image file.
+	 * @return The decoded image.
+	 * @throws IOException If the file cannot be read or has no supported format.
+	 */
+	public BufferedImage read(File file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			if (input == null) {
+				throw new IOException("Cannot open " + file);
+			}
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + file.getName());
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				ImageReadParam parameters = reader.getDefaultReadParam();
+				int step = getSubsampling(reader.getWidth(0), reader.getHeight(0));
+				if (step > 1) {
+					parameters.setSourceSubsampling(step, step, 0, 0);
+				}
+				return reader.read(0, parameters);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest subsampling step that brings an image within the pixel
+	 * limit.
+	 *
+	 * @param width  The width of the image.
+	 * @param height The height of the image.
+	 * @return 1 if the image fits, otherwise how many pixels to skip in each
+	 *         direction for every pixel decoded.
+	 */
+	public int getSubsampling(int width, int height) {
+		int step = (int) Math.max(1, Math.floor(Math.sqrt((double) width * height / maxPixels)));
+		while (subsampledPixels(width, height, step) > maxPixels) {
+			step++;
+		}
+		return step;
+	}
+
+	/**
+	 * Returns the number of pixels an image has when subsampled with a step.
+	 */
+	private static long subsampledPixels(int width, int height, int step) {
+		return (long) ((width + step - 1) / step) * ((height + step - 1) / step);
+	}
+}
@@ -0,0 +1,517 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javafx.scene.effect.BlendMode;
+
+/**
+ * LayerStack: The layers of a drawing and the flattened image they make.
+ *
+ * Every layer is a TiledImage of the same size with its own opacity, blend
+ * mode, visibility and undo history. Layers are numbered from the bottom up.
+ *
+ * The flattened composite is kept as a TiledImage of its own and only the
+ * tiles marked dirty since it was last read are composited again. A tile on
+ * which every visible layer is a single color is composited as that one color,
+ * so blank areas cost the same whatever the number of layers. A stack of a
+ * single plain layer has no composite at all: the layer is its own composite.
+ *
+ * Blending follows the separable blend modes of the W3C compositing
+ * specification; BLEND_MODES lists the modes supported. The stack is not
+ * thread-safe.
+ *
+ * @author Tanay Desai
+ * @file: LayerStack.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class LayerStack {
+	/**
+	 * The blend modes a layer can have.
+	 */
+	public static final List<BlendMode> BLEND_MODES = List.of(BlendMode.SRC_OVER, BlendMode.MULTIPLY,
+			BlendMode.SCREEN, BlendMode.OVERLAY, BlendMode.DARKEN, BlendMode.LIGHTEN, BlendMode.COLOR_DODGE,
+			BlendMode.COLOR_BURN, BlendMode.HARD_LIGHT, BlendMode.DIFFERENCE, BlendMode.EXCLUSION, BlendMode.ADD);
+
+	private static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	private final List<Layer> layers = new ArrayList<>();
+	private TiledImage composite; // Null until the stack is more than one plain layer.
+	private BitSet dirty = new BitSet(); // The tiles of the composite to composite again.
+	private int[] tile = new int[TILE_SIZE * TILE_SIZE]; // The tile being composited.
+	private int[] source = new int[TILE_SIZE * TILE_SIZE]; // The pixels of a layer under it.
+
+	/**
+	 * Constructor for a stack holding a single layer.
+	 *
+	 * @param image   The pixels of the layer.
+	 * @param history The undo history of the layer, which already knows the
+	 *                pixels.
+	 */
+	public LayerStack(TiledImage image, UndoRedoManager history) {
+		layers.add(new Layer(image, history, "Layer 1"));
+	}
+
+	/**
+	 * Adds a layer. Its undo history starts out with its pixels.
+	 *
+	 * @param index The position of the new layer, 0 for the bottom.
+	 * @param image The pixels of the layer, the size of the other layers.
+	 * @param name  The name of the layer.
+	 */
+	public void addLayer(int index, TiledImage image, String name) {
+		if (image.getWidth() != getWidth() || image.getHeight() != getHeight()) {
+			throw new IllegalArgumentException("Layer size " + image.getWidth() + "x" + image.getHeight()
+					+ " does not match " + getWidth() + "x" + getHeight());
+		}
+		UndoRedoManager history = new UndoRedoManager();
+		history.addNewAction(image);
+		layers.add(index, new Layer(image, history, name));
+		invalidateAll();
+	}
+
+	/**
+	 * Removes a layer and drops its undo history. The last layer cannot be
+	 * removed.
+	 *
+	 * @param index The position of the layer.
+	 */
+	public void removeLayer(int index) {
+		if (layers.size() == 1) {
+			throw new IllegalStateException("Cannot remove the last layer");
+		}
+		layers.remove(index).history.dispose();
+		invalidateAll();
+	}
+
+	/**
+	 * Moves a layer up or down the stack.
+	 *
+	 * @param from The position of the layer.
+	 * @param to   The new position of the layer.
+	 */
+	public void moveLayer(int from, int to) {
+		layers.add(to, layers.remove(from));
+		invalidateAll();
+	}
+
+	/**
+	 * Drops every layer but one, and the undo histories of the dropped layers.
+	 * The layer kept becomes the only layer.
+	 *
+	 * @param index The position of the layer to keep.
+	 */
+	public void keepOnly(int index) {
+		Layer layer = layers.get(index);
+		for (Layer other : layers) {
+			if (other != layer) {
+				other.history.dispose();
+			}
+		}
+		layers.clear();
+		layers.add(layer);
+		invalidateAll();
+	}
+
+	/**
+	 * Returns the number of layers.
+	 *
+	 * @return The number of layers, at least 1.
+	 */
+	public int size() {
+		return layers.size();
+	}
+
+	/**
+	 * Returns the width of the layers.
+	 *
+	 * @return The width in pixels.
+	 */
+	public int getWidth() {
+		return layers.get(0).image.getWidth();
+	}
+
+	/**
+	 * Returns the height of the layers.
+	 *
+	 * @return The height in pixels.
+	 */
+	public int getHeight() {
+		return layers.get(0).image.getHeight();
+	}
+
+	/**
+	 * Returns the pixels of a layer. Changes to them must be reported through
+	 * invalidate.
+	 *
+	 * @param index The position of the layer.
+	 * @return The pixels of the layer.
+	 */
+	public TiledImage getImage(int index) {
+		return layers.get(index).image;
+	}
+
+	/**
+	 * Replaces the pixels of a layer, such as with a resized copy. The layers may
+	 * differ in size until all of them are replaced.
+	 *
+	 * @param index The position of the layer.
+	 * @param image The new pixels of the layer.
+	 */
+	public void setImage(int index, TiledImage image) {
+		layers.get(index).image = image;
+		invalidateAll();
+	}
+
+	/**
+	 * Returns the undo history of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The history of the layer's pixels.
+	 */
+	public UndoRedoManager getHistory(int index) {
+		return layers.get(index).history;
+	}
+
+	/**
+	 * Finds the layer an undo history belongs to.
+	 *
+	 * @param history The undo history.
+	 * @return The position of the layer, or -1 if it was removed.
+	 */
+	public int indexOf(UndoRedoManager history) {
+		for (int index = 0; index < layers.size(); index++) {
+			if (layers.get(index).history == history) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the name of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The name.
+	 */
+	public String getName(int index) {
+		return layers.get(index).name;
+	}
+
+	/**
+	 * Returns the opacity of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The opacity, from 0 to 1.
+	 */
+	public double getOpacity(int index) {
+		return layers.get(index).opacity;
+	}
+
+	/**
+	 * Sets the opacity of a layer.
+	 *
+	 * @param index   The position of the layer.
+	 * @param opacity The opacity, clamped to 0 to 1.
+	 */
+	public void setOpacity(int index, double opacity) {
+		layers.get(index).opacity = Math.max(0, Math.min(1, opacity));
+		invalidateAll();
+	}
+
+	/**
+	 * Returns the blend mode of a layer.
+	 *
+	 * @param index The position of the layer.
+	 * @return The blend mode.
+	 */
+	public BlendMode getBlendMode(int index) {
+		return layers.get(index).blendMode;
+	}
+
+	/**
+	 * Sets how a layer is blended with the layers under it.
+	 *
+	 * @param index     The position of the layer.
+	 * @param blendMode One of BLEND_MODES.
+	 */
+	public void setBlendMode(int index, BlendMode blendMode) {
+		if (!BLEND_MODES.contains(blendMode)) {
+			throw new IllegalArgumentException("Unsupported blend mode " + blendMode);
+		}
+		layers.get(index).blendMode = blendMode;
+		invalidateAll();
+	}
+
+	/**
+	 * Returns whether a layer is shown.
+	 *
+	 * @param index The position of the layer.
+	 * @return true if the layer is visible.
+	 */
+	public boolean isVisible(int index) {
+		return layers.get(index).visible;
+	}
+
+	/**
+	 * Shows or hides a layer.
+	 *
+	 * @param index   The position of the layer.
+	 * @param visible true to show the layer.
+	 */
+	public void setVisible(int index, boolean visible) {
+		layers.get(index).visible = visible;
+		invalidateAll();
+	}
+
+	/**
+	 * Checks whether the stack is a single layer shown as it is, which is then its
+	 * own composite.
+	 *
+	 * @return true for a single visible, opaque layer blended normally.
+	 */
+	public boolean isPlain() {
+		Layer layer = layers.get(0);
+		return layers.size() == 1 && layer.visible && layer.opacity == 1 && layer.blendMode == BlendMode.SRC_OVER;
+	}
+
+	/**
+	 * Marks an area of the composite as dirty, because a layer changed there.
+	 *
+	 * @param x     The x-coordinate of the area.
+	 * @param y     The y-coordinate of the area.
+	 * @param areaW The width of the area.
+	 * @param areaH The height of the area.
+	 */
+	public void invalidate(int x, int y, int areaW, int areaH) {
+		if (composite == null) {
+			return;
+		}
+		int left = Math.max(0, x) / TILE_SIZE;
+		int top = Math.max(0, y) / TILE_SIZE;
+		int right = Math.min(composite.getWidth(), x + areaW);
+		int bottom = Math.min(composite.getHeight(), y + areaH);
+		for (int tileY = top; tileY * TILE_SIZE < bottom; tileY++) {
+			for (int tileX = left; tileX * TILE_SIZE < right; tileX++) {
+				dirty.set(tileY * composite.getTilesX() + tileX);
+			}
+		}
+	}
+
+	/**
+	 * Returns the flattened image of all visible layers, compositing its dirty
+	 * tiles first. It must only be read, and stays the same image until the
+	 * layers are resized.
+	 *
+	 * @return The composite.
+	 */
+	public TiledImage getComposite() {
+		if (isPlain()) {
+			composite = null;
+			return layers.get(0).image;
+		}
+		if (composite == null || composite.getWidth() != getWidth() || composite.getHeight() != getHeight()) {
+			composite = new TiledImage(getWidth(), getHeight(), 0);
+			invalidateAll();
+		}
+		for (int index = dirty.nextSetBit(0); index >= 0; index = dirty.nextSetBit(index + 1)) {
+			compositeTile(index % composite.getTilesX(), index / composite.getTilesX());
+		}
+		dirty.clear();
+		return composite;
+	}
+
+	/**
+	 * Composites a range of layers over transparency for an area, such as the
+	 * layers under the one being drawn on.
+	 *
+	 * @param from   The position of the lowest layer.
+	 * @param to     The position after the highest layer.
+	 * @param x      The x-coordinate of the area.
+	 * @param y      The y-coordinate of the area.
+	 * @param areaW  The width of the area.
+	 * @param areaH  The height of the area.
+	 * @param pixels Receives the composited pixels, areaW by areaH.
+	 */
+	public void composite(int from, int to, int x, int y, int areaW, int areaH, int[] pixels) {
+		Arrays.fill(pixels, 0, areaW * areaH, 0);
+		int[] layerPixels = null;
+		for (int index = from; index < to; index++) {
+			Layer layer = layers.get(index);
+			if (!layer.visible || layer.opacity == 0) {
+				continue;
+			}
+			if (layerPixels == null) {
+				layerPixels = new int[areaW * areaH];
+			}
+			layer.image.getPixels(x, y, areaW, areaH, layerPixels, 0, areaW);
+			for (int pixel = 0; pixel < areaW * areaH; pixel++) {
+				pixels[pixel] = blend(pixels[pixel], layerPixels[pixel], layer.opacity, layer.blendMode);
+			}
+		}
+	}
+
+	/**
+	 * Marks the whole composite as dirty.
+	 */
+	private void invalidateAll() {
+		if (composite != null) {
+			dirty.set(0, composite.getTilesX() * composite.getTilesY());
+		}
+	}
+
+	/**
+	 * Composites one tile of the visible layers into the composite.
+	 */
+	private void compositeTile(int tileX, int tileY) {
+		int x = tileX * TILE_SIZE;
+		int y = tileY * TILE_SIZE;
+		int tileWidth = composite.getTileWidth(tileX);
+		int tileHeight = composite.getTileHeight(tileY);
+		int count = tileWidth * tileHeight;
+
+		// Layers of a single color here blend as that color
+		boolean uniform = true;
+		int color = 0;
+		for (Layer layer : layers) {
+			if (!layer.visible || layer.opacity == 0) {
+				continue;
+			}
+			if (!layer.image.isUniform(tileX, tileY)) {
+				uniform = false;
+				break;
+			}
+			color = blend(color, layer.image.getUniformColor(tileX, tileY), layer.opacity, layer.blendMode);
+		}
+		if (uniform) {
+			composite.fill(x, y, tileWidth, tileHeight, color);
+			return;
+		}
+
+		Arrays.fill(tile, 0, count, 0);
+		for (Layer layer : layers) {
+			if (!layer.visible || layer.opacity == 0) {
+				continue;
+			}
+			if (layer.image.isUniform(tileX, tileY)) {
+				int layerColor = layer.image.getUniformColor(tileX, tileY);
+				if (layerColor >>> 24 == 0) {
+					// Transparency leaves what is under it as it is
+					continue;
+				}
+				for (int pixel = 0; pixel < count; pixel++) {
+					tile[pixel] = blend(tile[pixel], layerColor, layer.opacity, layer.blendMode);
+				}
+			} else {
+				layer.image.getPixels(x, y, tileWidth, tileHeight, source, 0, tileWidth);
+				for (int pixel = 0; pixel < count; pixel++) {
+					tile[pixel] = blend(tile[pixel], source[pixel], layer.opacity, layer.blendMode);
+				}
+			}
+		}
+		composite.setPixels(x, y, tileWidth, tileHeight, tile, 0, tileWidth);
+	}
+
+	/**
+	 * Blends a pixel of a layer over the pixel under it.
+	 *
+	 * @param backdrop  The ARGB pixel under the layer.
+	 * @param pixel     The ARGB pixel of the layer.
+	 * @param opacity   The opacity of the layer.
+	 * @param blendMode The blend mode of the layer.
+	 * @return The blended ARGB pixel.
+	 */
+	private static int blend(int backdrop, int pixel, double opacity, BlendMode blendMode) {
+		double sourceAlpha = (pixel >>> 24) / 255.0 * opacity;
+		if (sourceAlpha == 0) {
+			return backdrop;
+		}
+		double backdropAlpha = (backdrop >>> 24) / 255.0;
+		if (blendMode == BlendMode.SRC_OVER && sourceAlpha == 1) {
+			return pixel;
+		}
+
+		double alpha = sourceAlpha + backdropAlpha * (1 - sourceAlpha);
+		int result = (int) Math.round(alpha * 255) << 24;
+		for (int shift = 16; shift >= 0; shift -= 8) {
+			double source = (pixel >> shift & 0xFF) / 255.0;
+			double under = (backdrop >> shift & 0xFF) / 255.0;
+			double mixed = (1 - backdropAlpha) * source + backdropAlpha * mix(under, source, blendMode);
+			double channel = (sourceAlpha * mixed + (1 - sourceAlpha) * backdropAlpha * under) / alpha;
+			result |= (int) Math.round(Math.max(0, Math.min(1, channel)) * 255) << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Mixes one color channel of a layer with the channel under it.
+	 */
+	private static double mix(double under, double source, BlendMode blendMode) {
+		switch (blendMode) {
+		case MULTIPLY:
+			return under * source;
+		case SCREEN:
+			return under + source - under * source;
+		case OVERLAY:
+			return hardLight(source, under);
+		case DARKEN:
+			return Math.min(under, source);
+		case LIGHTEN:
+			return Math.max(under, source);
+		case COLOR_DODGE:
+			if (under == 0) {
+				return 0;
+			}
+			return source == 1 ? 1 : Math.min(1, under / (1 - source));
+		case COLOR_BURN:
+			if (under == 1) {
+				return 1;
+			}
+			return source == 0 ? 0 : 1 - Math.min(1, (1 - under) / source);
+		case HARD_LIGHT:
+			return hardLight(under, source);
+		case DIFFERENCE:
+			return Math.abs(under - source);
+		case EXCLUSION:
+			return under + source - 2 * under * source;
+		case ADD:
+			return Math.min(1, under + source);
+		default:
+			return source;
+		}
+	}
+
+	/**
+	 * The hard light blend of a channel, which overlay is with the layers
+	 * swapped.
+	 */
+	private static double hardLight(double under, double source) {
+		return source <= 0.5 ? under * 2 * source : under + (2 * source - 1) - under * (2 * source - 1);
+	}
+
+	/**
+	 * A layer of the stack.
+	 */
+	private static class Layer {
+		private TiledImage image;
+		private final UndoRedoManager history;
+		private final String name;
+		private double opacity = 1;
+		private BlendMode blendMode = BlendMode.SRC_OVER;
+		private boolean visible = true;
+
+		/**
+		 * Constructor for the Layer class.
+		 */
+		private Layer(TiledImage image, UndoRedoManager history, String name) {
+			this.image = image;
+			this.history = history;
+			this.name = name;
+		}
+	}
+}
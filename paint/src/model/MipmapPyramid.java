@@ -0,0 +1,248 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * MipmapPyramid: Smaller copies of a TiledImage for showing it zoomed out.
+ *
+ * Level 0 is the image itself, and every level above is half the size of the
+ * one below, each pixel the average of a 2x2 box of pixels below it. The
+ * levels are TiledImages on the same tile grid, so the tiles of a level that
+ * cover blank parts of the image stay a single color and cost nothing to
+ * build.
+ *
+ * Nothing is computed up front. A level is created when it is first read, and
+ * only the tiles that are read are computed, from the tiles below them. When
+ * part of the image changes, only the tiles over that part are marked stale on
+ * every level, and they are computed again the next time they are read. So
+ * showing a zoomed out view of a huge image costs about as much as the pixels
+ * on the screen once the pyramid is built, and a stroke only costs the few
+ * tiles under it.
+ *
+ * Averages are weighted by alpha, so transparent pixels do not darken the
+ * colors next to them. The pyramid is not thread-safe.
+ *
+ * @author Tanay Desai
+ * @file: MipmapPyramid.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class MipmapPyramid {
+	private static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	private final TiledImage image;
+	private final int width; // The size of the image when the pyramid was made.
+	private final int height;
+	private final List<TiledImage> levels = new ArrayList<>(); // Level 1 and up.
+	private final List<BitSet> stale = new ArrayList<>(); // The tiles of each level to compute again.
+
+	private int[] below = new int[4 * TILE_SIZE * TILE_SIZE]; // The pixels under a tile being computed.
+	private int[] tile = new int[TILE_SIZE * TILE_SIZE]; // The tile being computed.
+
+	/**
+	 * Constructor for the MipmapPyramid class.
+	 *
+	 * @param image The full size image, level 0 of the pyramid.
+	 */
+	public MipmapPyramid(TiledImage image) {
+		this.image = image;
+		width = image.getWidth();
+		height = image.getHeight();
+	}
+
+	/**
+	 * Checks whether the pyramid can still be used for an image, which it cannot
+	 * once the image was resized.
+	 *
+	 * @param other The image to show.
+	 * @return true if the pyramid was made for the image at its current size.
+	 */
+	public boolean isFor(TiledImage other) {
+		return other == image && other.getWidth() == width && other.getHeight() == height;
+	}
+
+	/**
+	 * Returns the width of a level.
+	 *
+	 * @param level The level, 0 for the full size image.
+	 * @return The width in pixels, rounded up.
+	 */
+	public int getWidth(int level) {
+		return (width + (1 << level) - 1) >> level;
+	}
+
+	/**
+	 * Returns the height of a level.
+	 *
+	 * @param level The level, 0 for the full size image.
+	 * @return The height in pixels, rounded up.
+	 */
+	public int getHeight(int level) {
+		return (height + (1 << level) - 1) >> level;
+	}
+
+	/**
+	 * Copies pixels of a level, computing the stale tiles under them first.
+	 *
+	 * @param level  The level, 0 for the full size image.
+	 * @param x      The x-coordinate of the area on the level.
+	 * @param y      The y-coordinate of the area on the level.
+	 * @param areaW  The width of the area.
+	 * @param areaH  The height of the area.
+	 * @param pixels Receives the pixels as ARGB ints.
+	 * @param offset The index of the first pixel to receive.
+	 * @param stride The distance between two rows in the pixels.
+	 */
+	public void getPixels(int level, int x, int y, int areaW, int areaH, int[] pixels, int offset, int stride) {
+		if (level == 0) {
+			image.getPixels(x, y, areaW, areaH, pixels, offset, stride);
+			return;
+		}
+		refresh(level, x, y, areaW, areaH);
+		levels.get(level - 1).getPixels(x, y, areaW, areaH, pixels, offset, stride);
+	}
+
+	/**
+	 * Marks the tiles over a changed area of the full size image as stale on
+	 * every level that was built.
+	 *
+	 * @param x     The x-coordinate of the changed area.
+	 * @param y     The y-coordinate of the changed area.
+	 * @param areaW The width of the changed area.
+	 * @param areaH The height of the changed area.
+	 */
+	public void invalidate(int x, int y, int areaW, int areaH) {
+		int left = Math.max(0, x);
+		int top = Math.max(0, y);
+		int right = Math.min(width, x + areaW);
+		int bottom = Math.min(height, y + areaH);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+
+		for (int level = 1; level <= levels.size(); level++) {
+			TiledImage levelImage = levels.get(level - 1);
+			BitSet levelStale = stale.get(level - 1);
+			int tileTop = (top >> level) / TILE_SIZE;
+			int tileBottom = ((bottom - 1) >> level) / TILE_SIZE;
+			int tileLeft = (left >> level) / TILE_SIZE;
+			int tileRight = ((right - 1) >> level) / TILE_SIZE;
+			for (int tileY = tileTop; tileY <= tileBottom; tileY++) {
+				levelStale.set(tileY * levelImage.getTilesX() + tileLeft, tileY * levelImage.getTilesX() + tileRight + 1);
+			}
+		}
+	}
+
+	/**
+	 * Computes the stale tiles of a level under an area, creating the level
+	 * first if it does not exist yet.
+	 */
+	private void refresh(int level, int x, int y, int areaW, int areaH) {
+		while (levels.size() < level) {
+			int newLevel = levels.size() + 1;
+			TiledImage levelImage = new TiledImage(getWidth(newLevel), getHeight(newLevel), 0);
+			BitSet levelStale = new BitSet();
+			levelStale.set(0, levelImage.getTilesX() * levelImage.getTilesY());
+			levels.add(levelImage);
+			stale.add(levelStale);
+		}
+
+		TiledImage levelImage = levels.get(level - 1);
+		BitSet levelStale = stale.get(level - 1);
+		int left = Math.max(0, x) / TILE_SIZE;
+		int top = Math.max(0, y) / TILE_SIZE;
+		int right = Math.min(levelImage.getWidth(), x + areaW);
+		int bottom = Math.min(levelImage.getHeight(), y + areaH);
+		for (int tileY = top; tileY * TILE_SIZE < bottom; tileY++) {
+			for (int tileX = left; tileX * TILE_SIZE < right; tileX++) {
+				int index = tileY * levelImage.getTilesX() + tileX;
+				if (levelStale.get(index)) {
+					reduce(level, tileX, tileY);
+					levelStale.clear(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes a tile of a level from the 2x2 tiles under it on the level below.
+	 */
+	private void reduce(int level, int tileX, int tileY) {
+		TiledImage lower = level == 1 ? image : levels.get(level - 2);
+		TiledImage upper = levels.get(level - 1);
+		int x = tileX * TILE_SIZE;
+		int y = tileY * TILE_SIZE;
+		int tileWidth = upper.getTileWidth(tileX);
+		int tileHeight = upper.getTileHeight(tileY);
+
+		if (level > 1) {
+			refresh(level - 1, 2 * x, 2 * y, 2 * tileWidth, 2 * tileHeight);
+		}
+		// The tiles below are one color when the image is blank there
+		if (isUniform(lower, 2 * tileX, 2 * tileY)) {
+			upper.fill(x, y, tileWidth, tileHeight, lower.getUniformColor(2 * tileX, 2 * tileY));
+			return;
+		}
+
+		int belowWidth = Math.min(2 * tileWidth, lower.getWidth() - 2 * x);
+		int belowHeight = Math.min(2 * tileHeight, lower.getHeight() - 2 * y);
+		lower.getPixels(2 * x, 2 * y, belowWidth, belowHeight, below, 0, belowWidth);
+
+		for (int row = 0; row < tileHeight; row++) {
+			// An odd last row or column is averaged with itself
+			int row0 = 2 * row * belowWidth;
+			int row1 = Math.min(2 * row + 1, belowHeight - 1) * belowWidth;
+			for (int column = 0; column < tileWidth; column++) {
+				int column0 = 2 * column;
+				int column1 = Math.min(2 * column + 1, belowWidth - 1);
+				tile[row * tileWidth + column] = average(below[row0 + column0], below[row0 + column1],
+						below[row1 + column0], below[row1 + column1]);
+			}
+		}
+		upper.setPixels(x, y, tileWidth, tileHeight, tile, 0, tileWidth);
+	}
+
+	/**
+	 * Checks whether the 2x2 tiles of a level starting at a tile are all the same
+	 * single color. Tiles past the edge of the level are left out.
+	 */
+	private static boolean isUniform(TiledImage lower, int tileX, int tileY) {
+		if (!lower.isUniform(tileX, tileY)) {
+			return false;
+		}
+		int color = lower.getUniformColor(tileX, tileY);
+		for (int y = tileY; y < Math.min(tileY + 2, lower.getTilesY()); y++) {
+			for (int x = tileX; x < Math.min(tileX + 2, lower.getTilesX()); x++) {
+				if (!lower.isUniform(x, y) || lower.getUniformColor(x, y) != color) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Averages four ARGB pixels, weighting their colors by their alpha.
+	 */
+	private static int average(int p0, int p1, int p2, int p3) {
+		int a0 = p0 >>> 24;
+		int a1 = p1 >>> 24;
+		int a2 = p2 >>> 24;
+		int a3 = p3 >>> 24;
+		int alpha = a0 + a1 + a2 + a3;
+		if (alpha == 0) {
+			return 0;
+		}
+		int half = alpha / 2;
+		int red = ((p0 >> 16 & 0xFF) * a0 + (p1 >> 16 & 0xFF) * a1 + (p2 >> 16 & 0xFF) * a2 + (p3 >> 16 & 0xFF) * a3
+				+ half) / alpha;
+		int green = ((p0 >> 8 & 0xFF) * a0 + (p1 >> 8 & 0xFF) * a1 + (p2 >> 8 & 0xFF) * a2 + (p3 >> 8 & 0xFF) * a3
+				+ half) / alpha;
+		int blue = ((p0 & 0xFF) * a0 + (p1 & 0xFF) * a1 + (p2 & 0xFF) * a2 + (p3 & 0xFF) * a3 + half) / alpha;
+		return (alpha + 2) / 4 << 24 | red << 16 | green << 8 | blue;
+	}
+}
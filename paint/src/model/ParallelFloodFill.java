@@ -0,0 +1,540 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ParallelFloodFill: A flood fill for very large images that runs on several
+ * threads.
+ *
+ * The image is split into square tiles. First every tile numbers the connected
+ * areas of target-colored pixels inside it, all tiles at the same time. Then
+ * the areas that touch across tile borders are joined with a union-find, which
+ * tells which areas belong to the same area as the starting pixel. Finally all
+ * tiles recolor the pixels of those areas at the same time. The filled pixels
+ * are exactly the ones a sequential flood fill would fill.
+ *
+ * A TiledImage is filled on its own tiles, which have the same size. Its tiles
+ * of a single color are labeled and filled as a whole without reading any
+ * pixels, and the pixels of the others are only copied out while the fill runs.
+ *
+ * @author Tanay Desai
+ * @file: ParallelFloodFill.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ParallelFloodFill {
+	/**
+	 * The width and height of the tiles the image is split into. A tile has at
+	 * most TILE_SIZE * TILE_SIZE / 2 separate areas, so the areas of a tile can be
+	 * numbered with chars.
+	 */
+	private static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	private ForkJoinPool pool; // Runs the tiles.
+	private Tile[] tiles; // Kept with their area arrays for the next fill of the same size.
+	private int tilesWidth;
+	private int tilesHeight;
+
+	// The bounds of the pixels changed by the last fill, inclusive.
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+
+	/**
+	 * Constructor for the ParallelFloodFill class, using the common pool.
+	 */
+	public ParallelFloodFill() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor for the ParallelFloodFill class.
+	 *
+	 * @param pool The pool to run the tiles on.
+	 */
+	public ParallelFloodFill(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Fills the area connected to a starting pixel that has the same color as it.
+	 *
+	 * @param pixels      The pixels to fill, row by row, as ARGB ints.
+	 * @param width       The width of the image.
+	 * @param height      The height of the image.
+	 * @param x           The x-coordinate of the starting pixel.
+	 * @param y           The y-coordinate of the starting pixel.
+	 * @param replacement The ARGB color to fill with.
+	 * @return true if any pixel was changed, false otherwise.
+	 */
+	public boolean fill(int[] pixels, int width, int height, int x, int y, int replacement) {
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		int target = pixels[y * width + x];
+		if (target == replacement) {
+			return false;
+		}
+
+		Tile[] tiles = tilesFor(width, height);
+
+		// Number the areas inside every tile
+		runAll(tiles, tile -> tile.label(pixels, tile.top * width + tile.left, width, target));
+
+		boolean[] filled = join(tiles, width, height, x, y);
+
+		// Recolor those areas in every tile
+		runAll(tiles, tile -> tile.recolor(pixels, tile.top * width + tile.left, width, filled, replacement));
+		findBounds(tiles);
+		return true;
+	}
+
+	/**
+	 * Fills the area connected to a starting pixel of a TiledImage that has the
+	 * same color as it. The pixels of the tiles that are not a single color are
+	 * copied out on the calling thread, labeled and recolored on the pool, and
+	 * written back and dropped on the calling thread, since a TiledImage is not
+	 * thread-safe.
+	 *
+	 * @param image       The image to fill.
+	 * @param x           The x-coordinate of the starting pixel.
+	 * @param y           The y-coordinate of the starting pixel.
+	 * @param replacement The ARGB color to fill with.
+	 * @return true if any pixel was changed, false otherwise.
+	 */
+	public boolean fill(TiledImage image, int x, int y, int replacement) {
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		int target = image.getPixel(x, y);
+		if (target == replacement) {
+			return false;
+		}
+
+		Tile[] tiles = tilesFor(width, height);
+		int tilesX = image.getTilesX();
+		for (int index = 0; index < tiles.length; index++) {
+			Tile tile = tiles[index];
+			if (image.isUniform(index % tilesX, index / tilesX)) {
+				tile.color = image.getUniformColor(index % tilesX, index / tilesX);
+			} else {
+				tile.pixels = new int[tile.width * tile.height];
+				image.getPixels(tile.left, tile.top, tile.width, tile.height, tile.pixels, 0, tile.width);
+			}
+		}
+
+		try {
+			runAll(tiles, tile -> tile.label(tile.pixels, 0, tile.width, target));
+			boolean[] filled = join(tiles, width, height, x, y);
+			runAll(tiles, tile -> tile.recolor(tile.pixels, 0, tile.width, filled, replacement));
+			findBounds(tiles);
+
+			for (Tile tile : tiles) {
+				if (tile.filledMaxX < 0) {
+					continue;
+				}
+				if (tile.pixels == null) {
+					image.fill(tile.left, tile.top, tile.width, tile.height, replacement);
+				} else {
+					image.setPixels(tile.left, tile.top, tile.width, tile.height, tile.pixels, 0, tile.width);
+				}
+			}
+		} finally {
+			for (Tile tile : tiles) {
+				tile.pixels = null;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the tiles for an image of a size, kept with their area arrays from
+	 * the previous fill if it had the same size.
+	 */
+	private Tile[] tilesFor(int width, int height) {
+		int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		if (tiles == null || tilesWidth != width || tilesHeight != height) {
+			tiles = new Tile[tilesX * tilesY];
+			tilesWidth = width;
+			tilesHeight = height;
+			for (int tileY = 0; tileY < tilesY; tileY++) {
+				for (int tileX = 0; tileX < tilesX; tileX++) {
+					int left = tileX * TILE_SIZE;
+					int top = tileY * TILE_SIZE;
+					tiles[tileY * tilesX + tileX] = new Tile(left, top, Math.min(TILE_SIZE, width - left),
+							Math.min(TILE_SIZE, height - top));
+				}
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Joins the areas that touch across tile borders and returns which areas
+	 * belong with the starting pixel.
+	 */
+	private static boolean[] join(Tile[] tiles, int width, int height, int x, int y) {
+		int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+		// Give every area of the image its own number
+		int areaCount = 0;
+		for (Tile tile : tiles) {
+			tile.offset = areaCount;
+			areaCount += tile.areaCount;
+		}
+
+		// Join the areas that touch across tile borders
+		int[] parent = new int[areaCount + 1];
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+		}
+		for (int tileY = 0; tileY < tilesY; tileY++) {
+			for (int tileX = 0; tileX < tilesX; tileX++) {
+				Tile tile = tiles[tileY * tilesX + tileX];
+				if (tileX + 1 < tilesX) {
+					Tile right = tiles[tileY * tilesX + tileX + 1];
+					for (int row = 0; row < tile.height; row++) {
+						union(parent, tile.area(tile.width - 1, row), right.area(0, row));
+					}
+				}
+				if (tileY + 1 < tilesY) {
+					Tile below = tiles[(tileY + 1) * tilesX + tileX];
+					for (int column = 0; column < tile.width; column++) {
+						union(parent, tile.area(column, tile.height - 1), below.area(column, 0));
+					}
+				}
+			}
+		}
+
+		// Find the areas that belong with the starting pixel
+		Tile seedTile = tiles[(y / TILE_SIZE) * tilesX + x / TILE_SIZE];
+		int seedRoot = find(parent, seedTile.area(x - seedTile.left, y - seedTile.top));
+		boolean[] filled = new boolean[areaCount + 1];
+		for (int area = 1; area <= areaCount; area++) {
+			filled[area] = find(parent, area) == seedRoot;
+		}
+		return filled;
+	}
+
+	/**
+	 * Sets the bounds of the fill from the bounds of the pixels recolored in the
+	 * tiles.
+	 */
+	private void findBounds(Tile[] tiles) {
+		for (Tile tile : tiles) {
+			if (tile.filledMaxX >= 0) {
+				minX = Math.min(minX, tile.filledMinX);
+				minY = Math.min(minY, tile.filledMinY);
+				maxX = Math.max(maxX, tile.filledMaxX);
+				maxY = Math.max(maxY, tile.filledMaxY);
+			}
+		}
+	}
+
+	/**
+	 * Runs a step for every tile on the pool and waits for all of them.
+	 */
+	private void runAll(Tile[] tiles, TileStep step) {
+		List<Callable<Void>> tasks = new ArrayList<>(tiles.length);
+		for (Tile tile : tiles) {
+			tasks.add(() -> {
+				step.run(tile);
+				return null;
+			});
+		}
+		pool.invokeAll(tasks);
+	}
+
+	/**
+	 * Joins the sets of two areas. Area 0 stands for pixels that are not part of
+	 * any area and is never joined.
+	 */
+	private static void union(int[] parent, int first, int second) {
+		if (first == 0 || second == 0) {
+			return;
+		}
+		int firstRoot = find(parent, first);
+		int secondRoot = find(parent, second);
+		if (firstRoot != secondRoot) {
+			parent[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+		}
+	}
+
+	/**
+	 * Finds the representative of the set of an area, halving the path on the
+	 * way.
+	 */
+	private static int find(int[] parent, int area) {
+		while (parent[area] != area) {
+			parent[area] = parent[parent[area]];
+			area = parent[area];
+		}
+		return area;
+	}
+
+	/**
+	 * Returns the x-coordinate of the left edge of the last filled area.
+	 *
+	 * @return The smallest filled x-coordinate.
+	 */
+	public int getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns the y-coordinate of the top edge of the last filled area.
+	 *
+	 * @return The smallest filled y-coordinate.
+	 */
+	public int getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Returns the width of the last filled area.
+	 *
+	 * @return The width of the bounds of the filled pixels, or 0 if none.
+	 */
+	public int getFilledWidth() {
+		return maxX < minX ? 0 : maxX - minX + 1;
+	}
+
+	/**
+	 * Returns the height of the last filled area.
+	 *
+	 * @return The height of the bounds of the filled pixels, or 0 if none.
+	 */
+	public int getFilledHeight() {
+		return maxY < minY ? 0 : maxY - minY + 1;
+	}
+
+	/**
+	 * A step run on every tile.
+	 */
+	private interface TileStep {
+		void run(Tile tile);
+	}
+
+	/**
+	 * A square part of the image and the areas of target-colored pixels in it.
+	 */
+	private static class Tile {
+		private final int left;
+		private final int top;
+		private final int width;
+		private final int height;
+
+		private char[] areas; // The area of each pixel, 0 if not target-colored.
+		private boolean uniform; // Whether every pixel is target-colored, ignoring areas.
+		private boolean empty; // Whether no pixel is target-colored, ignoring areas.
+		private int areaCount;
+		private int offset; // Added to the areas of this tile to number them globally.
+		private int[] pixels; // The pixels copied out of a TiledImage, or null if it is one color.
+		private int color; // The color of a tile of a TiledImage that has no pixels.
+
+		// The bounds of the pixels recolored in this tile, inclusive.
+		private int filledMinX;
+		private int filledMinY;
+		private int filledMaxX;
+		private int filledMaxY;
+
+		/**
+		 * Constructor for the Tile class.
+		 *
+		 * @param left   The x-coordinate of the tile in the image.
+		 * @param top    The y-coordinate of the tile in the image.
+		 * @param width  The width of the tile.
+		 * @param height The height of the tile.
+		 */
+		public Tile(int left, int top, int width, int height) {
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+		}
+
+		/**
+		 * Returns the global number of the area of a pixel of the tile.
+		 *
+		 * @param column The x-coordinate of the pixel in the tile.
+		 * @param row    The y-coordinate of the pixel in the tile.
+		 * @return The area number, or 0 if the pixel is not target-colored.
+		 */
+		public int area(int column, int row) {
+			if (uniform) {
+				return offset + 1;
+			}
+			if (empty) {
+				return 0;
+			}
+			int area = areas[row * width + column];
+			return area == 0 ? 0 : offset + area;
+		}
+
+		/**
+		 * Numbers the connected areas of target-colored pixels in the tile with a
+		 * scanline fill per area. Without pixels, the tile is its single color.
+		 *
+		 * @param pixels The pixels holding the tile, or null if it is one color.
+		 * @param base   The index of the top-left pixel of the tile in pixels.
+		 * @param stride The distance between two rows in pixels.
+		 * @param target The color to fill.
+		 */
+		public void label(int[] pixels, int base, int stride, int target) {
+			filledMinX = Integer.MAX_VALUE;
+			filledMinY = Integer.MAX_VALUE;
+			filledMaxX = -1;
+			filledMaxY = -1;
+			uniform = pixels == null ? color == target : isUniform(pixels, base, stride, target);
+			empty = pixels == null && !uniform;
+			if (empty) {
+				areaCount = 0;
+				return;
+			}
+			if (uniform) {
+				// Large parts of a canvas are usually one color, which is one area
+				areaCount = 1;
+				return;
+			}
+
+			if (areas == null) {
+				areas = new char[width * height];
+			} else {
+				Arrays.fill(areas, (char) 0);
+			}
+			areaCount = 0;
+			int[] stack = new int[64];
+			for (int row = 0; row < height; row++) {
+				for (int column = 0; column < width; column++) {
+					if (areas[row * width + column] != 0 || pixels[base + row * stride + column] != target) {
+						continue;
+					}
+
+					char area = (char) ++areaCount;
+					int size = 0;
+					stack[size++] = column;
+					stack[size++] = row;
+					while (size > 0) {
+						int seedRow = stack[--size];
+						int seedColumn = stack[--size];
+						if (areas[seedRow * width + seedColumn] != 0) {
+							continue;
+						}
+						int image = base + seedRow * stride;
+						int start = seedColumn;
+						while (start > 0 && pixels[image + start - 1] == target
+								&& areas[seedRow * width + start - 1] == 0) {
+							start--;
+						}
+						int end = seedColumn;
+						while (end < width - 1 && pixels[image + end + 1] == target
+								&& areas[seedRow * width + end + 1] == 0) {
+							end++;
+						}
+						Arrays.fill(areas, seedRow * width + start, seedRow * width + end + 1, area);
+
+						for (int next = seedRow - 1; next <= seedRow + 1; next += 2) {
+							if (next < 0 || next >= height) {
+								continue;
+							}
+							int nextImage = base + next * stride;
+							boolean inRun = false;
+							for (int c = start; c <= end; c++) {
+								boolean open = pixels[nextImage + c] == target && areas[next * width + c] == 0;
+								if (open && !inRun) {
+									if (size + 2 > stack.length) {
+										stack = Arrays.copyOf(stack, stack.length * 2);
+									}
+									stack[size++] = c;
+									stack[size++] = next;
+								}
+								inRun = open;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns whether every pixel of the tile has the target color.
+		 */
+		private boolean isUniform(int[] pixels, int base, int stride, int target) {
+			for (int row = 0; row < height; row++) {
+				int image = base + row * stride;
+				for (int column = 0; column < width; column++) {
+					if (pixels[image + column] != target) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Recolors the pixels of the tile whose area is marked as filled. A tile
+		 * without pixels only records its bounds, for the caller to fill it.
+		 */
+		public void recolor(int[] pixels, int base, int stride, boolean[] filled, int replacement) {
+			if (empty) {
+				return;
+			}
+			if (uniform) {
+				if (filled[offset + 1]) {
+					for (int row = 0; pixels != null && row < height; row++) {
+						int image = base + row * stride;
+						Arrays.fill(pixels, image, image + width, replacement);
+					}
+					filledMinX = left;
+					filledMinY = top;
+					filledMaxX = left + width - 1;
+					filledMaxY = top + height - 1;
+				}
+				return;
+			}
+
+			for (int row = 0; row < height; row++) {
+				int image = base + row * stride;
+				int first = -1;
+				int last = -1;
+				for (int column = 0; column < width; column++) {
+					int area = areas[row * width + column];
+					if (area != 0 && filled[offset + area]) {
+						pixels[image + column] = replacement;
+						if (first < 0) {
+							first = column;
+						}
+						last = column;
+					}
+				}
+				if (first >= 0) {
+					filledMinX = Math.min(filledMinX, left + first);
+					filledMaxX = Math.max(filledMaxX, left + last);
+					filledMinY = Math.min(filledMinY, top + row);
+					filledMaxY = top + row;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,451 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PngWriter: Writes ARGB pixels as a PNG file, compressing on several threads.
+ *
+ * The image is cut into strips of rows. Every strip is filtered and deflated on
+ * its own thread into a block of compressed data that ends on a byte boundary,
+ * so the blocks can simply be written one after another to form a single zlib
+ * stream, the way pigz does it. The Adler-32 checksums of the strips are
+ * combined into the checksum of the whole stream. Strips are written to the
+ * file in order as soon as they are done, and only a few are compressed ahead,
+ * so the writer needs little memory besides the pixels it is given. A
+ * TiledImage is read a strip at a time on the writing thread, so it is never
+ * copied into a single array.
+ *
+ * Each row is filtered with the PNG filter that gives the smallest sum of
+ * absolute differences, which is the heuristic most PNG encoders use.
+ *
+ * @author Tanay Desai
+ * @file: PngWriter.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class PngWriter {
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final int BYTES_PER_PIXEL = 4; // 8-bit RGBA
+	private static final int STRIP_BYTES = 256 * 1024; // About how many filtered bytes a strip holds.
+	private static final int ADLER_BASE = 65521;
+
+	private final ForkJoinPool pool; // Compresses the strips.
+	private final int level; // The Deflater compression level.
+
+	/**
+	 * Constructor for the PngWriter class, compressing on the common pool with
+	 * the default compression level.
+	 */
+	public PngWriter() {
+		this(ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructor for the PngWriter class.
+	 *
+	 * @param pool  The pool to compress the strips on.
+	 * @param level The compression level, from 0 to 9, or -1 for the default.
+	 */
+	public PngWriter(ForkJoinPool pool, int level) {
+		this.pool = pool;
+		this.level = level;
+	}
+
+	/**
+	 * Writes pixels to a PNG file, replacing it if it exists.
+	 *
+	 * @param pixels The pixels, row by row, as non-premultiplied ARGB ints.
+	 * @param width  The width of the image.
+	 * @param height The height of the image.
+	 * @param path   The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void write(int[] pixels, int width, int height, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(pixels, width, height, channel);
+		}
+	}
+
+	/**
+	 * Writes pixels as a PNG image to a channel.
+	 *
+	 * @param pixels  The pixels, row by row, as non-premultiplied ARGB ints.
+	 * @param width   The width of the image.
+	 * @param height  The height of the image.
+	 * @param channel The channel to write to.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void write(int[] pixels, int width, int height, FileChannel channel) throws IOException {
+		write(pixels, width, height, channel, null);
+	}
+
+	/**
+	 * Writes pixels as a PNG image to a channel, reporting how far along it is.
+	 *
+	 * @param pixels   The pixels, row by row, as non-premultiplied ARGB ints.
+	 * @param width    The width of the image.
+	 * @param height   The height of the image.
+	 * @param channel  The channel to write to.
+	 * @param progress Called on the writing thread with the part of the image
+	 *                 written so far, from 0 to 1, after every strip, or null.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void write(int[] pixels, int width, int height, FileChannel channel, DoubleConsumer progress)
+			throws IOException {
+		if (width <= 0 || height <= 0 || pixels.length < width * height) {
+			throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+		}
+		write(width, height, channel, progress, (firstRow, rows, last) -> {
+			int offset = Math.max(0, firstRow - 1) * width;
+			return () -> compressStrip(pixels, offset, width, firstRow > 0, rows, last);
+		});
+	}
+
+	/**
+	 * Writes an image as a PNG image to a channel, reporting how far along it is.
+	 * The image is read on the calling thread, one strip of rows at a time, and
+	 * must not change while it is written; TiledImage.copy gives a copy to write.
+	 *
+	 * @param image    The image, as non-premultiplied ARGB pixels.
+	 * @param channel  The channel to write to.
+	 * @param progress Called on the writing thread with the part of the image
+	 *                 written so far, from 0 to 1, after every strip, or null.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void write(TiledImage image, FileChannel channel, DoubleConsumer progress) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+		}
+		write(width, height, channel, progress, (firstRow, rows, last) -> {
+			// Read the row above the strip too, which the filters look at
+			int top = Math.max(0, firstRow - 1);
+			int[] pixels = new int[(firstRow + rows - top) * width];
+			image.getPixels(0, top, width, firstRow + rows - top, pixels, 0, width);
+			return () -> compressStrip(pixels, 0, width, firstRow > 0, rows, last);
+		});
+	}
+
+	/**
+	 * Writes the PNG chunks, compressing the strips of rows given by source.
+	 */
+	private void write(int width, int height, FileChannel channel, DoubleConsumer progress, StripSource source)
+			throws IOException {
+		writeFully(channel, ByteBuffer.wrap(SIGNATURE));
+
+		ByteBuffer header = ByteBuffer.allocate(13);
+		header.putInt(width).putInt(height);
+		header.put((byte) 8); // Bit depth
+		header.put((byte) 6); // Color type: RGBA
+		header.put((byte) 0); // Compression: deflate
+		header.put((byte) 0); // Filter method: adaptive
+		header.put((byte) 0); // No interlacing
+		writeChunk(channel, "IHDR", header.array(), 13);
+
+		// Start the zlib stream: deflate with a 32K window, default level
+		writeChunk(channel, "IDAT", new byte[] { 0x78, (byte) 0x9C }, 2);
+
+		int rowBytes = width * BYTES_PER_PIXEL + 1;
+		int stripRows = Math.max(1, STRIP_BYTES / rowBytes);
+		int strips = (height + stripRows - 1) / stripRows;
+		int ahead = pool.getParallelism() * 2;
+
+		long adler = 1;
+		Deque<Future<Strip>> pending = new ArrayDeque<>();
+		int next = 0;
+		try {
+			for (int written = 0; written < strips; written++) {
+				// Keep a few strips compressing ahead of the one being written
+				while (next < strips && pending.size() < ahead) {
+					int firstRow = next * stripRows;
+					int rows = Math.min(stripRows, height - firstRow);
+					boolean last = next == strips - 1;
+					pending.add(pool.submit(source.strip(firstRow, rows, last)));
+					next++;
+				}
+
+				Strip strip = pending.removeFirst().get();
+				writeChunk(channel, "IDAT", strip.data, strip.length);
+				adler = combineAdler(adler, strip.adler, strip.filteredLength);
+				if (progress != null) {
+					progress.accept((written + 1) / (double) strips);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing PNG", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress PNG", e.getCause());
+		} finally {
+			for (Future<Strip> future : pending) {
+				future.cancel(false);
+			}
+		}
+
+		// End the zlib stream with the checksum of all filtered bytes
+		writeChunk(channel, "IDAT", ByteBuffer.allocate(4).putInt((int) adler).array(), 4);
+		writeChunk(channel, "IEND", new byte[0], 0);
+	}
+
+	/**
+	 * Filters and deflates a strip of rows. Every strip but the last ends with a
+	 * sync flush, so that its compressed data ends on a byte boundary and the
+	 * next strip can follow it directly.
+	 *
+	 * @param pixels      Holds the rows of the strip, after the row above it if
+	 *                    hasPrevious is set.
+	 * @param offset      Where the first row is in pixels.
+	 * @param hasPrevious Whether the strip has a row above it.
+	 */
+	private Strip compressStrip(int[] pixels, int offset, int width, boolean hasPrevious, int rows, boolean last) {
+		int stride = width * BYTES_PER_PIXEL;
+		byte[] filtered = new byte[rows * (stride + 1)];
+		byte[] previous = new byte[stride];
+		byte[] current = new byte[stride];
+		if (hasPrevious) {
+			toRgba(pixels, offset, width, previous);
+			offset += width;
+		}
+
+		for (int row = 0; row < rows; row++) {
+			toRgba(pixels, offset + row * width, width, current);
+			filterRow(current, previous, filtered, row * (stride + 1));
+			byte[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		Adler32 checksum = new Adler32();
+		checksum.update(filtered, 0, filtered.length);
+
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(filtered);
+			if (last) {
+				deflater.finish();
+			}
+			byte[] data = new byte[filtered.length / 4 + 64];
+			int length = 0;
+			while (true) {
+				int space = data.length - length;
+				length += deflater.deflate(data, length, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				boolean done = last ? deflater.finished() : length < data.length;
+				if (done) {
+					return new Strip(data, length, checksum.getValue(), filtered.length);
+				}
+				if (length == data.length) {
+					data = Arrays.copyOf(data, data.length * 2);
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Converts a row of ARGB ints to RGBA bytes.
+	 */
+	private static void toRgba(int[] pixels, int offset, int width, byte[] row) {
+		for (int x = 0, i = 0; x < width; x++) {
+			int argb = pixels[offset + x];
+			row[i++] = (byte) (argb >> 16);
+			row[i++] = (byte) (argb >> 8);
+			row[i++] = (byte) argb;
+			row[i++] = (byte) (argb >>> 24);
+		}
+	}
+
+	/**
+	 * Writes a row with the filter type byte in front, using the filter with the
+	 * smallest sum of absolute differences. The sums of all five filters are
+	 * taken in a single pass over the row.
+	 */
+	private static void filterRow(byte[] row, byte[] previous, byte[] out, int offset) {
+		long none = 0;
+		long sub = 0;
+		long up = 0;
+		long average = 0;
+		long paeth = 0;
+		for (int i = 0; i < row.length; i++) {
+			int value = row[i] & 0xFF;
+			int left = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+			int above = previous[i] & 0xFF;
+			int upLeft = i >= BYTES_PER_PIXEL ? previous[i - BYTES_PER_PIXEL] & 0xFF : 0;
+			none += Math.abs((byte) value);
+			sub += Math.abs((byte) (value - left));
+			up += Math.abs((byte) (value - above));
+			average += Math.abs((byte) (value - ((left + above) >>> 1)));
+			paeth += Math.abs((byte) (value - paeth(left, above, upLeft)));
+		}
+
+		int type = 0;
+		long best = none;
+		if (sub < best) {
+			type = 1;
+			best = sub;
+		}
+		if (up < best) {
+			type = 2;
+			best = up;
+		}
+		if (average < best) {
+			type = 3;
+			best = average;
+		}
+		if (paeth < best) {
+			type = 4;
+		}
+
+		out[offset] = (byte) type;
+		for (int i = 0; i < row.length; i++) {
+			out[offset + 1 + i] = (byte) filter(type, row, previous, i);
+		}
+	}
+
+	/**
+	 * Returns a filtered byte of a row.
+	 */
+	private static int filter(int type, byte[] row, byte[] previous, int i) {
+		int value = row[i] & 0xFF;
+		int left = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+		int above = previous[i] & 0xFF;
+		switch (type) {
+		case 1: // Sub
+			return value - left;
+		case 2: // Up
+			return value - above;
+		case 3: // Average
+			return value - ((left + above) >>> 1);
+		case 4: // Paeth
+			int upLeft = i >= BYTES_PER_PIXEL ? previous[i - BYTES_PER_PIXEL] & 0xFF : 0;
+			return value - paeth(left, above, upLeft);
+		default: // None
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the neighbor closest to the linear prediction from the left, upper
+	 * and upper left neighbors.
+	 */
+	private static int paeth(int left, int up, int upLeft) {
+		int estimate = left + up - upLeft;
+		int toLeft = Math.abs(estimate - left);
+		int toUp = Math.abs(estimate - up);
+		int toUpLeft = Math.abs(estimate - upLeft);
+		if (toLeft <= toUp && toLeft <= toUpLeft) {
+			return left;
+		}
+		return toUp <= toUpLeft ? up : upLeft;
+	}
+
+	/**
+	 * Returns the Adler-32 checksum of two pieces of data joined together, given
+	 * the checksums of both and the length of the second.
+	 */
+	private static long combineAdler(long first, long second, long secondLength) {
+		long remainder = secondLength % ADLER_BASE;
+		long sum1 = first & 0xFFFF;
+		long sum2 = remainder * sum1 % ADLER_BASE;
+		sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+		sum2 += (first >>> 16 & 0xFFFF) + (second >>> 16 & 0xFFFF) + ADLER_BASE - remainder;
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum2 >= ADLER_BASE * 2L) {
+			sum2 -= ADLER_BASE * 2L;
+		}
+		if (sum2 >= ADLER_BASE) {
+			sum2 -= ADLER_BASE;
+		}
+		return sum1 | sum2 << 16;
+	}
+
+	/**
+	 * Writes a PNG chunk: its length, type, data and CRC.
+	 */
+	private static void writeChunk(FileChannel channel, String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+
+		ByteBuffer head = ByteBuffer.allocate(8).putInt(length).put(typeBytes);
+		head.flip();
+		writeFully(channel, head);
+		writeFully(channel, ByteBuffer.wrap(data, 0, length));
+		writeFully(channel, ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip());
+	}
+
+	/**
+	 * Writes all remaining bytes of a buffer to a channel.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Gives the pixels of the strips of an image to compress.
+	 */
+	private interface StripSource {
+		/**
+		 * Prepares a strip of rows to be compressed. Called on the writing thread.
+		 *
+		 * @param firstRow The first row of the strip.
+		 * @param rows     The number of rows in the strip.
+		 * @param last     Whether the strip is the last of the image.
+		 * @return Compresses the strip.
+		 */
+		Callable<Strip> strip(int firstRow, int rows, boolean last);
+	}
+
+	/**
+	 * The compressed data of a strip and the checksum of its filtered bytes.
+	 */
+	private static class Strip {
+		private final byte[] data;
+		private final int length;
+		private final long adler;
+		private final int filteredLength;
+
+		/**
+		 * Constructor for the Strip class.
+		 *
+		 * @param data           The compressed data.
+		 * @param length         The number of compressed bytes in data.
+		 * @param adler          The Adler-32 checksum of the filtered bytes.
+		 * @param filteredLength The number of filtered bytes.
+		 */
+		public Strip(byte[] data, int length, long adler, int filteredLength) {
+			this.data = data;
+			this.length = length;
+			this.adler = adler;
+			this.filteredLength = filteredLength;
+		}
+	}
+}
@@ -0,0 +1,630 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.DoubleConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ProjectFile: The native file format of the application, which stores a
+ * drawing as tiles.
+ *
+ * A project file starts with a header, which holds the size of the drawing and
+ * where the tile index is. The index has an entry for every square tile of the
+ * drawing, row by row, telling where its pixels are in the file, how they are
+ * stored and a hash of them. A tile is stored raw (ARGB ints), compressed with
+ * deflate when that makes it smaller, or as a single color when all its pixels
+ * are the same, which takes no space at all.
+ *
+ * The file is opened by mapping it into memory, and a tile is only decoded when
+ * it is read. A drawing opened from a project reads its tiles from the file the
+ * first time they are used, through getTiles. Saving is told which tiles of the
+ * canvas changed since the last save and only looks at those. Of these, it
+ * appends the ones whose hash differs from the index, or whose pixels differ
+ * from the stored ones when the hash matches, followed by a new index. The
+ * tiles are the same as those of a TiledImage, so a tile of a single color that
+ * is stored as that color is skipped without reading it. The header is
+ * switched to the new index last, so a save that is interrupted leaves the
+ * previous state of the file intact. Once less than half of the file is in use,
+ * the next save writes a new compact file and renames it over the old one.
+ *
+ * @author Tanay Desai
+ * @file: ProjectFile.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ProjectFile implements Closeable {
+	/**
+	 * The extension of project files.
+	 */
+	public static final String EXTENSION = ".paint";
+
+	/**
+	 * The width and height of the tiles.
+	 */
+	public static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	private static final int MAGIC = 0x504E5450; // "PNTP"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 64;
+	private static final int INDEX_OFFSET_POSITION = 24; // Where the header keeps the index offset.
+	private static final int ENTRY_BYTES = 24;
+
+	// How the pixels of a tile are stored
+	private static final int RAW = 0;
+	private static final int COMPRESSED = 1;
+	private static final int UNIFORM = 2; // The color is kept in the offset of the entry.
+
+	private final Path path;
+	private FileChannel channel;
+	private MappedByteBuffer map; // The whole file, for reading tiles.
+
+	private int width;
+	private int height;
+	private int tilesX;
+	private int tilesY;
+
+	// The index: one entry per tile
+	private long[] offsets;
+	private int[] lengths;
+	private int[] types;
+	private long[] hashes;
+
+	private int[] tilePixels = new int[TILE_SIZE * TILE_SIZE]; // Reused while saving.
+	private int[] storedPixels = new int[TILE_SIZE * TILE_SIZE]; // The stored tile to compare with.
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	/**
+	 * Constructor for the ProjectFile class.
+	 *
+	 * @param path The project file.
+	 */
+	private ProjectFile(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Opens an existing project file.
+	 *
+	 * @param path The project file.
+	 * @return The opened project.
+	 * @throws IOException If the file cannot be read or is not a project file.
+	 */
+	public static ProjectFile open(Path path) throws IOException {
+		ProjectFile project = new ProjectFile(path);
+		project.load();
+		return project;
+	}
+
+	/**
+	 * Writes a drawing to a new project file, replacing the file if it exists, and
+	 * opens it.
+	 *
+	 * @param path     The project file.
+	 * @param image    The drawing. It must not change while it is written.
+	 * @param progress Called with the part of the tiles written so far, or null.
+	 * @return The opened project.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static ProjectFile create(Path path, TiledImage image, DoubleConsumer progress) throws IOException {
+		ProjectFile project = new ProjectFile(path);
+		project.rewrite(image, progress);
+		return project;
+	}
+
+	/**
+	 * Saves a drawing to the project file, writing only the tiles that changed
+	 * since the last save. If the size of the drawing changed or most of the file
+	 * is no longer in use, the whole file is written anew.
+	 *
+	 * @param image    The drawing. It must not change while it is written.
+	 * @param changed  The tiles that may have changed since the last save, by
+	 *                 index row by row, or null to check every tile.
+	 * @param progress Called with the part of the tiles checked so far, or null.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public synchronized void save(TiledImage image, BitSet changed, DoubleConsumer progress) throws IOException {
+		if (image.getWidth() != width || image.getHeight() != height) {
+			rewrite(image, progress);
+			return;
+		}
+
+		long[] newOffsets = offsets.clone();
+		int[] newLengths = lengths.clone();
+		int[] newTypes = types.clone();
+		long[] newHashes = hashes.clone();
+		long end = channel.size();
+		int tileCount = tilesX * tilesY;
+		int checkCount = changed == null ? tileCount : changed.get(0, tileCount).cardinality();
+		int checked = 0;
+		boolean written = false;
+
+		for (int tile = 0; tile < tileCount; tile++) {
+			if (changed != null && !changed.get(tile)) {
+				continue;
+			}
+			if (progress != null) {
+				progress.accept(++checked / (double) checkCount);
+			}
+			int tileX = tile % tilesX;
+			int tileY = tile / tilesX;
+			if (image.isUniform(tileX, tileY) && types[tile] == UNIFORM
+					&& offsets[tile] == image.getUniformColor(tileX, tileY)) {
+				continue;
+			}
+			int tileWidth = copyTile(image, tile);
+			int count = tileWidth * tileHeight(tile);
+			long hash = hash(tilePixels, count);
+			// A matching hash is only trusted once the stored pixels match too
+			if (hash != hashes[tile] || !matchesStored(tileX, tileY, count)) {
+				end = writeTile(tile, count, hash, end, newOffsets, newLengths, newTypes, newHashes);
+				written = true;
+			}
+		}
+		if (!written) {
+			return;
+		}
+
+		// Write the new tiles and index before switching the header to them
+		long indexOffset = end;
+		writeIndex(channel, indexOffset, newOffsets, newLengths, newTypes, newHashes);
+		channel.force(false);
+		ByteBuffer offset = ByteBuffer.allocate(8).putLong(0, indexOffset);
+		writeFully(channel, offset, INDEX_OFFSET_POSITION);
+		channel.force(false);
+
+		offsets = newOffsets;
+		lengths = newLengths;
+		types = newTypes;
+		hashes = newHashes;
+		remap();
+
+		if (liveBytes() * 2 < channel.size()) {
+			rewrite(image, null);
+		}
+	}
+
+	/**
+	 * Reads the pixels of a tile.
+	 *
+	 * @param tileX  The column of the tile.
+	 * @param tileY  The row of the tile.
+	 * @param pixels Receives the pixels of the tile, row by row, as ARGB ints.
+	 *               Must hold at least getTileWidth(tileX) *
+	 *               getTileHeight(tileY) ints.
+	 * @throws IOException If the tile cannot be decoded.
+	 */
+	public synchronized void readTile(int tileX, int tileY, int[] pixels) throws IOException {
+		getTiles().readTile(tileX, tileY, pixels);
+	}
+
+	/**
+	 * Returns the tiles as they are stored now, for a TiledImage to read them the
+	 * first time they are used. Saves only ever append to the file or write a new
+	 * file in its place, so the tiles keep their pixels after later saves and
+	 * after the project is closed.
+	 *
+	 * @return The tiles of the file.
+	 */
+	public synchronized TiledImage.TileSource getTiles() {
+		return new StoredTiles(path, width, height, map, offsets, lengths, types);
+	}
+
+	/**
+	 * Returns whether all pixels of a tile have the same color, in which case
+	 * reading it takes no decoding.
+	 *
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return true if the tile is a single color.
+	 */
+	public synchronized boolean isUniform(int tileX, int tileY) {
+		return types[tileY * tilesX + tileX] == UNIFORM;
+	}
+
+	/**
+	 * Returns the width of the drawing.
+	 *
+	 * @return The width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the drawing.
+	 *
+	 * @return The height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of columns of tiles.
+	 *
+	 * @return The number of tiles across.
+	 */
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	/**
+	 * Returns the number of rows of tiles.
+	 *
+	 * @return The number of tiles down.
+	 */
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	/**
+	 * Returns the width of the tiles in a column, which is smaller than TILE_SIZE
+	 * for the last column if the width is not a multiple of it.
+	 *
+	 * @param tileX The column of tiles.
+	 * @return The width of its tiles.
+	 */
+	public int getTileWidth(int tileX) {
+		return Math.min(TILE_SIZE, width - tileX * TILE_SIZE);
+	}
+
+	/**
+	 * Returns the height of the tiles in a row, which is smaller than TILE_SIZE
+	 * for the last row if the height is not a multiple of it.
+	 *
+	 * @param tileY The row of tiles.
+	 * @return The height of its tiles.
+	 */
+	public int getTileHeight(int tileY) {
+		return Math.min(TILE_SIZE, height - tileY * TILE_SIZE);
+	}
+
+	/**
+	 * Returns the project file.
+	 *
+	 * @return The path of the file.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException If the file cannot be closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		map = null;
+		deflater.end();
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the header and index of the file and maps it.
+	 */
+	private void load() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		remap();
+
+		if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+			throw new IOException(path + " is not a project file");
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new IOException(path + " has an unsupported version " + map.getInt(4));
+		}
+		width = map.getInt(8);
+		height = map.getInt(12);
+		if (map.getInt(16) != TILE_SIZE || width <= 0 || height <= 0) {
+			throw new IOException(path + " has an invalid header");
+		}
+		setSize(width, height);
+
+		long indexOffset = map.getLong(INDEX_OFFSET_POSITION);
+		int tileCount = tilesX * tilesY;
+		if (indexOffset < HEADER_BYTES || indexOffset + (long) tileCount * ENTRY_BYTES > map.limit()) {
+			throw new IOException(path + " has an invalid index");
+		}
+		for (int tile = 0; tile < tileCount; tile++) {
+			int entry = (int) indexOffset + tile * ENTRY_BYTES;
+			offsets[tile] = map.getLong(entry);
+			lengths[tile] = map.getInt(entry + 8);
+			types[tile] = map.getInt(entry + 12);
+			hashes[tile] = map.getLong(entry + 16);
+			if (types[tile] != UNIFORM && (offsets[tile] < HEADER_BYTES
+					|| offsets[tile] + lengths[tile] > indexOffset)) {
+				throw new IOException(path + " has an invalid entry for tile " + tile);
+			}
+		}
+	}
+
+	/**
+	 * Maps the whole file for reading.
+	 */
+	private void remap() throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException(path + " is too large to map");
+		}
+		map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	/**
+	 * Sets the size of the drawing and makes an empty index for it.
+	 */
+	private void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		int tileCount = tilesX * tilesY;
+		offsets = new long[tileCount];
+		lengths = new int[tileCount];
+		types = new int[tileCount];
+		hashes = new long[tileCount];
+	}
+
+	/**
+	 * Writes all tiles to a new file next to the project file and renames it over
+	 * the project file, then opens the new file.
+	 */
+	private void rewrite(TiledImage image, DoubleConsumer progress) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		FileChannel previous = channel;
+		try {
+			setSize(image.getWidth(), image.getHeight());
+			channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(TILE_SIZE);
+			writeFully(channel, header.flip(), 0);
+
+			long end = HEADER_BYTES;
+			int tileCount = tilesX * tilesY;
+			for (int tile = 0; tile < tileCount; tile++) {
+				int tileWidth = copyTile(image, tile);
+				int count = tileWidth * tileHeight(tile);
+				end = writeTile(tile, count, hash(tilePixels, count), end, offsets, lengths, types, hashes);
+				if (progress != null) {
+					progress.accept((tile + 1) / (double) tileCount);
+				}
+			}
+			writeIndex(channel, end, offsets, lengths, types, hashes);
+			writeFully(channel, ByteBuffer.allocate(8).putLong(0, end), INDEX_OFFSET_POSITION);
+			channel.force(true);
+			channel.close();
+
+			if (previous != null) {
+				previous.close();
+			}
+			map = null;
+			try {
+				Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			if (channel != null && channel != previous) {
+				channel.close();
+			}
+			Files.deleteIfExists(temporary);
+			if (previous != null) {
+				// Go back to the file as it was
+				previous.close();
+				load();
+			}
+			throw e;
+		}
+		load();
+	}
+
+	/**
+	 * Copies a tile of the drawing into the tile buffer.
+	 *
+	 * @return The width of the tile.
+	 */
+	private int copyTile(TiledImage image, int tile) {
+		int tileX = tile % tilesX;
+		int tileY = tile / tilesX;
+		int tileWidth = getTileWidth(tileX);
+		image.getPixels(tileX * TILE_SIZE, tileY * TILE_SIZE, tileWidth, getTileHeight(tileY), tilePixels, 0,
+				tileWidth);
+		return tileWidth;
+	}
+
+	/**
+	 * Checks whether the tile buffer holds the pixels stored for a tile.
+	 */
+	private boolean matchesStored(int tileX, int tileY, int count) throws IOException {
+		getTiles().readTile(tileX, tileY, storedPixels);
+		return Arrays.equals(tilePixels, 0, count, storedPixels, 0, count);
+	}
+
+	/**
+	 * Returns the height of a tile.
+	 */
+	private int tileHeight(int tile) {
+		return getTileHeight(tile / tilesX);
+	}
+
+	/**
+	 * Stores the tile in the tile buffer in the smallest way and records it in an
+	 * index.
+	 *
+	 * @return The end of the file after the tile.
+	 */
+	private long writeTile(int tile, int count, long hash, long end, long[] offsets, int[] lengths, int[] types,
+			long[] hashes) throws IOException {
+		hashes[tile] = hash;
+		if (isUniform(tilePixels, count)) {
+			types[tile] = UNIFORM;
+			offsets[tile] = tilePixels[0];
+			lengths[tile] = 0;
+			return end;
+		}
+
+		ByteBuffer raw = ByteBuffer.allocate(count * 4);
+		raw.asIntBuffer().put(tilePixels, 0, count);
+		byte[] compressed = new byte[count * 4];
+		deflater.reset();
+		deflater.setInput(raw.array());
+		deflater.finish();
+		int length = deflater.deflate(compressed);
+
+		ByteBuffer data;
+		if (deflater.finished() && length < count * 4) {
+			types[tile] = COMPRESSED;
+			data = ByteBuffer.wrap(compressed, 0, length);
+		} else {
+			types[tile] = RAW;
+			data = raw;
+		}
+		offsets[tile] = end;
+		lengths[tile] = data.remaining();
+		writeFully(channel, data, end);
+		return end + lengths[tile];
+	}
+
+	/**
+	 * Writes an index at a position of a file.
+	 */
+	private static void writeIndex(FileChannel channel, long position, long[] offsets, int[] lengths, int[] types,
+			long[] hashes) throws IOException {
+		ByteBuffer index = ByteBuffer.allocate(offsets.length * ENTRY_BYTES);
+		for (int tile = 0; tile < offsets.length; tile++) {
+			index.putLong(offsets[tile]).putInt(lengths[tile]).putInt(types[tile]).putLong(hashes[tile]);
+		}
+		writeFully(channel, index.flip(), position);
+	}
+
+	/**
+	 * Returns the number of bytes of the file that are in use.
+	 */
+	private long liveBytes() {
+		long live = HEADER_BYTES + (long) offsets.length * ENTRY_BYTES;
+		for (int length : lengths) {
+			live += length;
+		}
+		return live;
+	}
+
+	/**
+	 * Returns whether the first pixels of a buffer all have the same color.
+	 */
+	private static boolean isUniform(int[] pixels, int count) {
+		int color = pixels[0];
+		for (int i = 1; i < count; i++) {
+			if (pixels[i] != color) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a 64-bit FNV-1a hash of the first pixels of a buffer.
+	 */
+	private static long hash(int[] pixels, int count) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < count; i++) {
+			hash = (hash ^ pixels[i]) * 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Writes all remaining bytes of a buffer at a position of a channel.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * The tiles of a project file as they were stored at one point. The mapping
+	 * and index they are read from are never changed afterwards.
+	 */
+	private static class StoredTiles implements TiledImage.TileSource {
+		private final Path path;
+		private final int width;
+		private final int height;
+		private final int tilesX;
+		private final MappedByteBuffer map;
+		private final long[] offsets;
+		private final int[] lengths;
+		private final int[] types;
+
+		/**
+		 * Constructor for the StoredTiles class.
+		 */
+		public StoredTiles(Path path, int width, int height, MappedByteBuffer map, long[] offsets, int[] lengths,
+				int[] types) {
+			this.path = path;
+			this.width = width;
+			this.height = height;
+			this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+			this.map = map;
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.types = types;
+		}
+
+		/**
+		 * Decodes the pixels of a tile. Each compressed tile gets its own inflater,
+		 * so tiles can be read on several threads at once.
+		 */
+		@Override
+		public void readTile(int tileX, int tileY, int[] pixels) throws IOException {
+			int tile = tileY * tilesX + tileX;
+			int count = Math.min(TILE_SIZE, width - tileX * TILE_SIZE) * Math.min(TILE_SIZE, height - tileY * TILE_SIZE);
+			switch (types[tile]) {
+			case UNIFORM:
+				Arrays.fill(pixels, 0, count, (int) offsets[tile]);
+				break;
+			case RAW:
+				map.slice((int) offsets[tile], lengths[tile]).asIntBuffer().get(pixels, 0, count);
+				break;
+			case COMPRESSED:
+				byte[] bytes = new byte[count * 4];
+				Inflater inflater = new Inflater();
+				inflater.setInput(map.slice((int) offsets[tile], lengths[tile]));
+				try {
+					int length = 0;
+					while (length < bytes.length && !inflater.finished()) {
+						int inflated = inflater.inflate(bytes, length, bytes.length - length);
+						if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+							throw new IOException("Tile " + tile + " of " + path + " is truncated");
+						}
+						length += inflated;
+					}
+				} catch (DataFormatException e) {
+					throw new IOException("Tile " + tile + " of " + path + " is corrupt", e);
+				} finally {
+					inflater.end();
+				}
+				ByteBuffer.wrap(bytes).asIntBuffer().get(pixels, 0, count);
+				break;
+			default:
+				throw new IOException("Tile " + tile + " of " + path + " has an unknown type");
+			}
+		}
+	}
+}
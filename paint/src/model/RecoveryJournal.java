@@ -0,0 +1,449 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * RecoveryJournal: An append-only log of the changes made to the canvas, from
+ * which the drawing can be rebuilt after the application died.
+ *
+ * The journal is a sequence of records. A size record starts a blank canvas of
+ * a size, a pixel record pastes a deflated rectangle of ARGB pixels onto it,
+ * and a fill record fills a rectangle with a single color. Every record carries
+ * a sequence number one higher than the one before and a CRC32 of its contents.
+ * When the journal is read back, it stops at the first record that is cut off,
+ * damaged or out of sequence, so a crash in the middle of an append only loses
+ * that record.
+ *
+ * Appending the same tiles again and again makes the log grow without bound,
+ * so once it holds more than twice as many bytes as it did after the last
+ * compaction, it is replayed and written anew as one size record followed by a
+ * record for every tile that is not blank, then renamed over the old log.
+ *
+ * The journal is not thread-safe. It is meant to be written by a single
+ * background thread.
+ *
+ * @author Tanay Desai
+ * @file: RecoveryJournal.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class RecoveryJournal implements Closeable {
+	private static final int RECORD_MAGIC = 0x4A524E4C; // "JRNL"
+	private static final int HEADER_BYTES = 36;
+	private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+	private static final long MIN_COMPACTION_BYTES = 4L * 1024 * 1024; // Smaller logs are never compacted.
+
+	// The types of records
+	private static final int SIZE = 1;
+	private static final int PIXELS = 2;
+	private static final int FILL = 3;
+
+	private static final int BLANK = 0xFFF4F4F4; // The color of a started canvas.
+
+	private final Path path;
+	private FileChannel channel;
+	private long sequence; // The sequence number of the next record.
+	private long compactedBytes; // The size of the log after the last compaction.
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Constructor for the RecoveryJournal class. Nothing is written until a canvas
+	 * size is started.
+	 *
+	 * @param path The log file.
+	 */
+	public RecoveryJournal(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Returns the log file used by default, in the home directory of the user.
+	 *
+	 * @return The path of the default log file.
+	 */
+	public static Path defaultPath() {
+		return Paths.get(System.getProperty("user.home"), ".paint", "recovery.journal");
+	}
+
+	/**
+	 * Starts the log anew with a blank canvas of a size, dropping what was logged
+	 * before.
+	 *
+	 * @param width  The width of the canvas.
+	 * @param height The height of the canvas.
+	 * @throws IOException If the log cannot be written.
+	 */
+	public void startCanvas(int width, int height) throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		sequence = 0;
+		writeRecord(channel, SIZE, 0, 0, width, height, new byte[0], 0);
+		channel.force(false);
+		compactedBytes = channel.size();
+	}
+
+	/**
+	 * Appends a rectangle of pixels to the log. It is not durable until flush is
+	 * called.
+	 *
+	 * @param x      The x-coordinate of the rectangle.
+	 * @param y      The y-coordinate of the rectangle.
+	 * @param width  The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 * @param pixels The pixels of the rectangle, row by row, as ARGB ints.
+	 * @throws IOException If the log cannot be written or no canvas was started.
+	 */
+	public void append(int x, int y, int width, int height, int[] pixels) throws IOException {
+		if (channel == null) {
+			throw new IOException("No canvas was started in " + path);
+		}
+		writePixels(channel, x, y, width, height, pixels);
+	}
+
+	/**
+	 * Appends a rectangle of a single color to the log. It is not durable until
+	 * flush is called.
+	 *
+	 * @param x      The x-coordinate of the rectangle.
+	 * @param y      The y-coordinate of the rectangle.
+	 * @param width  The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 * @param color  The color of the rectangle as an ARGB int.
+	 * @throws IOException If the log cannot be written or no canvas was started.
+	 */
+	public void appendFill(int x, int y, int width, int height, int color) throws IOException {
+		if (channel == null) {
+			throw new IOException("No canvas was started in " + path);
+		}
+		writeRecord(channel, FILL, x, y, width, height, ByteBuffer.allocate(4).putInt(color).array(), 4);
+	}
+
+	/**
+	 * Forces the appended records to disk.
+	 *
+	 * @throws IOException If the log cannot be written.
+	 */
+	public void flush() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Returns whether the log has grown enough since the last compaction that it
+	 * should be compacted.
+	 *
+	 * @return true if compact should be called.
+	 * @throws IOException If the size of the log cannot be read.
+	 */
+	public boolean needsCompaction() throws IOException {
+		if (channel == null) {
+			return false;
+		}
+		long size = channel.size();
+		return size > MIN_COMPACTION_BYTES && size > 2 * compactedBytes;
+	}
+
+	/**
+	 * Rewrites the log as the canvas it describes: a size record followed by one
+	 * record per tile that is not blank. The new log is written next to the old
+	 * one and renamed over it once it is on disk.
+	 *
+	 * @throws IOException If the log cannot be read or written.
+	 */
+	public void compact() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		flush();
+		Recovery canvas = recover(path);
+		if (canvas == null) {
+			return;
+		}
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		long next = sequence;
+		try (FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			sequence = 0;
+			TiledImage image = canvas.image;
+			writeRecord(compacted, SIZE, 0, 0, image.getWidth(), image.getHeight(), new byte[0], 0);
+			int[] tile = new int[TiledImage.TILE_SIZE * TiledImage.TILE_SIZE];
+			for (int tileY = 0; tileY < image.getTilesY(); tileY++) {
+				for (int tileX = 0; tileX < image.getTilesX(); tileX++) {
+					int x = tileX * TiledImage.TILE_SIZE;
+					int y = tileY * TiledImage.TILE_SIZE;
+					int tileWidth = image.getTileWidth(tileX);
+					int tileHeight = image.getTileHeight(tileY);
+					if (!image.isUniform(tileX, tileY)) {
+						image.getPixels(x, y, tileWidth, tileHeight, tile, 0, tileWidth);
+						writePixels(compacted, x, y, tileWidth, tileHeight, tile);
+					} else if (image.getUniformColor(tileX, tileY) != BLANK) {
+						writeRecord(compacted, FILL, x, y, tileWidth, tileHeight,
+								ByteBuffer.allocate(4).putInt(image.getUniformColor(tileX, tileY)).array(), 4);
+					}
+				}
+			}
+			compacted.force(false);
+		} catch (IOException e) {
+			sequence = next;
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+
+		channel.close();
+		try {
+			try {
+				Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// Go on appending to the old log
+			sequence = next;
+			channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+
+		// Go on appending to the compacted log
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		compactedBytes = channel.size();
+	}
+
+	/**
+	 * Closes the log and deletes it, because there is nothing left to recover.
+	 *
+	 * @throws IOException If the log cannot be deleted.
+	 */
+	public void discard() throws IOException {
+		close();
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * Closes the log, leaving it on disk.
+	 *
+	 * @throws IOException If the log cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Rebuilds the canvas from a log, up to the first record that is damaged or
+	 * missing.
+	 *
+	 * @param path The log file.
+	 * @return The canvas, or null if there is no log or it does not start with a
+	 *         size record.
+	 * @throws IOException If the log cannot be read.
+	 */
+	public static Recovery recover(Path path) throws IOException {
+		byte[] log;
+		try {
+			log = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(log);
+		Recovery canvas = null;
+		CRC32 crc = new CRC32();
+		Inflater inflater = new Inflater();
+		try {
+			for (long expected = 0; buffer.remaining() >= HEADER_BYTES + 4; expected++) {
+				int start = buffer.position();
+				int magic = buffer.getInt();
+				long sequence = buffer.getLong();
+				int type = buffer.getInt();
+				int x = buffer.getInt();
+				int y = buffer.getInt();
+				int width = buffer.getInt();
+				int height = buffer.getInt();
+				int length = buffer.getInt();
+				if (magic != RECORD_MAGIC || sequence != expected || length < 0 || length > MAX_PAYLOAD_BYTES
+						|| buffer.remaining() < length + 4) {
+					break;
+				}
+				crc.reset();
+				crc.update(log, start, HEADER_BYTES + length);
+				buffer.position(start + HEADER_BYTES + length);
+				if ((int) crc.getValue() != buffer.getInt()) {
+					break;
+				}
+
+				if (type == SIZE) {
+					if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+						break;
+					}
+					canvas = new Recovery(width, height);
+				} else if (type == PIXELS && canvas != null) {
+					if (!canvas.paste(inflater, log, start + HEADER_BYTES, length, x, y, width, height)) {
+						break;
+					}
+				} else if (type == FILL && canvas != null && length == 4) {
+					if (!canvas.fill(x, y, width, height, ByteBuffer.wrap(log, start + HEADER_BYTES, 4).getInt())) {
+						break;
+					}
+				} else {
+					break;
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+		return canvas;
+	}
+
+	/**
+	 * Appends a record of deflated pixels to a log.
+	 */
+	private void writePixels(FileChannel log, int x, int y, int width, int height, int[] pixels)
+			throws IOException {
+		ByteBuffer raw = ByteBuffer.allocate(width * height * 4);
+		raw.asIntBuffer().put(pixels, 0, width * height);
+		byte[] compressed = new byte[raw.capacity() + raw.capacity() / 100 + 64];
+		deflater.reset();
+		deflater.setInput(raw.array());
+		deflater.finish();
+		int length = deflater.deflate(compressed);
+		writeRecord(log, PIXELS, x, y, width, height, compressed, length);
+	}
+
+	/**
+	 * Appends a record with the next sequence number to a log.
+	 */
+	private void writeRecord(FileChannel log, int type, int x, int y, int width, int height, byte[] payload,
+			int length) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length + 4);
+		record.putInt(RECORD_MAGIC).putLong(sequence).putInt(type).putInt(x).putInt(y).putInt(width).putInt(height)
+				.putInt(length).put(payload, 0, length);
+		crc.reset();
+		crc.update(record.array(), 0, HEADER_BYTES + length);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		while (record.hasRemaining()) {
+			log.write(record);
+		}
+		sequence++;
+	}
+
+	/**
+	 * A canvas rebuilt from a log.
+	 */
+	public static class Recovery {
+		private final TiledImage image;
+
+		/**
+		 * Constructor for a blank canvas.
+		 *
+		 * @param width  The width of the canvas.
+		 * @param height The height of the canvas.
+		 */
+		private Recovery(int width, int height) {
+			this.image = new TiledImage(width, height, BLANK);
+		}
+
+		/**
+		 * Returns the width of the canvas.
+		 *
+		 * @return The width in pixels.
+		 */
+		public int getWidth() {
+			return image.getWidth();
+		}
+
+		/**
+		 * Returns the height of the canvas.
+		 *
+		 * @return The height in pixels.
+		 */
+		public int getHeight() {
+			return image.getHeight();
+		}
+
+		/**
+		 * Returns the canvas.
+		 *
+		 * @return The canvas as a TiledImage, in which the parts that were never
+		 *         logged are single blank tiles.
+		 */
+		public TiledImage getImage() {
+			return image;
+		}
+
+		/**
+		 * Inflates the pixels of a record and pastes them onto the canvas.
+		 *
+		 * @return false if the record does not fit the canvas or cannot be inflated.
+		 */
+		private boolean paste(Inflater inflater, byte[] log, int offset, int length, int x, int y, int rectWidth,
+				int rectHeight) {
+			if (!fits(x, y, rectWidth, rectHeight)) {
+				return false;
+			}
+			byte[] bytes = new byte[rectWidth * rectHeight * 4];
+			inflater.reset();
+			inflater.setInput(log, offset, length);
+			try {
+				if (inflater.inflate(bytes) != bytes.length || !inflater.finished()) {
+					return false;
+				}
+			} catch (DataFormatException e) {
+				return false;
+			}
+			int[] rect = new int[rectWidth * rectHeight];
+			ByteBuffer.wrap(bytes).asIntBuffer().get(rect);
+			image.setPixels(x, y, rectWidth, rectHeight, rect, 0, rectWidth);
+			return true;
+		}
+
+		/**
+		 * Fills a rectangle of the canvas with a single color.
+		 *
+		 * @return false if the record does not fit the canvas.
+		 */
+		private boolean fill(int x, int y, int rectWidth, int rectHeight, int color) {
+			if (!fits(x, y, rectWidth, rectHeight)) {
+				return false;
+			}
+			image.fill(x, y, rectWidth, rectHeight, color);
+			return true;
+		}
+
+		/**
+		 * Checks whether a rectangle of a record lies on the canvas.
+		 */
+		private boolean fits(int x, int y, int rectWidth, int rectHeight) {
+			return x >= 0 && y >= 0 && rectWidth > 0 && rectHeight > 0 && x <= image.getWidth() - rectWidth
+					&& y <= image.getHeight() - rectHeight;
+		}
+	}
+}
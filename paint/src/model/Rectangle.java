@@ -49,6 +49,7 @@ public class Rectangle extends DrawingTool {
 		double height = Math.pow(getSize(), 2) / 2;
 
 		gc.strokeRect(x, y, width + width, height);
+		markOutlined(gc, x, y, width + width, height);
 	}
 
 	@Override
@@ -1,8 +1,10 @@
 package model;
 
+import java.util.Arrays;
+
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 
@@ -12,7 +14,15 @@ import javafx.scene.paint.Color;
  *
  * This class provides functionality for selecting and manipulating objects on
  * the canvas. It allows users to click and drag to select objects and perform
- * actions like moving or resizing the selection.
+ * actions like moving or resizing the selection. Only the pixels inside the
+ * selection are read and cleared, in bulk through an array of ARGB pixels, so
+ * selecting a small area stays cheap on a large canvas.
+ * 
+ * While it is dragged, the selection floats over the canvas: every move puts
+ * back what was under its last position from a copy of the canvas pixels and
+ * draws the selection at its new position, without creating any images or
+ * canvases. The selection is dropped onto the canvas when the mouse is
+ * released.
  * 
  * @author Hannibal Oyebode, Doom Al Rajhi
  * @file: Select.java
@@ -28,8 +38,13 @@ public class Select extends DrawingTool {
 	private int endX;
 	private int endY;
 	private int timesClicked = 0;
-	GraphicsContext selectedArea;
-	GraphicsContext origGC;
+	private WritableImage selection; // The selected pixels, floating until dropped.
+	private int[] background; // The canvas pixels with the selected area cleared.
+	private int backgroundWidth;
+	private int backgroundHeight;
+	private int floatX; // Where the selection was last drawn.
+	private int floatY;
+	private int[] pixels = new int[0]; // The pixels inside the selection, reused between selections.
 
 	/**
 	 * Constructor for the Select class.
@@ -72,15 +87,18 @@ public class Select extends DrawingTool {
 //			gc.stroke();
 
 				// select the area between coordinates
-				selectedArea = selectPixels(canvas);
+				selection = selectPixels(canvas);
 
 				// save the original canvas
-				Canvas tempCanvas = new Canvas(canvas.getWidth(), canvas.getHeight());
-				origGC = tempCanvas.getGraphicsContext2D();
-				origGC.drawImage(canvas.snapshot(null, null), 0, 0);
+				backgroundWidth = (int) canvas.getWidth();
+				backgroundHeight = (int) canvas.getHeight();
+				background = new int[backgroundWidth * backgroundHeight];
+				readPixels(canvas, 0, 0, backgroundWidth, backgroundHeight, background);
 
 				// remove the selected area from the original canvas
 				originalCleaner();
+				floatX = startX;
+				floatY = startY;
 
 			}
 
@@ -94,76 +112,74 @@ public class Select extends DrawingTool {
 		// does nothing in this class
 	}
 
+	/**
+	 * Moves the floating selection to a new position on the canvas.
+	 * 
+	 * @param gc The GraphicsContext of the canvas the selection floats over.
+	 * @param x  The new x-coordinate of the selection.
+	 * @param y  The new y-coordinate of the selection.
+	 * @return The canvas the selection was drawn on.
+	 */
 	public Canvas moveSelected(GraphicsContext gc, double x, double y) {
-		Canvas movedCanvas = combineGCs(origGC, selectedArea, (int) x, (int) y);
+		if (selection == null || background == null) {
+			return gc.getCanvas();
+		}
+		int width = (int) selection.getWidth();
+		int height = (int) selection.getHeight();
+		double alpha = gc.getGlobalAlpha();
+		gc.setGlobalAlpha(1);
+
+		// Put back what was under the selection at its last position
+		int left = Math.max(floatX, 0);
+		int top = Math.max(floatY, 0);
+		int right = Math.min(floatX + width, backgroundWidth);
+		int bottom = Math.min(floatY + height, backgroundHeight);
+		if (left < right && top < bottom) {
+			gc.getPixelWriter().setPixels(left, top, right - left, bottom - top, PixelFormat.getIntArgbInstance(),
+					background, top * backgroundWidth + left, backgroundWidth);
+			markDirty(left, top, right - left, bottom - top);
+		}
 
-		return movedCanvas;
+		floatX = (int) x;
+		floatY = (int) y;
+		gc.drawImage(selection, floatX, floatY);
+		markDirty(floatX, floatY, width, height);
+
+		gc.setGlobalAlpha(alpha);
+		return gc.getCanvas();
 	}
 
 	/**
-	 * A method that gets selected pixels and creates a WriteableImage from them
+	 * A method that copies the selected pixels into a new image
 	 * 
-	 * @param canvas gc is the input GraphicsContext object
-	 * @return selectedImage is the WriteableImage created from the selected pixels
+	 * @param canvas The canvas to select the pixels from
+	 * @return An image the size of the selection holding the selected pixels
 	 */
-	public GraphicsContext selectPixels(Canvas canvas) {
+	public WritableImage selectPixels(Canvas canvas) {
 		fixCoords();
 		try {
-			// Get the pixel reader from the canvas
-			PixelReader pixelReader = canvas.snapshot(null, null).getPixelReader();
-
-			// Create a new writable image
 			WritableImage selectedImage = new WritableImage(endX - startX, endY - startY);
 
-			// Get the pixel writer for the writable image
-			var pixelWriter = selectedImage.getPixelWriter();
-
-			// Select pixels between start and end
-			for (int y = 0; y < canvas.getHeight(); y++) {
-				for (int x = 0; x < canvas.getWidth(); x++) {
-					if (((y < endY) && (y > startY)) && ((x < endX) && (x > startX))) {
-						Color color = pixelReader.getColor(x, y);
-
-						// Set the pixel in the writable image to the selected color
-						pixelWriter.setColor(x - startX, y - startY, color);
-					}
+			// Select the pixels between start and end that are on the canvas
+			int left = Math.max(startX + 1, 0);
+			int top = Math.max(startY + 1, 0);
+			int width = Math.min(endX, (int) canvas.getWidth()) - left;
+			int height = Math.min(endY, (int) canvas.getHeight()) - top;
+			if (width > 0 && height > 0) {
+				if (pixels.length < width * height) {
+					pixels = new int[width * height];
 				}
+				readPixels(canvas, left, top, width, height, pixels);
+				selectedImage.getPixelWriter().setPixels(left - startX, top - startY, width, height,
+						PixelFormat.getIntArgbInstance(), pixels, 0, width);
 			}
 
-			// Create a new canvas and draw the selected pixels
-			Canvas selectedCanvas = new Canvas(endX - startX, endY - startY);
-			GraphicsContext selectedGC = selectedCanvas.getGraphicsContext2D();
-			selectedGC.drawImage(selectedImage, 0, 0);
-
-			return selectedGC;
+			return selectedImage;
 		} catch (Exception e) {
 		}
 		return null;
 	}
 
-	/**
-	 * This function combnes two GraphicsContext objects into one Canvas
-	 * 
-	 * @param gc1 the first GraphicsContext object from which the size of the final
-	 *            Canvas is obtained
-	 * @param gc2 the second GraphicsContes=xt object that's being 'pasted' on the
-	 *            first.
-	 * @param x   is the location on the x axis at which gc2 is pasted
-	 * @param y   is the location on the y axis at which gc2 is pasted
-	 * @return combinedCanvas, the result of adding the two GraphicsContexts
-	 */
-	private Canvas combineGCs(GraphicsContext gc1, GraphicsContext gc2, int x, int y) {
-		// Create a new canvas with the same dimensions
-		Canvas combinedCanvas = new Canvas(gc1.getCanvas().getWidth(), gc1.getCanvas().getHeight());
-		GraphicsContext combinedGC = combinedCanvas.getGraphicsContext2D();
-
-		// Draw on the new canvas using both graphics contexts
-		combinedGC.drawImage(gc1.getCanvas().snapshot(null, null), 0, 0);
-		combinedGC.drawImage(gc2.getCanvas().snapshot(null, null), x, y);
-
-		return combinedCanvas;
-	}
-
 	/**
 	 * Switches the start and end coordinates to be in a format on which the other
 	 * methods can work with.
@@ -190,32 +206,30 @@ public class Select extends DrawingTool {
 	 */
 	@Override
 	public Canvas mouseReleased(GraphicsContext gc, double x, double y) {
-		Canvas lastCanvas = combineGCs(origGC, selectedArea, (int) x, (int) y);
-		return lastCanvas;
+		Canvas canvas = moveSelected(gc, x, y);
+
+		// The selection is now part of the canvas
+		selection = null;
+		background = null;
+		return canvas;
 	}
 
 	/**
-	 * removes the area that was selected and replaces it with the background color.
+	 * removes the area that was selected, leaving it transparent so the layers
+	 * under it show through.
 	 */
 	private void originalCleaner() {
-
-		// Create a new writable image
-		WritableImage blankBackground = new WritableImage(endX - startX, endY - startY);
-
-		// Get the pixel writer for the writable image
-		var pixelWriter = blankBackground.getPixelWriter();
-
-		// Select pixels between start and end
-		for (int y = 0; y < origGC.getCanvas().getHeight(); y++) {
-			for (int x = 0; x < origGC.getCanvas().getWidth(); x++) {
-				if (((y < endY) && (y > startY)) && ((x < endX) && (x > startX))) {
-
-					// Set the pixel in the writable image to the selected color
-					pixelWriter.setColor(x - startX, y - startY, Color.web("#f2f2f2"));
-				}
-			}
+		int left = Math.max(startX + 1, 0);
+		int top = Math.max(startY + 1, 0);
+		int width = Math.min(endX, backgroundWidth) - left;
+		int height = Math.min(endY, backgroundHeight) - top;
+		if (width <= 0 || height <= 0) {
+			return;
 		}
 
-		origGC.drawImage(blankBackground, startX, startY);
+		// Clear the pixels between start and end
+		for (int row = top; row < top + height; row++) {
+			Arrays.fill(background, row * backgroundWidth + left, row * backgroundWidth + left + width, 0);
+		}
 	}
 }
@@ -1,9 +1,8 @@
 package model;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -23,7 +22,11 @@ import javafx.scene.paint.Color;
  */
 public class SprayPaintBrush extends Brush {
 
-	private static final int SPRAY_THICKNESS = 100;
+	private static final int SPRAY_THICKNESS = 100; // The default density.
+
+	private final SplittableRandom random = new SplittableRandom();
+	private int density = SPRAY_THICKNESS; // The particles sprayed at a point.
+	private int[] dab = new int[0]; // The pixels under a dab, kept for the next one.
 
 	/**
 	 * Constructor for creating a SprayPaintBrush instance.
@@ -54,12 +57,55 @@ public class SprayPaintBrush extends Brush {
 		spray(canvas, x, y);
 	}
 
+	/**
+	 * Sprays at every point of a frame, rather than drawing them as one stroke
+	 * like the Brush does.
+	 * 
+	 * @param canvas The Canvas to draw on.
+	 * @param points The points as x, y pairs.
+	 * @param count  The number of values used in points.
+	 */
+	@Override
+	public void drawDragged(Canvas canvas, double[] points, int count) {
+		for (int point = 0; point < count; point += 2) {
+			spray(canvas, points[point], points[point + 1]);
+		}
+	}
+
+	/**
+	 * Get the number of paint particles sprayed at a point.
+	 * 
+	 * @return The number of particles per dab.
+	 */
+	public int getDensity() {
+		return density;
+	}
+
+	/**
+	 * Set the number of paint particles sprayed at a point. The particles spread
+	 * over an area set by the brush size, so a larger density fills it faster.
+	 * 
+	 * @param density The number of particles per dab, at least 1.
+	 * @throws IllegalArgumentException If the density is not positive.
+	 */
+	public void setDensity(int density) {
+		if (density <= 0) {
+			throw new IllegalArgumentException("Invalid spray density " + density);
+		}
+		this.density = density;
+	}
+
 	/**
 	 * Creates a visual effect on the canvas that resembles the dispersion of paint
 	 * particles, characteristic of spray paint. This method simulates a spray paint
 	 * effect by randomly placing a specified number of small dots (paint particles)
-	 * around a central point. The dispersion range and density of the particles are
-	 * influenced by the brush size.
+	 * around a central point. The dispersion range of the particles is influenced
+	 * by the brush size, and their number is the density.
+	 * 
+	 * The pixels under the dab are read into a buffer, the particles are painted
+	 * into it one pixel each, and the buffer is written back in one go. The
+	 * buffer and the random generator are kept between dabs, so dragging the
+	 * spray allocates nothing.
 	 * 
 	 * @param canvas The Canvas object on which the spray paint effect is to be
 	 *               applied.
@@ -69,17 +115,49 @@ public class SprayPaintBrush extends Brush {
 	 *               originates.
 	 */
 	private void spray(Canvas canvas, double x, double y) {
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-		Random random = new Random();
+		double spread = Math.pow(getSize(), 2) / 2;
+		int left = Math.max(0, (int) Math.floor(x - spread / 2));
+		int top = Math.max(0, (int) Math.floor(y - spread / 2));
+		int right = Math.min((int) canvas.getWidth(), (int) Math.floor(x + spread / 2) + 1);
+		int bottom = Math.min((int) canvas.getHeight(), (int) Math.floor(y + spread / 2) + 1);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		int dabWidth = right - left;
+		int dabHeight = bottom - top;
+		if (dab.length < dabWidth * dabHeight) {
+			dab = new int[dabWidth * dabHeight];
+		}
+		readPixels(canvas, left, top, dabWidth, dabHeight, dab);
 
-		for (int i = 0; i < SPRAY_THICKNESS; i++) {
+		int argb = toArgb(color);
+		int alpha = (int) Math.round((argb >>> 24) * canvas.getGraphicsContext2D().getGlobalAlpha());
+		for (int i = 0; i < density; i++) {
 			// random values to determine the position of each paint particle relative to
 			// the original point (x, y)
-			double offsetX = (random.nextDouble() - 0.5) * (Math.pow(getSize(), 2) / 2);
-			double offsetY = (random.nextDouble() - 0.5) * (Math.pow(getSize(), 2) / 2);
+			int particleX = (int) Math.floor(x + (random.nextDouble() - 0.5) * spread) - left;
+			int particleY = (int) Math.floor(y + (random.nextDouble() - 0.5) * spread) - top;
+			if (particleX < 0 || particleX >= dabWidth || particleY < 0 || particleY >= dabHeight) {
+				continue;
+			}
+			int index = particleY * dabWidth + particleX;
+			dab[index] = alpha == 255 ? argb : blend(argb, alpha, dab[index]);
+		}
+		writePixels(canvas, left, top, dabWidth, dabHeight, dab, 0, dabWidth);
+	}
 
-			gc.setFill(color);
-			gc.fillOval(x + offsetX, y + offsetY, 1, 1);
+	/**
+	 * Paints a color with an alpha over an ARGB pixel.
+	 */
+	private static int blend(int color, int alpha, int pixel) {
+		if (alpha == 0) {
+			return pixel;
 		}
+		int below = (pixel >>> 24) * (255 - alpha) / 255;
+		int outAlpha = alpha + below;
+		int red = ((color >> 16 & 0xFF) * alpha + (pixel >> 16 & 0xFF) * below) / outAlpha;
+		int green = ((color >> 8 & 0xFF) * alpha + (pixel >> 8 & 0xFF) * below) / outAlpha;
+		int blue = ((color & 0xFF) * alpha + (pixel & 0xFF) * below) / outAlpha;
+		return outAlpha << 24 | red << 16 | green << 8 | blue;
 	}
 }
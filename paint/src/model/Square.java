@@ -49,6 +49,7 @@ public class Square extends DrawingTool {
 		double height = Math.pow(getSize(), 2) / 2;
 
 		gc.strokeRect(x, y, width, height);
+		markOutlined(gc, x, y, width, height);
 	}
 
 	@Override
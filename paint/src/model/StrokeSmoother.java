@@ -0,0 +1,229 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * StrokeSmoother: Turns the points of a freehand stroke into fewer, smooth
+ * curves.
+ *
+ * The mouse sends a point every pixel or two, and drawing a straight line to
+ * each of them gives jagged curves made of far more segments than the shape
+ * needs. The smoother first drops the points that lie within a tolerance of the
+ * line between the points around them, like Ramer-Douglas-Peucker does, and
+ * then draws a Catmull-Rom spline through the points it keeps, handed out as
+ * cubic Bezier curves.
+ *
+ * Ramer-Douglas-Peucker needs the whole stroke before it can keep anything, so
+ * the smoother decides while the points arrive instead: a point is dropped as
+ * long as every point since the last kept one stays within the tolerance of the
+ * line from the last kept point to the newest one. A kept point never stands
+ * for more than MAX_SPAN points, which keeps the work per point constant and
+ * bounds how far the curves trail behind the mouse. A curve is only known once
+ * the kept point after its end is, so the last curves are handed out by finish
+ * when the stroke ends.
+ *
+ * The tangents of the spline are scaled by the lengths of the segments around
+ * them, which keeps a curve from overshooting next to a much longer or shorter
+ * one after points were dropped.
+ *
+ * @author Tanay Desai
+ * @file: StrokeSmoother.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class StrokeSmoother {
+	/**
+	 * The default distance in pixels a dropped point may be from the curve.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.75;
+
+	private static final int MAX_SPAN = 16; // The most points a kept point stands for.
+
+	private final double tolerance;
+	private double[] span = new double[2 * MAX_SPAN]; // The points since the last kept one.
+	private int spanCount;
+
+	// The last three kept points, the newest last
+	private double ax;
+	private double ay;
+	private double bx;
+	private double by;
+	private double cx;
+	private double cy;
+	private int kept; // The number of points kept since the stroke started.
+
+	private double[] curves = new double[6 * 8]; // The curves not taken yet.
+	private int curveCount;
+
+	/**
+	 * Constructor for a StrokeSmoother with the default tolerance.
+	 */
+	public StrokeSmoother() {
+		this(DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Constructor for the StrokeSmoother class.
+	 *
+	 * @param tolerance The distance in pixels a dropped point may be from the
+	 *                  line that replaces it.
+	 */
+	public StrokeSmoother(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Starts a new stroke, forgetting anything left of the previous one.
+	 *
+	 * @param x The x-coordinate of the first point.
+	 * @param y The y-coordinate of the first point.
+	 */
+	public void start(double x, double y) {
+		spanCount = 0;
+		kept = 0;
+		curveCount = 0;
+		keep(x, y);
+	}
+
+	/**
+	 * Adds the next point of the stroke. The curves it completes, if any, can be
+	 * taken with getCurves.
+	 *
+	 * @param x The x-coordinate of the point.
+	 * @param y The y-coordinate of the point.
+	 */
+	public void add(double x, double y) {
+		if (kept == 0) {
+			start(x, y);
+			return;
+		}
+		double lastX = spanCount == 0 ? cx : span[spanCount - 2];
+		double lastY = spanCount == 0 ? cy : span[spanCount - 1];
+		if (x == lastX && y == lastY) {
+			return;
+		}
+
+		if (spanCount == span.length || !withinTolerance(x, y)) {
+			// The previous point is the last one the line can go to
+			keep(span[spanCount - 2], span[spanCount - 1]);
+			spanCount = 0;
+		}
+		span[spanCount++] = x;
+		span[spanCount++] = y;
+	}
+
+	/**
+	 * Ends the stroke, handing out the curves up to its last point.
+	 */
+	public void finish() {
+		if (kept == 0) {
+			return;
+		}
+		if (spanCount > 0) {
+			keep(span[spanCount - 2], span[spanCount - 1]);
+			spanCount = 0;
+		}
+		if (kept >= 2) {
+			addCurve(cx, cy);
+		}
+		kept = 0;
+	}
+
+	/**
+	 * Returns the curves handed out since they were last cleared. Each curve
+	 * starts where the previous one ended, the first where the stroke started,
+	 * and takes six values: the two control points and the end point, as x, y
+	 * pairs.
+	 *
+	 * @return The curves, valid up to getCurveCount.
+	 */
+	public double[] getCurves() {
+		return curves;
+	}
+
+	/**
+	 * Returns the number of values used in getCurves, six per curve.
+	 *
+	 * @return The number of values.
+	 */
+	public int getCurveCount() {
+		return curveCount;
+	}
+
+	/**
+	 * Forgets the curves handed out so far, once they were drawn.
+	 */
+	public void clearCurves() {
+		curveCount = 0;
+	}
+
+	/**
+	 * Checks whether every point since the last kept one is within the tolerance
+	 * of the line from the last kept point to a new point.
+	 */
+	private boolean withinTolerance(double x, double y) {
+		double dx = x - cx;
+		double dy = y - cy;
+		double lengthSquared = dx * dx + dy * dy;
+		double limit = tolerance * tolerance;
+		for (int point = 0; point < spanCount; point += 2) {
+			double px = span[point] - cx;
+			double py = span[point + 1] - cy;
+			// The distance to the line between its two ends, not beyond them
+			double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+			double ex = px - t * dx;
+			double ey = py - t * dy;
+			if (ex * ex + ey * ey > limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps a point. The curve between the two kept points before it is known
+	 * from then on.
+	 */
+	private void keep(double x, double y) {
+		kept++;
+		if (kept == 1) {
+			// The first curve takes its start as the point before it
+			ax = bx = cx = x;
+			ay = by = cy = y;
+			return;
+		}
+		if (kept >= 3) {
+			addCurve(x, y);
+		}
+		ax = bx;
+		ay = by;
+		bx = cx;
+		by = cy;
+		cx = x;
+		cy = y;
+	}
+
+	/**
+	 * Adds the curve between the last two kept points, given the point after
+	 * them.
+	 */
+	private void addCurve(double nextX, double nextY) {
+		double before = Math.hypot(bx - ax, by - ay);
+		double length = Math.hypot(cx - bx, cy - by);
+		double after = Math.hypot(nextX - cx, nextY - cy);
+		double start = before + length == 0 ? 0 : length / (3 * (before + length));
+		double end = length + after == 0 ? 0 : length / (3 * (length + after));
+
+		if (curveCount + 6 > curves.length) {
+			curves = Arrays.copyOf(curves, curves.length * 2);
+		}
+		curves[curveCount++] = bx + (cx - ax) * start;
+		curves[curveCount++] = by + (cy - ay) * start;
+		curves[curveCount++] = cx - (nextX - bx) * end;
+		curves[curveCount++] = cy - (nextY - by) * end;
+		curves[curveCount++] = cx;
+		curves[curveCount++] = cy;
+	}
+}
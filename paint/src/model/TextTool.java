@@ -1,11 +1,14 @@
 package model;
 
+import javafx.geometry.Bounds;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextBoundsType;
 
 /**
  * This class represents the text logic, which handles all the necessary changes
@@ -60,10 +63,22 @@ public class TextTool extends DrawingTool {
 		// Handle the Enter key press to draw the text
 		textField.setOnAction(event -> {
 			GraphicsContext gc = canvas.getGraphicsContext2D();
+			Font font = new Font(Math.pow(size, 2) / (size / 2));
 			gc.setFill(getColor());
-			gc.setFont(new Font(Math.pow(size, 2) / (size / 2)));
+			gc.setFont(font);
 			gc.fillText(textField.getText(), x, y);
 
+			// Measure the text to report the area it was drawn in, including glyphs
+			// whose ink reaches past their advance, like italics
+			Text text = new Text(textField.getText());
+			text.setFont(font);
+			Bounds bounds = text.getLayoutBounds();
+			markDirty(x + bounds.getMinX(), y + bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
+			text.setBoundsType(TextBoundsType.VISUAL);
+			bounds = text.getLayoutBounds();
+			markDirty(x + bounds.getMinX(), y + bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
+			fireChanged();
+
 			// Clear and hide the TextField after text is entered
 			textField.clear();
 			textField.setVisible(false);
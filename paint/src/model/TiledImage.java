@@ -0,0 +1,626 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * TiledImage: A large image stored as a sparse grid of square tiles.
+ *
+ * Every tile starts out as a single color and only gets an array of pixels
+ * when something other than that color is written to it. A tile that ends up
+ * all one color again is turned back into a color, so the memory an image uses
+ * depends on how much of it is drawn on, not on its size. A blank 20000x20000
+ * image takes a few kilobytes.
+ *
+ * Copies are cheap: a copy shares the pixel arrays of the tiles with the image
+ * it was made from, and whichever of the two writes to a shared tile first
+ * gives itself its own array. This lets a copy be handed to another thread, for
+ * saving for example, while the original goes on being drawn on, as long as the
+ * copy itself is not written to.
+ *
+ * The tiles of an image can also be left to a TileSource, such as an open
+ * project file, which is only asked for the pixels of a tile the first time the
+ * tile is used. Until then the tile costs nothing, so opening a large drawing
+ * only decodes the tiles that are looked at.
+ *
+ * An image is not thread-safe. Pixels are ARGB ints.
+ *
+ * @author Tanay Desai
+ * @file: TiledImage.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class TiledImage {
+	/**
+	 * The width and height of the tiles.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	private static final int TILE_SHIFT = 8; // log2(TILE_SIZE)
+
+	private int width;
+	private int height;
+	private int tilesX;
+	private int tilesY;
+	private int[][] tiles; // The pixels of every tile, or null while the tile is one color.
+	private int[] colors; // The color of the tiles that have no pixels.
+	private boolean[] shared; // Whether the pixels of a tile are shared with a copy.
+	private TileSource[] sources; // Where the tiles not read yet come from, or null if all were read.
+	private int unread; // The number of tiles not read yet.
+
+	/**
+	 * TileSource: Provides the pixels of the tiles of an image that are read the
+	 * first time they are used. A source may be used by several images and
+	 * threads at once, and must give the same pixels for a tile every time.
+	 */
+	public interface TileSource {
+		/**
+		 * Reads the pixels of a tile.
+		 *
+		 * @param tileX  The column of the tile.
+		 * @param tileY  The row of the tile.
+		 * @param pixels Receives the pixels of the tile, row by row, as ARGB ints.
+		 * @throws IOException If the tile cannot be read.
+		 */
+		void readTile(int tileX, int tileY, int[] pixels) throws IOException;
+	}
+
+	/**
+	 * Constructor for the TiledImage class.
+	 *
+	 * @param width  The width of the image.
+	 * @param height The height of the image.
+	 * @param color  The color every pixel starts out with.
+	 */
+	public TiledImage(int width, int height, int color) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+		tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+		tiles = new int[tilesX * tilesY][];
+		colors = new int[tilesX * tilesY];
+		shared = new boolean[tilesX * tilesY];
+		Arrays.fill(colors, color);
+	}
+
+	/**
+	 * Returns a copy of the image that shares the pixels of its tiles until
+	 * either image writes to them.
+	 *
+	 * @return The copy.
+	 */
+	public TiledImage copy() {
+		TiledImage copy = new TiledImage(width, height, 0);
+		copy.sources = sources == null ? null : sources.clone();
+		copy.unread = unread;
+		for (int tile = 0; tile < tiles.length; tile++) {
+			copy.colors[tile] = colors[tile];
+			if (tiles[tile] != null) {
+				copy.tiles[tile] = tiles[tile];
+				copy.shared[tile] = true;
+				shared[tile] = true;
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Makes this image a copy of another, taking on its size. The pixels of the
+	 * tiles are shared until either image writes to them.
+	 *
+	 * @param source The image to copy.
+	 */
+	public void copyFrom(TiledImage source) {
+		TiledImage copy = source.copy();
+		width = copy.width;
+		height = copy.height;
+		tilesX = copy.tilesX;
+		tilesY = copy.tilesY;
+		tiles = copy.tiles;
+		colors = copy.colors;
+		shared = copy.shared;
+		sources = copy.sources;
+		unread = copy.unread;
+	}
+
+	/**
+	 * Copies an area of another image into the same area of this one. Whole tiles
+	 * are shared instead of copied when both images have the same tile grid there.
+	 *
+	 * @param source The image to copy from.
+	 * @param x      The x-coordinate of the area.
+	 * @param y      The y-coordinate of the area.
+	 * @param areaW  The width of the area.
+	 * @param areaH  The height of the area.
+	 */
+	public void copyFrom(TiledImage source, int x, int y, int areaW, int areaH) {
+		int left = Math.max(0, x);
+		int top = Math.max(0, y);
+		int right = Math.min(Math.min(width, source.width), x + areaW);
+		int bottom = Math.min(Math.min(height, source.height), y + areaH);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+
+		int[] buffer = null;
+		for (int tileY = top >> TILE_SHIFT; tileY << TILE_SHIFT < bottom; tileY++) {
+			for (int tileX = left >> TILE_SHIFT; tileX << TILE_SHIFT < right; tileX++) {
+				int fromX = Math.max(left, tileX << TILE_SHIFT);
+				int fromY = Math.max(top, tileY << TILE_SHIFT);
+				int toX = Math.min(right, (tileX + 1) << TILE_SHIFT);
+				int toY = Math.min(bottom, (tileY + 1) << TILE_SHIFT);
+				int tile = tileY * tilesX + tileX;
+				int sourceTile = tileY * source.tilesX + tileX;
+				boolean wholeTile = toX - fromX == getTileWidth(tileX) && toY - fromY == getTileHeight(tileY)
+						&& toX - fromX == source.getTileWidth(tileX) && toY - fromY == source.getTileHeight(tileY);
+
+				if (wholeTile) {
+					setSource(tile, source.sources == null ? null : source.sources[sourceTile]);
+					tiles[tile] = source.tiles[sourceTile];
+					colors[tile] = source.colors[sourceTile];
+					shared[tile] = tiles[tile] != null;
+					if (tiles[tile] != null) {
+						source.shared[sourceTile] = true;
+					}
+				} else {
+					if (buffer == null) {
+						buffer = new int[TILE_SIZE * TILE_SIZE];
+					}
+					source.getPixels(fromX, fromY, toX - fromX, toY - fromY, buffer, 0, toX - fromX);
+					setPixels(fromX, fromY, toX - fromX, toY - fromY, buffer, 0, toX - fromX);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the image at a new size, placed at an offset on it. The
+	 * area the image does not cover is filled with a color. When the offset is a
+	 * whole number of tiles, the tiles are shared like they are by copy, so only
+	 * the tiles at the new edges cost anything. Otherwise the pixels are moved,
+	 * but only for the tiles that are drawn on; blank areas stay single colors.
+	 *
+	 * @param newWidth  The width of the new image.
+	 * @param newHeight The height of the new image.
+	 * @param x         Where the left edge of this image goes on the new one,
+	 *                  negative to crop it.
+	 * @param y         Where the top edge of this image goes on the new one.
+	 * @param color     The color of the area not covered by this image.
+	 * @return The new image.
+	 */
+	public TiledImage resized(int newWidth, int newHeight, int x, int y, int color) {
+		TiledImage image = new TiledImage(newWidth, newHeight, color);
+		int[] buffer = null;
+		for (int tileY = 0; tileY < image.tilesY; tileY++) {
+			for (int tileX = 0; tileX < image.tilesX; tileX++) {
+				// The part of this image that lands on the tile
+				int tileLeft = tileX << TILE_SHIFT;
+				int tileTop = tileY << TILE_SHIFT;
+				int fromX = Math.max(tileLeft, x);
+				int fromY = Math.max(tileTop, y);
+				int toX = Math.min(tileLeft + image.getTileWidth(tileX), x + width);
+				int toY = Math.min(tileTop + image.getTileHeight(tileY), y + height);
+				if (fromX >= toX || fromY >= toY) {
+					continue;
+				}
+				int tile = tileY * image.tilesX + tileX;
+				boolean covered = fromX == tileLeft && fromY == tileTop && toX - fromX == image.getTileWidth(tileX)
+						&& toY - fromY == image.getTileHeight(tileY);
+
+				// A tile that moves onto a tile of the same size is shared
+				int sourceTileX = (fromX - x) >> TILE_SHIFT;
+				int sourceTileY = (fromY - y) >> TILE_SHIFT;
+				if (covered && ((fromX - x) & (TILE_SIZE - 1)) == 0 && ((fromY - y) & (TILE_SIZE - 1)) == 0
+						&& getTileWidth(sourceTileX) == toX - fromX && getTileHeight(sourceTileY) == toY - fromY) {
+					int sourceTile = sourceTileY * tilesX + sourceTileX;
+					image.setSource(tile, sources == null ? null : sources[sourceTile]);
+					image.tiles[tile] = tiles[sourceTile];
+					image.colors[tile] = colors[sourceTile];
+					image.shared[tile] = tiles[sourceTile] != null;
+					if (tiles[sourceTile] != null) {
+						shared[sourceTile] = true;
+					}
+					continue;
+				}
+
+				// So is a single color, as long as everything landing on the tile has it
+				int uniformColor = covered ? colors[sourceTileY * tilesX + sourceTileX] : color;
+				if (isUniform(fromX - x, fromY - y, toX - fromX, toY - fromY, uniformColor)) {
+					image.colors[tile] = uniformColor;
+					continue;
+				}
+
+				if (buffer == null) {
+					buffer = new int[TILE_SIZE * TILE_SIZE];
+				}
+				getPixels(fromX - x, fromY - y, toX - fromX, toY - fromY, buffer, 0, toX - fromX);
+				image.setPixels(fromX, fromY, toX - fromX, toY - fromY, buffer, 0, toX - fromX);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks whether every tile under an area is stored as one and the same
+	 * color.
+	 */
+	private boolean isUniform(int x, int y, int areaW, int areaH, int color) {
+		for (int tileY = y >> TILE_SHIFT; tileY << TILE_SHIFT < y + areaH; tileY++) {
+			for (int tileX = x >> TILE_SHIFT; tileX << TILE_SHIFT < x + areaW; tileX++) {
+				int tile = tileY * tilesX + tileX;
+				if (tiles[tile] != null || colors[tile] != color || (sources != null && sources[tile] != null)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the pixels of an area of the image.
+	 *
+	 * @param x      The x-coordinate of the area.
+	 * @param y      The y-coordinate of the area.
+	 * @param areaW  The width of the area.
+	 * @param areaH  The height of the area.
+	 * @param pixels Receives the pixels of the area.
+	 * @param offset Where the first pixel goes in the array.
+	 * @param stride The distance between two rows in the array.
+	 */
+	public void getPixels(int x, int y, int areaW, int areaH, int[] pixels, int offset, int stride) {
+		checkArea(x, y, areaW, areaH);
+		for (int tileY = y >> TILE_SHIFT; tileY << TILE_SHIFT < y + areaH; tileY++) {
+			int fromY = Math.max(y, tileY << TILE_SHIFT);
+			int toY = Math.min(y + areaH, (tileY + 1) << TILE_SHIFT);
+			for (int tileX = x >> TILE_SHIFT; tileX << TILE_SHIFT < x + areaW; tileX++) {
+				int fromX = Math.max(x, tileX << TILE_SHIFT);
+				int toX = Math.min(x + areaW, (tileX + 1) << TILE_SHIFT);
+				int tile = tileY * tilesX + tileX;
+				read(tile);
+				int[] tilePixels = tiles[tile];
+				int tileWidth = getTileWidth(tileX);
+				for (int row = fromY; row < toY; row++) {
+					int to = offset + (row - y) * stride + fromX - x;
+					if (tilePixels == null) {
+						Arrays.fill(pixels, to, to + toX - fromX, colors[tile]);
+					} else {
+						System.arraycopy(tilePixels, (row - (tileY << TILE_SHIFT)) * tileWidth + fromX
+								- (tileX << TILE_SHIFT), pixels, to, toX - fromX);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the pixels of an area of the image.
+	 *
+	 * @param x      The x-coordinate of the area.
+	 * @param y      The y-coordinate of the area.
+	 * @param areaW  The width of the area.
+	 * @param areaH  The height of the area.
+	 * @param pixels The new pixels of the area.
+	 * @param offset Where the first pixel is in the array.
+	 * @param stride The distance between two rows in the array.
+	 */
+	public void setPixels(int x, int y, int areaW, int areaH, int[] pixels, int offset, int stride) {
+		checkArea(x, y, areaW, areaH);
+		for (int tileY = y >> TILE_SHIFT; tileY << TILE_SHIFT < y + areaH; tileY++) {
+			int fromY = Math.max(y, tileY << TILE_SHIFT);
+			int toY = Math.min(y + areaH, (tileY + 1) << TILE_SHIFT);
+			for (int tileX = x >> TILE_SHIFT; tileX << TILE_SHIFT < x + areaW; tileX++) {
+				int fromX = Math.max(x, tileX << TILE_SHIFT);
+				int toX = Math.min(x + areaW, (tileX + 1) << TILE_SHIFT);
+				int tile = tileY * tilesX + tileX;
+				read(tile);
+
+				// Writing a uniform tile's own color changes nothing
+				if (tiles[tile] == null && isAll(pixels, offset + (fromY - y) * stride + fromX - x, stride,
+						toX - fromX, toY - fromY, colors[tile])) {
+					continue;
+				}
+
+				int[] tilePixels = writableTile(tileX, tileY);
+				int tileWidth = getTileWidth(tileX);
+				for (int row = fromY; row < toY; row++) {
+					System.arraycopy(pixels, offset + (row - y) * stride + fromX - x, tilePixels,
+							(row - (tileY << TILE_SHIFT)) * tileWidth + fromX - (tileX << TILE_SHIFT), toX - fromX);
+				}
+				collapse(tile);
+			}
+		}
+	}
+
+	/**
+	 * Fills an area of the image with a color.
+	 *
+	 * @param x     The x-coordinate of the area.
+	 * @param y     The y-coordinate of the area.
+	 * @param areaW The width of the area.
+	 * @param areaH The height of the area.
+	 * @param color The color to fill with.
+	 */
+	public void fill(int x, int y, int areaW, int areaH, int color) {
+		checkArea(x, y, areaW, areaH);
+		for (int tileY = y >> TILE_SHIFT; tileY << TILE_SHIFT < y + areaH; tileY++) {
+			int fromY = Math.max(y, tileY << TILE_SHIFT);
+			int toY = Math.min(y + areaH, (tileY + 1) << TILE_SHIFT);
+			for (int tileX = x >> TILE_SHIFT; tileX << TILE_SHIFT < x + areaW; tileX++) {
+				int fromX = Math.max(x, tileX << TILE_SHIFT);
+				int toX = Math.min(x + areaW, (tileX + 1) << TILE_SHIFT);
+				int tile = tileY * tilesX + tileX;
+
+				if (toX - fromX == getTileWidth(tileX) && toY - fromY == getTileHeight(tileY)) {
+					setSource(tile, null);
+					tiles[tile] = null;
+					shared[tile] = false;
+					colors[tile] = color;
+					continue;
+				}
+				read(tile);
+				if (tiles[tile] == null && colors[tile] == color) {
+					continue;
+				}
+
+				int[] tilePixels = writableTile(tileX, tileY);
+				int tileWidth = getTileWidth(tileX);
+				for (int row = fromY; row < toY; row++) {
+					int from = (row - (tileY << TILE_SHIFT)) * tileWidth + fromX - (tileX << TILE_SHIFT);
+					Arrays.fill(tilePixels, from, from + toX - fromX, color);
+				}
+				collapse(tile);
+			}
+		}
+	}
+
+	/**
+	 * Returns the color of a pixel.
+	 *
+	 * @param x The x-coordinate of the pixel.
+	 * @param y The y-coordinate of the pixel.
+	 * @return The pixel as an ARGB int.
+	 */
+	public int getPixel(int x, int y) {
+		checkArea(x, y, 1, 1);
+		int tileX = x >> TILE_SHIFT;
+		int tileY = y >> TILE_SHIFT;
+		int tile = tileY * tilesX + tileX;
+		read(tile);
+		if (tiles[tile] == null) {
+			return colors[tile];
+		}
+		return tiles[tile][(y - (tileY << TILE_SHIFT)) * getTileWidth(tileX) + x - (tileX << TILE_SHIFT)];
+	}
+
+	/**
+	 * Returns whether all pixels of a tile have the same color. A tile that is
+	 * left to a TileSource and was not read yet is not stored as a color, so it is
+	 * not uniform.
+	 *
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return true if the tile is stored as a single color.
+	 */
+	public boolean isUniform(int tileX, int tileY) {
+		int tile = tileY * tilesX + tileX;
+		return tiles[tile] == null && (sources == null || sources[tile] == null);
+	}
+
+	/**
+	 * Returns the color of a tile that is stored as a single color.
+	 *
+	 * @param tileX The column of the tile.
+	 * @param tileY The row of the tile.
+	 * @return The color of the tile, meaningless if it is not uniform.
+	 */
+	public int getUniformColor(int tileX, int tileY) {
+		return colors[tileY * tilesX + tileX];
+	}
+
+	/**
+	 * Leaves a tile to a source, which is asked for its pixels the first time the
+	 * tile is used. Until then the tile takes no memory.
+	 *
+	 * @param tileX  The column of the tile.
+	 * @param tileY  The row of the tile.
+	 * @param source Where the pixels of the tile come from.
+	 */
+	public void setSource(int tileX, int tileY, TileSource source) {
+		int tile = tileY * tilesX + tileX;
+		setSource(tile, source);
+		tiles[tile] = null;
+		shared[tile] = false;
+	}
+
+	/**
+	 * Returns whether any tile is still left to a source and was not read yet.
+	 *
+	 * @return true if some tiles were not read yet.
+	 */
+	public boolean hasUnreadTiles() {
+		return sources != null;
+	}
+
+	/**
+	 * Returns the width of the image.
+	 *
+	 * @return The width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image.
+	 *
+	 * @return The height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of columns of tiles.
+	 *
+	 * @return The number of tiles across.
+	 */
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	/**
+	 * Returns the number of rows of tiles.
+	 *
+	 * @return The number of tiles down.
+	 */
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	/**
+	 * Returns the width of the tiles in a column, which is smaller than TILE_SIZE
+	 * for the last column if the width is not a multiple of it.
+	 *
+	 * @param tileX The column of tiles.
+	 * @return The width of its tiles.
+	 */
+	public int getTileWidth(int tileX) {
+		return Math.min(TILE_SIZE, width - (tileX << TILE_SHIFT));
+	}
+
+	/**
+	 * Returns the height of the tiles in a row, which is smaller than TILE_SIZE
+	 * for the last row if the height is not a multiple of it.
+	 *
+	 * @param tileY The row of tiles.
+	 * @return The height of its tiles.
+	 */
+	public int getTileHeight(int tileY) {
+		return Math.min(TILE_SIZE, height - (tileY << TILE_SHIFT));
+	}
+
+	/**
+	 * Returns the number of bytes the pixels of the tiles use, counting shared
+	 * tiles too.
+	 *
+	 * @return The size of the tile arrays in bytes.
+	 */
+	public long getAllocatedBytes() {
+		long bytes = 0;
+		for (int[] tile : tiles) {
+			if (tile != null) {
+				bytes += 4L * tile.length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the pixels of a tile for writing, giving it its own array first if
+	 * it has none or shares it with a copy.
+	 */
+	private int[] writableTile(int tileX, int tileY) {
+		int tile = tileY * tilesX + tileX;
+		read(tile);
+		if (tiles[tile] == null) {
+			tiles[tile] = new int[getTileWidth(tileX) * getTileHeight(tileY)];
+			Arrays.fill(tiles[tile], colors[tile]);
+		} else if (shared[tile]) {
+			tiles[tile] = tiles[tile].clone();
+		}
+		shared[tile] = false;
+		return tiles[tile];
+	}
+
+	/**
+	 * Reads a tile from its source if it was not read yet. The tile stays with the
+	 * source if it cannot be read.
+	 *
+	 * @throws UncheckedIOException If the source cannot read the tile.
+	 */
+	private void read(int tile) {
+		if (sources == null || sources[tile] == null) {
+			return;
+		}
+		int tileX = tile % tilesX;
+		int tileY = tile / tilesX;
+		int[] tilePixels = new int[getTileWidth(tileX) * getTileHeight(tileY)];
+		try {
+			sources[tile].readTile(tileX, tileY, tilePixels);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		setSource(tile, null);
+		tiles[tile] = tilePixels;
+		shared[tile] = false;
+		collapse(tile);
+	}
+
+	/**
+	 * Sets or clears the source of a tile, dropping the sources once no tile is
+	 * left to one.
+	 */
+	private void setSource(int tile, TileSource source) {
+		if (source != null) {
+			if (sources == null) {
+				sources = new TileSource[tiles.length];
+			}
+			if (sources[tile] == null) {
+				unread++;
+			}
+			sources[tile] = source;
+		} else if (sources != null && sources[tile] != null) {
+			sources[tile] = null;
+			if (--unread == 0) {
+				sources = null;
+			}
+		}
+	}
+
+	/**
+	 * Turns a tile whose pixels are all the same color back into a color. Stops at
+	 * the first pixel that differs, which for a drawn-on tile is usually early.
+	 */
+	private void collapse(int tile) {
+		int[] tilePixels = tiles[tile];
+		int color = tilePixels[0];
+		for (int i = 1; i < tilePixels.length; i++) {
+			if (tilePixels[i] != color) {
+				return;
+			}
+		}
+		tiles[tile] = null;
+		shared[tile] = false;
+		colors[tile] = color;
+	}
+
+	/**
+	 * Checks whether every pixel of an area of an array is the same color.
+	 */
+	private static boolean isAll(int[] pixels, int offset, int stride, int areaW, int areaH, int color) {
+		for (int row = 0; row < areaH; row++) {
+			for (int i = offset + row * stride, end = i + areaW; i < end; i++) {
+				if (pixels[i] != color) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Throws if an area is not within the image.
+	 */
+	private void checkArea(int x, int y, int areaW, int areaH) {
+		if (x < 0 || y < 0 || areaW < 0 || areaH < 0 || x + areaW > width || y + areaH > height) {
+			throw new IndexOutOfBoundsException(
+					"Area " + x + "," + y + " " + areaW + "x" + areaH + " is outside " + width + "x" + height);
+		}
+	}
+}
@@ -58,6 +58,9 @@ public class Triangle extends DrawingTool {
 		gc.strokeLine(x1, y1, x2, y2);
 		gc.strokeLine(x2, y2, x3, y3);
 		gc.strokeLine(x3, y3, x1, y1);
+		markStroked(gc, x1, y1);
+		markStroked(gc, x2, y2);
+		markStroked(gc, x3, y3);
 	}
 
 	@Override
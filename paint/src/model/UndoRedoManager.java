@@ -1,7 +1,30 @@
 package model;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 
 /**
@@ -12,6 +35,24 @@ import javafx.scene.image.WritableImage;
  * for redoing actions. Users can undo the most recent action and redo
  * previously undone actions.
  *
+ * Instead of keeping a full copy of the canvas for every action, the manager
+ * keeps a single baseline copy of the last known canvas state. Every time a
+ * new state is handed in, it is compared against the baseline in square tiles
+ * of TILE_SIZE pixels and only the tiles that changed are stored in the
+ * action. Undoing or redoing an action swaps those tiles back into the
+ * baseline.
+ *
+ * The heap used by the history is kept within a memory budget. When the
+ * actions held in memory grow past the budget, the oldest ones are compressed,
+ * and when the compressed actions grow past a second threshold, the oldest of
+ * those are moved to a memory-mapped temporary file. An action is brought back
+ * into memory when it is undone, so the most recent actions are always ready.
+ *
+ * Capturing an image only copies its pixels on the calling thread. Comparing,
+ * compressing and pushing the action happen on a single background thread, in
+ * the order the images were captured. Undo and redo wait for the captures that
+ * are still pending before they touch the history.
+ *
  * @author Doom Al Rajhi and Tanay Desai
  * @file: UndoRedoManager.java
  * @assignment: Paint Application Final Project
@@ -20,15 +61,79 @@ import javafx.scene.image.WritableImage;
  * @version 1.6
  */
 public class UndoRedoManager {
+	/**
+	 * The width and height, in pixels, of the tiles the canvas is compared in.
+	 */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * The default number of bytes the uncompressed actions may use.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * The default number of bytes the compressed actions may use before they are
+	 * moved to the temporary file.
+	 */
+	public static final long DEFAULT_COMPRESSED_BUDGET = 32L * 1024 * 1024;
+
+	/**
+	 * The number of capture buffers kept around for reuse.
+	 */
+	private static final int POOLED_BUFFERS = 2;
+
 	private Stack<Action> undoStack; // Stack for storing actions to undo.
 	private Stack<Action> redoStack; // Stack for storing actions to redo.
 
+	private TiledImage baseline; // The last known state of the canvas.
+	private int[] scratch; // Reused buffer for reading images into.
+	private int[] tileBuffer = new int[TILE_SIZE * TILE_SIZE]; // The baseline tile being compared.
+	private Rectangle2D lastChange; // The area the last undo or redo changed.
+
+	private long memoryBudget; // Bytes the uncompressed actions may use.
+	private long compressedBudget; // Bytes the compressed actions may use.
+	private Deflater deflater; // Compresses the older actions.
+	private Inflater inflater; // Decompresses actions when they are needed again.
+	private SpillFile spillFile; // Holds the oldest actions, created on first use.
+	private long liveTotal; // Bytes the uncompressed actions on both stacks use.
+	private long compressedTotal; // Bytes the compressed actions in memory use.
+	private int compressedBelow; // The actions below this index on the undo stack are compressed.
+	private int spilledBelow; // The actions below this index on the undo stack are in the file.
+
+	private ExecutorService captureExecutor; // Runs the captures in order.
+	private Future<?> pendingCapture; // The most recently submitted capture.
+	private ConcurrentLinkedQueue<int[]> buffers; // Capture buffers for reuse.
+
 	/**
 	 * Constructor for the UndoRedoManager class.
 	 */
 	public UndoRedoManager() {
+		this(DEFAULT_MEMORY_BUDGET, DEFAULT_COMPRESSED_BUDGET);
+	}
+
+	/**
+	 * Constructor for the UndoRedoManager class with a custom memory budget. The
+	 * baseline copy of the canvas is not counted towards the budgets.
+	 *
+	 * @param memoryBudget     The number of bytes the uncompressed actions may
+	 *                         use before the oldest ones are compressed.
+	 * @param compressedBudget The number of bytes the compressed actions may use
+	 *                         before the oldest ones are moved to a temporary
+	 *                         file.
+	 */
+	public UndoRedoManager(long memoryBudget, long compressedBudget) {
 		undoStack = new Stack<>();
 		redoStack = new Stack<>();
+		this.memoryBudget = memoryBudget;
+		this.compressedBudget = compressedBudget;
+		deflater = new Deflater(Deflater.BEST_SPEED);
+		inflater = new Inflater();
+		buffers = new ConcurrentLinkedQueue<>();
+		captureExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "undo-capture");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	/**
@@ -39,12 +144,11 @@ public class UndoRedoManager {
 	 *         Returns null if there's nothing to undo.
 	 */
 	public WritableImage undo(WritableImage image) {
-		if (canUndo()) {
-			Action action = undoStack.pop();
-			redoStack.push(new Action(image));
-			return action.getWritableImage();
+		int[] pixels = readPixels(image);
+		if (undo(pixels, (int) image.getWidth(), (int) image.getHeight()) == null) {
+			return null;
 		}
-		return null;
+		return toImage();
 	}
 
 	/**
@@ -55,12 +159,120 @@ public class UndoRedoManager {
 	 *         Returns null if there's nothing to redo.
 	 */
 	public WritableImage redo(WritableImage image) {
-		if (canRedo()) {
+		int[] pixels = readPixels(image);
+		if (redo(pixels, (int) image.getWidth(), (int) image.getHeight()) == null) {
+			return null;
+		}
+		return toImage();
+	}
+
+	/**
+	 * Undo the most recent action.
+	 *
+	 * @param pixels The current state of the canvas as ARGB pixels.
+	 * @param width  The width of the canvas.
+	 * @param height The height of the canvas.
+	 * @return The ARGB pixels of the canvas before the undo operation, or null if
+	 *         there's nothing to undo.
+	 */
+	public int[] undo(int[] pixels, int width, int height) {
+		awaitCaptures();
+		synchronized (this) {
+			commit(pixels, width, height);
+			if (canUndo()) {
+				Action action = popUndo();
+				action.swap();
+				lastChange = action.bounds();
+				redoStack.push(action);
+				enforceBudget();
+				return baselinePixels();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Redo the previously undone action.
+	 *
+	 * @param pixels The current state of the canvas as ARGB pixels.
+	 * @param width  The width of the canvas.
+	 * @param height The height of the canvas.
+	 * @return The ARGB pixels of the canvas after the redo operation, or null if
+	 *         there's nothing to redo.
+	 */
+	public int[] redo(int[] pixels, int width, int height) {
+		awaitCaptures();
+		synchronized (this) {
+			commit(pixels, width, height);
+			if (canRedo()) {
+				Action action = redoStack.pop();
+				action.swap();
+				lastChange = action.bounds();
+				undoStack.push(action);
+				enforceBudget();
+				return baselinePixels();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Undo the most recent action on an image that holds the last known state of
+	 * the canvas, such as the document of a DrawingCanvas whose every change was
+	 * handed to the manager. Only the tiles of the action are written to the
+	 * image; getLastChange tells which area that was.
+	 *
+	 * @param image The image to undo the action on.
+	 * @return true if an action was undone, false if there's nothing to undo.
+	 */
+	public boolean undo(TiledImage image) {
+		awaitCaptures();
+		synchronized (this) {
+			if (!canUndo()) {
+				return false;
+			}
+			Action action = popUndo();
+			action.swap();
+			lastChange = action.bounds();
+			action.copyTo(image);
+			redoStack.push(action);
+			enforceBudget();
+			return true;
+		}
+	}
+
+	/**
+	 * Redo the previously undone action on an image that holds the last known
+	 * state of the canvas. Only the tiles of the action are written to the image;
+	 * getLastChange tells which area that was.
+	 *
+	 * @param image The image to redo the action on.
+	 * @return true if an action was redone, false if there's nothing to redo.
+	 */
+	public boolean redo(TiledImage image) {
+		awaitCaptures();
+		synchronized (this) {
+			if (!canRedo()) {
+				return false;
+			}
 			Action action = redoStack.pop();
-			undoStack.push(new Action(image));
-			return action.getWritableImage();
+			action.swap();
+			lastChange = action.bounds();
+			action.copyTo(image);
+			undoStack.push(action);
+			enforceBudget();
+			return true;
 		}
-		return null;
+	}
+
+	/**
+	 * Returns the area of the canvas that the last undo or redo changed.
+	 *
+	 * @return The bounds of the changed tiles, or the whole canvas if its size
+	 *         changed, or null if nothing was undone or redone yet.
+	 */
+	public synchronized Rectangle2D getLastChange() {
+		return lastChange;
 	}
 
 	/**
@@ -68,7 +280,7 @@ public class UndoRedoManager {
 	 *
 	 * @return true if there are actions that can be undone, false otherwise.
 	 */
-	public boolean canUndo() {
+	public synchronized boolean canUndo() {
 		return !undoStack.isEmpty();
 	}
 
@@ -77,44 +289,863 @@ public class UndoRedoManager {
 	 *
 	 * @return true if there are actions that can be redone, false otherwise.
 	 */
-	public boolean canRedo() {
+	public synchronized boolean canRedo() {
 		return !redoStack.isEmpty();
 	}
 
 	/**
-	 * Add a new action to the undo stack.
+	 * Add a new action to the undo stack. The pixels of the image are copied
+	 * right away and the action is built on the background thread, so the image
+	 * can be reused as soon as this method returns.
 	 *
 	 * @param image The current state of the image.
+	 * @return Tells, once the action is built, whether one was added: nothing is
+	 *         added when no pixel changed or the image is the first state.
+	 */
+	public Future<Boolean> addNewAction(WritableImage image) {
+		int imageWidth = (int) image.getWidth();
+		int imageHeight = (int) image.getHeight();
+		int[] pixels = takeBuffer(imageWidth * imageHeight);
+		image.getPixelReader().getPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbInstance(), pixels,
+				0, imageWidth);
+
+		Future<Boolean> capture = captureExecutor.submit(() -> {
+			try {
+				return commit(pixels, imageWidth, imageHeight);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				return false;
+			} finally {
+				if (buffers.size() < POOLED_BUFFERS) {
+					buffers.offer(pixels);
+				}
+			}
+		});
+		pendingCapture = capture;
+		return capture;
+	}
+
+	/**
+	 * Add a new action for a part of the canvas. The image holds the new contents
+	 * of the changed area, which is compared against the last known state of the
+	 * canvas, so only the tiles it overlaps are examined. The last known state must
+	 * have been set with a whole-canvas image first; until then the change is
+	 * ignored. Like the whole-canvas version, the action is built on the
+	 * background thread.
+	 *
+	 * @param image The new contents of the changed area.
+	 * @param x     The x-coordinate of the area on the canvas.
+	 * @param y     The y-coordinate of the area on the canvas.
+	 * @return Tells, once the action is built, whether one was added: nothing is
+	 *         added when no pixel in the area changed.
+	 */
+	public Future<Boolean> addNewAction(WritableImage image, int x, int y) {
+		int regionWidth = (int) image.getWidth();
+		int regionHeight = (int) image.getHeight();
+		int[] pixels = takeBuffer(regionWidth * regionHeight);
+		image.getPixelReader().getPixels(0, 0, regionWidth, regionHeight, PixelFormat.getIntArgbInstance(), pixels,
+				0, regionWidth);
+
+		Future<Boolean> capture = captureExecutor.submit(() -> {
+			try {
+				return commitRegion(pixels, x, y, regionWidth, regionHeight);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				return false;
+			} finally {
+				if (buffers.size() < POOLED_BUFFERS) {
+					buffers.offer(pixels);
+				}
+			}
+		});
+		pendingCapture = capture;
+		return capture;
+	}
+
+	/**
+	 * Add a new action to the undo stack. Only the tiles that differ from the
+	 * last known state are kept, and nothing is added if no pixel changed. Unlike
+	 * the WritableImage version, the action is built on the calling thread.
+	 *
+	 * @param pixels The current state of the canvas as ARGB pixels.
+	 * @param width  The width of the canvas.
+	 * @param height The height of the canvas.
+	 * @return true if an action was added.
+	 */
+	public boolean addNewAction(int[] pixels, int width, int height) {
+		awaitCaptures();
+		return commit(pixels, width, height);
+	}
+
+	/**
+	 * Add a new action for the current state of an image. Tiles of a single color
+	 * that match the last known state are skipped without reading them, so this
+	 * is cheap for a large image that is mostly blank. Like the int[] version,
+	 * the action is built on the calling thread.
+	 *
+	 * @param image The current state of the canvas. It is copied, so it may be
+	 *              changed afterwards.
+	 * @return true if an action was added.
+	 */
+	public boolean addNewAction(TiledImage image) {
+		awaitCaptures();
+		return commit(image);
+	}
+
+	/**
+	 * Add a new action for an area of an image that changed, such as pixels a
+	 * tool wrote into the drawing directly. The rest of the image must match the
+	 * last known state. The action is built on the calling thread.
+	 *
+	 * @param image  The current state of the canvas.
+	 * @param x      The x-coordinate of the changed area.
+	 * @param y      The y-coordinate of the changed area.
+	 * @param width  The width of the changed area.
+	 * @param height The height of the changed area.
+	 * @return true if an action was added.
+	 */
+	public boolean addNewAction(TiledImage image, int x, int y, int width, int height) {
+		awaitCaptures();
+		synchronized (this) {
+			if (baseline == null || image.getWidth() != baseline.getWidth()
+					|| image.getHeight() != baseline.getHeight()) {
+				return commit(image);
+			}
+			int[] region = new int[width * height];
+			image.getPixels(x, y, width, height, region, 0, width);
+			return push(diff(region, x, y, width, height));
+		}
+	}
+
+	/**
+	 * Drops the whole history and deletes the temporary file, for a manager that
+	 * is no longer needed, such as the history of a removed layer. Waits for the
+	 * pending captures first. The manager must not be used afterwards.
+	 */
+	public void dispose() {
+		awaitCaptures();
+		captureExecutor.shutdown();
+		synchronized (this) {
+			for (Action action : undoStack) {
+				action.discard();
+			}
+			for (Action action : redoStack) {
+				action.discard();
+			}
+			undoStack.clear();
+			redoStack.clear();
+			baseline = null;
+			if (spillFile != null) {
+				spillFile.close();
+				spillFile = null;
+			}
+			deflater.end();
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Waits until every capture submitted so far has been added to the history.
+	 * Since the captures run one after another, waiting for the last one is
+	 * enough.
+	 */
+	private void awaitCaptures() {
+		Future<?> capture = pendingCapture;
+		if (capture == null) {
+			return;
+		}
+		try {
+			capture.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns a buffer for capturing pixels into, reusing a pooled one when one of
+	 * the right size is available.
+	 *
+	 * @param length The number of pixels needed.
+	 * @return A buffer of exactly the given length.
 	 */
-	public void addNewAction(WritableImage image) {
-		undoStack.push(new Action(image));
+	private int[] takeBuffer(int length) {
+		int[] buffer;
+		while ((buffer = buffers.poll()) != null) {
+			if (buffer.length == length) {
+				return buffer;
+			}
+		}
+		return new int[length];
+	}
+
+	/**
+	 * Compares the given state against the baseline and pushes the changed tiles
+	 * as a new action. The baseline is updated to the given state afterwards.
+	 *
+	 * @param pixels The current state of the canvas as ARGB pixels.
+	 * @param width  The width of the canvas.
+	 * @param height The height of the canvas.
+	 * @return true if an action was pushed.
+	 */
+	private synchronized boolean commit(int[] pixels, int width, int height) {
+		if (baseline != null && width == baseline.getWidth() && height == baseline.getHeight()) {
+			return push(diff(pixels, 0, 0, width, height));
+		}
+
+		TiledImage previous = baseline;
+		baseline = new TiledImage(width, height, 0);
+		baseline.setPixels(0, 0, width, height, pixels, 0, width);
+		return previous != null && push(new Action(previous));
+	}
+
+	/**
+	 * Compares an image against the baseline tile by tile and pushes the changed
+	 * tiles as a new action. The baseline is updated to the image afterwards.
+	 *
+	 * @param image The current state of the canvas.
+	 * @return true if an action was pushed.
+	 */
+	private synchronized boolean commit(TiledImage image) {
+		// An image with tiles not read yet, such as an opened project, is kept
+		// whole like a resize, so comparing it does not read all of its tiles
+		if (baseline == null || image.getWidth() != baseline.getWidth()
+				|| image.getHeight() != baseline.getHeight() || image.hasUnreadTiles()) {
+			TiledImage previous = baseline;
+			baseline = image.copy();
+			return previous != null && push(new Action(previous));
+		}
+
+		List<Tile> tiles = new ArrayList<>();
+		int[] region = new int[TiledImage.TILE_SIZE * TiledImage.TILE_SIZE];
+		for (int tileY = 0; tileY < image.getTilesY(); tileY++) {
+			for (int tileX = 0; tileX < image.getTilesX(); tileX++) {
+				if (image.isUniform(tileX, tileY) && baseline.isUniform(tileX, tileY)
+						&& image.getUniformColor(tileX, tileY) == baseline.getUniformColor(tileX, tileY)) {
+					continue;
+				}
+				int x = tileX * TiledImage.TILE_SIZE;
+				int y = tileY * TiledImage.TILE_SIZE;
+				int regionWidth = image.getTileWidth(tileX);
+				int regionHeight = image.getTileHeight(tileY);
+				image.getPixels(x, y, regionWidth, regionHeight, region, 0, regionWidth);
+				diff(region, x, y, regionWidth, regionHeight, tiles);
+			}
+		}
+		return push(tiles.isEmpty() ? null : new Action(tiles));
+	}
+
+	/**
+	 * Compares part of the canvas against the baseline and pushes the changed
+	 * tiles as a new action. The area is clipped to the baseline.
+	 *
+	 * @param pixels       The new contents of the area as ARGB pixels.
+	 * @param regionX      The x-coordinate of the area on the canvas.
+	 * @param regionY      The y-coordinate of the area on the canvas.
+	 * @param regionWidth  The width of the area.
+	 * @param regionHeight The height of the area.
+	 * @return true if an action was pushed.
+	 */
+	private synchronized boolean commitRegion(int[] pixels, int regionX, int regionY, int regionWidth,
+			int regionHeight) {
+		if (baseline == null) {
+			return false;
+		}
+		return push(diff(pixels, regionX, regionY, regionWidth, regionHeight));
+	}
+
+	/**
+	 * Pushes a new action onto the undo stack, dropping the actions that can no
+	 * longer be redone.
+	 *
+	 * @param action The action to push, or null if nothing changed.
+	 * @return true if an action was pushed.
+	 */
+	private boolean push(Action action) {
+		if (action == null) {
+			return false;
+		}
+		action.count(1);
+		undoStack.push(action);
+		for (Action undone : redoStack) {
+			undone.discard();
+		}
 		redoStack.clear();
+		enforceBudget();
+		return true;
+	}
+
+	/**
+	 * Takes the most recent action off the undo stack. The actions left below it
+	 * keep their state, so only the positions up to which the stack is known to
+	 * be compressed or spilled have to be pulled down to the new top.
+	 */
+	private Action popUndo() {
+		Action action = undoStack.pop();
+		compressedBelow = Math.min(compressedBelow, undoStack.size());
+		spilledBelow = Math.min(spilledBelow, undoStack.size());
+		return action;
+	}
+
+	/**
+	 * Compresses the oldest actions until the uncompressed ones fit in the memory
+	 * budget, then moves the oldest compressed ones to the temporary file until
+	 * the rest fit in the compressed budget. The most recent action on each stack
+	 * is always left as it is.
+	 *
+	 * The totals are kept up to date as actions change, and the undo stack is
+	 * compressed and spilled from the bottom up, so each call only looks at the
+	 * actions it changes.
+	 */
+	private void enforceBudget() {
+		for (; compressedBelow < undoStack.size() - 1 && liveTotal > memoryBudget; compressedBelow++) {
+			undoStack.get(compressedBelow).compress();
+		}
+
+		for (; spilledBelow < compressedBelow && compressedTotal > compressedBudget; spilledBelow++) {
+			undoStack.get(spilledBelow).spill();
+		}
+	}
+
+	/**
+	 * Collects the tiles where an area of the canvas differs from the baseline,
+	 * copying the area into the baseline as it goes.
+	 *
+	 * @param pixels       The new contents of the area as ARGB pixels.
+	 * @param regionX      The x-coordinate of the area on the canvas.
+	 * @param regionY      The y-coordinate of the area on the canvas.
+	 * @param regionWidth  The width of the area, which is also the row stride of
+	 *                     the pixels.
+	 * @param regionHeight The height of the area.
+	 * @return An action holding the previous contents of the changed tiles, or
+	 *         null if nothing changed.
+	 */
+	private Action diff(int[] pixels, int regionX, int regionY, int regionWidth, int regionHeight) {
+		List<Tile> tiles = new ArrayList<>();
+		diff(pixels, regionX, regionY, regionWidth, regionHeight, tiles);
+		return tiles.isEmpty() ? null : new Action(tiles);
+	}
+
+	/**
+	 * Adds the tiles where an area of the canvas differs from the baseline to a
+	 * list, copying the area into the baseline as it goes. The stored tiles are
+	 * always whole tiles of the baseline grid, even where the area only covers
+	 * part of them.
+	 */
+	private void diff(int[] pixels, int regionX, int regionY, int regionWidth, int regionHeight, List<Tile> tiles) {
+		int width = baseline.getWidth();
+		int height = baseline.getHeight();
+		int left = Math.max(0, regionX);
+		int top = Math.max(0, regionY);
+		int right = Math.min(width, regionX + regionWidth);
+		int bottom = Math.min(height, regionY + regionHeight);
+
+		for (int tileY = top / TILE_SIZE * TILE_SIZE; tileY < bottom; tileY += TILE_SIZE) {
+			int tileHeight = Math.min(TILE_SIZE, height - tileY);
+			int fromY = Math.max(top, tileY);
+			int toY = Math.min(bottom, tileY + tileHeight);
+			for (int tileX = left / TILE_SIZE * TILE_SIZE; tileX < right; tileX += TILE_SIZE) {
+				int tileWidth = Math.min(TILE_SIZE, width - tileX);
+				int fromX = Math.max(left, tileX);
+				int toX = Math.min(right, tileX + tileWidth);
+
+				baseline.getPixels(tileX, tileY, tileWidth, tileHeight, tileBuffer, 0, tileWidth);
+				if (!areaEquals(pixels, regionX, regionY, regionWidth, tileX, tileY, tileWidth, fromX, fromY, toX,
+						toY)) {
+					Tile tile = new Tile(tileX, tileY, tileWidth, tileHeight);
+					System.arraycopy(tileBuffer, 0, tile.pixels, 0, tileWidth * tileHeight);
+					baseline.setPixels(fromX, fromY, toX - fromX, toY - fromY, pixels,
+							(fromY - regionY) * regionWidth + fromX - regionX, regionWidth);
+					tiles.add(tile);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether part of an area of the canvas matches the baseline tile in
+	 * the tile buffer.
+	 */
+	private boolean areaEquals(int[] pixels, int regionX, int regionY, int regionWidth, int tileX, int tileY,
+			int tileWidth, int fromX, int fromY, int toX, int toY) {
+		for (int row = fromY; row < toY; row++) {
+			int from = (row - regionY) * regionWidth + fromX - regionX;
+			int tileFrom = (row - tileY) * tileWidth + fromX - tileX;
+			if (!Arrays.equals(pixels, from, from + toX - fromX, tileBuffer, tileFrom, tileFrom + toX - fromX)) {
+				return false;
+			}
+		}
+		return true;
+	}
 
+	/**
+	 * Reads the pixels of an image into the reused scratch buffer.
+	 *
+	 * @param image The image to read.
+	 * @return The scratch buffer holding the image as ARGB pixels.
+	 */
+	private int[] readPixels(WritableImage image) {
+		int imageWidth = (int) image.getWidth();
+		int imageHeight = (int) image.getHeight();
+		if (scratch == null || scratch.length != imageWidth * imageHeight) {
+			scratch = new int[imageWidth * imageHeight];
+		}
+		image.getPixelReader().getPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbInstance(), scratch,
+				0, imageWidth);
+		return scratch;
 	}
 
 	/**
-	 * class to represent user actions for undo and redo.
+	 * Creates an image from the baseline.
+	 *
+	 * @return The baseline as a WritableImage.
+	 */
+	private WritableImage toImage() {
+		int width = baseline.getWidth();
+		int height = baseline.getHeight();
+		WritableImage image = new WritableImage(width, height);
+		image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), baselinePixels(), 0,
+				width);
+		return image;
+	}
+
+	/**
+	 * Copies the baseline into a new array.
+	 *
+	 * @return The baseline as ARGB pixels.
+	 */
+	private int[] baselinePixels() {
+		int width = baseline.getWidth();
+		int[] pixels = new int[width * baseline.getHeight()];
+		baseline.getPixels(0, 0, width, baseline.getHeight(), pixels, 0, width);
+		return pixels;
+	}
+
+	/**
+	 * class to represent user actions for undo and redo. An action holds the
+	 * contents of the changed tiles from the other side of the action: before it
+	 * has been undone they hold the previous state, afterwards the undone state.
+	 * The contents are either in memory, compressed in memory, or compressed in
+	 * the temporary file.
 	 */
 	private class Action {
-		private WritableImage writableImage;
+		private List<Tile> tiles;
+		private TiledImage canvas; // The whole other state when the canvas size changed.
+		private boolean resize;
+
+		private int pixelCount; // The number of pixels stored in the tiles.
+		private byte[] compressed; // The compressed contents, when not in memory.
+		private long spillOffset = -1; // Where the compressed contents are in the file.
+		private int spillLength;
+
+		/**
+		 * Constructor for an action that changed some tiles of the canvas.
+		 *
+		 * @param tiles The changed tiles.
+		 */
+		public Action(List<Tile> tiles) {
+			this.tiles = tiles;
+			for (Tile tile : tiles) {
+				pixelCount += tile.tileWidth * tile.tileHeight;
+			}
+		}
+
+		/**
+		 * Constructor for an action that changed the size of the canvas.
+		 *
+		 * @param canvas The whole canvas before the change.
+		 */
+		public Action(TiledImage canvas) {
+			this.canvas = canvas;
+			this.resize = true;
+		}
+
+		/**
+		 * Exchanges the stored state with the baseline, so that the same action can
+		 * be moved between the undo and redo stacks.
+		 */
+		public void swap() {
+			load();
+			if (resize) {
+				TiledImage otherCanvas = baseline;
+				baseline = canvas;
+				canvas = otherCanvas;
+			} else {
+				for (Tile tile : tiles) {
+					tile.swap(baseline);
+				}
+			}
+		}
+
+		/**
+		 * Copies the area of the baseline the action covers into an image.
+		 *
+		 * @param image The image to copy into.
+		 */
+		public void copyTo(TiledImage image) {
+			if (resize) {
+				image.copyFrom(baseline);
+			} else {
+				for (Tile tile : tiles) {
+					image.copyFrom(baseline, tile.x, tile.y, tile.tileWidth, tile.tileHeight);
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of bytes the uncompressed contents use.
+		 *
+		 * @return The size of the contents, or 0 if they are compressed.
+		 */
+		public long liveBytes() {
+			// The other state of a resize is kept as a sparse image and, like the
+			// baseline, not counted
+			if (resize || compressed != null || spillOffset >= 0) {
+				return 0;
+			}
+			return 4L * pixelCount;
+		}
+
+		/**
+		 * Returns the number of bytes the compressed contents use in memory.
+		 *
+		 * @return The size of the compressed contents, or 0 if they are not
+		 *         compressed or are in the temporary file.
+		 */
+		public long compressedBytes() {
+			return compressed == null ? 0 : compressed.length;
+		}
+
+		/**
+		 * Compresses the contents and drops the uncompressed pixels.
+		 */
+		public void compress() {
+			if (resize || compressed != null || spillOffset >= 0) {
+				return;
+			}
+			count(-1);
+			byte[] raw = new byte[4 * pixelCount];
+			IntBuffer ints = ByteBuffer.wrap(raw).asIntBuffer();
+			for (Tile tile : tiles) {
+				ints.put(tile.pixels);
+				tile.pixels = null;
+			}
+
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 8);
+			byte[] chunk = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(chunk, 0, deflater.deflate(chunk));
+			}
+			compressed = out.toByteArray();
+			count(1);
+		}
 
 		/**
-		 * Constructor for the Action class.
+		 * Moves the compressed contents to the temporary file.
 		 *
-		 * @param writableImage The image state associated with the action.
+		 * @return true if the contents were moved, false if the file could not be
+		 *         written and they stay in memory.
 		 */
-		public Action(WritableImage writableImage) {
+		public boolean spill() {
+			if (compressed == null) {
+				return false;
+			}
+			try {
+				if (spillFile == null) {
+					spillFile = new SpillFile();
+				}
+				spillOffset = spillFile.write(compressed);
+				spillLength = compressed.length;
+				count(-1);
+				compressed = null;
+				count(1);
+				return true;
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+
+		/**
+		 * Brings the contents back into memory, reading them from the temporary file
+		 * and decompressing them as needed.
+		 */
+		public void load() {
+			if (compressed == null && spillOffset < 0) {
+				return;
+			}
+			count(-1);
+			if (spillOffset >= 0) {
+				compressed = spillFile.read(spillOffset, spillLength);
+				spillFile.release(spillOffset, spillLength);
+				spillOffset = -1;
+			}
+
+			byte[] raw = new byte[4 * pixelCount];
+			inflater.reset();
+			inflater.setInput(compressed);
+			try {
+				int read = 0;
+				while (read < raw.length && !inflater.finished()) {
+					read += inflater.inflate(raw, read, raw.length - read);
+				}
+			} catch (DataFormatException e) {
+				e.printStackTrace();
+			}
+			compressed = null;
 
-			this.writableImage = writableImage;
+			IntBuffer ints = ByteBuffer.wrap(raw).asIntBuffer();
+			for (Tile tile : tiles) {
+				tile.pixels = new int[tile.tileWidth * tile.tileHeight];
+				ints.get(tile.pixels);
+			}
+			count(1);
+		}
+
+		/**
+		 * Frees the space used in the temporary file when the action is dropped.
+		 */
+		public void discard() {
+			count(-1);
+			if (spillOffset >= 0) {
+				spillFile.release(spillOffset, spillLength);
+				spillOffset = -1;
+			}
+		}
+
+		/**
+		 * Adds the bytes the action uses to the totals of the manager, or takes
+		 * them away with a sign of -1 before its state changes.
+		 */
+		private void count(int sign) {
+			liveTotal += sign * liveBytes();
+			compressedTotal += sign * compressedBytes();
+		}
+
+		/**
+		 * Returns the area of the canvas the action covers.
+		 */
+		public Rectangle2D bounds() {
+			if (resize || tiles.isEmpty()) {
+				return new Rectangle2D(0, 0, baseline.getWidth(), baseline.getHeight());
+			}
+			int left = Integer.MAX_VALUE;
+			int top = Integer.MAX_VALUE;
+			int right = 0;
+			int bottom = 0;
+			for (Tile tile : tiles) {
+				left = Math.min(left, tile.x);
+				top = Math.min(top, tile.y);
+				right = Math.max(right, tile.x + tile.tileWidth);
+				bottom = Math.max(bottom, tile.y + tile.tileHeight);
+			}
+			return new Rectangle2D(left, top, right - left, bottom - top);
 		}
+	}
+
+	/**
+	 * A rectangular block of pixels stored for an action.
+	 */
+	private static class Tile {
+		private final int x;
+		private final int y;
+		private final int tileWidth;
+		private final int tileHeight;
+		private int[] pixels; // null while the action is compressed.
 
 		/**
-		 * Get the image state associated with the action.
+		 * Constructor for the Tile class.
 		 *
-		 * @return The image state.
+		 * @param x          The x-coordinate of the tile on the canvas.
+		 * @param y          The y-coordinate of the tile on the canvas.
+		 * @param tileWidth  The width of the tile.
+		 * @param tileHeight The height of the tile.
+		 */
+		public Tile(int x, int y, int tileWidth, int tileHeight) {
+			this.x = x;
+			this.y = y;
+			this.tileWidth = tileWidth;
+			this.tileHeight = tileHeight;
+			this.pixels = new int[tileWidth * tileHeight];
+		}
+
+		/**
+		 * Exchanges the contents of the tile with the tile area of a canvas.
+		 */
+		public void swap(TiledImage canvas) {
+			int[] other = new int[tileWidth * tileHeight];
+			canvas.getPixels(x, y, tileWidth, tileHeight, other, 0, tileWidth);
+			canvas.setPixels(x, y, tileWidth, tileHeight, pixels, 0, tileWidth);
+			pixels = other;
+		}
+	}
+
+	/**
+	 * A temporary file the oldest compressed actions are moved to. The file is
+	 * mapped into memory in fixed-size segments. The ranges of actions that were
+	 * read back or dropped are reused for later ones, and the file is truncated
+	 * whenever the end of it is free, so it never grows much past the actions it
+	 * holds.
+	 */
+	private static class SpillFile {
+		private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+		private File file;
+		private FileChannel channel;
+		private List<MappedByteBuffer> segments = new ArrayList<>();
+		private TreeMap<Long, Long> gaps = new TreeMap<>(); // Free ranges before the end, by offset.
+		private long end; // The end of the used part of the file.
+
+		/**
+		 * Constructor for the SpillFile class. Creates the temporary file, which is
+		 * deleted when it is closed or the application exits.
+		 *
+		 * @throws IOException if the file cannot be created.
+		 */
+		public SpillFile() throws IOException {
+			file = File.createTempFile("paint-undo", ".tmp");
+			file.deleteOnExit();
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		}
+
+		/**
+		 * Writes data into the first free range that holds it, or at the end of the
+		 * file.
+		 *
+		 * @param data The data to write.
+		 * @return The offset at which the data was written.
+		 * @throws IOException if the file cannot be grown.
+		 */
+		public long write(byte[] data) throws IOException {
+			long offset = allocate(data.length);
+			int done = 0;
+			while (done < data.length) {
+				long at = offset + done;
+				MappedByteBuffer segment = segment((int) (at / SEGMENT_SIZE));
+				int start = (int) (at % SEGMENT_SIZE);
+				int length = Math.min(data.length - done, SEGMENT_SIZE - start);
+				segment.put(start, data, done, length);
+				done += length;
+			}
+			return offset;
+		}
+
+		/**
+		 * Reads data back from the file.
+		 *
+		 * @param offset The offset the data was written at.
+		 * @param length The number of bytes to read.
+		 * @return The data.
+		 */
+		public byte[] read(long offset, int length) {
+			byte[] data = new byte[length];
+			int done = 0;
+			while (done < length) {
+				long at = offset + done;
+				MappedByteBuffer segment = segments.get((int) (at / SEGMENT_SIZE));
+				int start = (int) (at % SEGMENT_SIZE);
+				int count = Math.min(length - done, SEGMENT_SIZE - start);
+				segment.get(start, data, done, count);
+				done += count;
+			}
+			return data;
+		}
+
+		/**
+		 * Marks data in the file as no longer needed, so that its range can be
+		 * reused. A free range at the end of the file is cut off.
+		 *
+		 * @param offset The offset the data was written at.
+		 * @param length The number of bytes no longer needed.
+		 */
+		public void release(long offset, long length) {
+			// Merge with the free ranges on either side
+			Map.Entry<Long, Long> before = gaps.floorEntry(offset);
+			if (before != null && before.getKey() + before.getValue() == offset) {
+				gaps.remove(before.getKey());
+				offset = before.getKey();
+				length += before.getValue();
+			}
+			Long after = gaps.remove(offset + length);
+			if (after != null) {
+				length += after;
+			}
+
+			if (offset + length == end) {
+				end = offset;
+				shrink();
+			} else {
+				gaps.put(offset, length);
+			}
+		}
+
+		/**
+		 * Unmaps the file and deletes it.
+		 */
+		public void close() {
+			segments.clear();
+			gaps.clear();
+			end = 0;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			file.delete();
+		}
+
+		/**
+		 * Finds room for data, taking it from the first free range that is large
+		 * enough.
+		 */
+		private long allocate(long length) {
+			for (Map.Entry<Long, Long> gap : gaps.entrySet()) {
+				if (gap.getValue() >= length) {
+					gaps.remove(gap.getKey());
+					if (gap.getValue() > length) {
+						gaps.put(gap.getKey() + length, gap.getValue() - length);
+					}
+					return gap.getKey();
+				}
+			}
+			long offset = end;
+			end += length;
+			return offset;
+		}
+
+		/**
+		 * Drops the segments past the end of the used part of the file and
+		 * truncates the file to the segments left. A dropped segment is unmapped
+		 * once it is garbage collected.
+		 */
+		private void shrink() {
+			int needed = (int) ((end + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			if (segments.size() <= needed) {
+				return;
+			}
+			while (segments.size() > needed) {
+				segments.remove(segments.size() - 1);
+			}
+			try {
+				channel.truncate((long) needed * SEGMENT_SIZE);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Returns the mapped segment with the given index, mapping it if needed.
 		 */
-		public WritableImage getWritableImage() {
-			return writableImage;
+		private MappedByteBuffer segment(int index) throws IOException {
+			while (segments.size() <= index) {
+				long start = (long) segments.size() * SEGMENT_SIZE;
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE));
+			}
+			return segments.get(index);
 		}
 	}
 }
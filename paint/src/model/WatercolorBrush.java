@@ -1,7 +1,6 @@
 package model;
 
 import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -31,7 +30,8 @@ public class WatercolorBrush extends Brush {
 	}
 
 	/**
-	 * Drawing method for the WatercolorBrush.
+	 * Drawing method for the WatercolorBrush. Starts a stroke like the Brush,
+	 * with the opacity lowered.
 	 * 
 	 * @param canvas The Canvas to draw on.
 	 * @param x      Double x-coordinate
@@ -39,32 +39,17 @@ public class WatercolorBrush extends Brush {
 	 */
 	@Override
 	public void draw(Canvas canvas, double x, double y) {
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-		// Create a semi-transparent version of the brush color
-		Color semiTransparentColor = new Color(color.getRed(), color.getGreen(), color.getBlue(), 0.5);
-
-		gc.beginPath();
-
-		// Set the stroke color and opacity
-		gc.setStroke(semiTransparentColor);
-		gc.setLineWidth((Math.pow(getSize(), 2) / 2));
-		gc.setGlobalAlpha(0.5); // Adjust opacity as needed
-		gc.lineTo(x, y);
-		gc.stroke();
+		canvas.getGraphicsContext2D().setGlobalAlpha(0.5); // Adjust opacity as needed
+		super.draw(canvas, x, y);
 	}
 
+	/**
+	 * Returns a semi-transparent version of the brush color.
+	 * 
+	 * @return The color of the stroke.
+	 */
 	@Override
-	public void drawDragged(Canvas canvas, double x, double y) {
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-		// Create a semi-transparent version of the brush color
-		Color semiTransparentColor = new Color(color.getRed(), color.getGreen(), color.getBlue(), 0.5);
-
-		gc.beginPath();
-
-		// Set the stroke color
-		gc.setStroke(semiTransparentColor);
-		gc.setLineWidth((Math.pow(getSize(), 2) / 2));
-		gc.lineTo(x, y);
-		gc.stroke();
+	protected Color strokeColor() {
+		return new Color(color.getRed(), color.getGreen(), color.getBlue(), 0.5);
 	}
 }
@@ -0,0 +1,165 @@
+package tests;
+
+import java.util.concurrent.CountDownLatch;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import model.Brush;
+
+/**
+ * BrushStrokeBenchmark: Compares incremental Brush strokes against stroking the
+ * whole path on every mouse event.
+ *
+ * This class draws a 10,000 point stroke onto a canvas, once the way the Brush
+ * used to (one path grown with lineTo and stroked again after every point) and
+ * once with the Brush, which strokes only the newest segment. The canvas is
+ * snapshot every few points, as a frame would be, so the queued drawing is
+ * really rasterized. The time per point of the first and the last 1,000 points
+ * shows whether a point costs more the longer the stroke gets. Needs a display
+ * to start JavaFX.
+ *
+ * @author Tanay Desai
+ * @file: BrushStrokeBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class BrushStrokeBenchmark {
+
+	private static final int SIZE = 1024;
+	private static final int POINTS = 10000;
+	private static final int BLOCK = 1000; // The points timed together.
+	private static final int POINTS_PER_FRAME = 20; // The points drawn between two snapshots.
+	private static final double BRUSH_SIZE = 4;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		Platform.startup(() -> {
+			try {
+				run();
+			} finally {
+				done.countDown();
+			}
+		});
+		done.await();
+		Platform.exit();
+	}
+
+	/**
+	 * Runs both variants on the JavaFX thread and prints the results.
+	 */
+	private static void run() {
+		double[] points = makeStroke();
+
+		// Warm up both variants on a short stroke
+		wholePath(points, BLOCK);
+		incremental(points, BLOCK);
+
+		double[] original = wholePath(points, POINTS);
+		double[] brush = incremental(points, POINTS);
+
+		System.out.printf("%,d point stroke, time per point%n", POINTS);
+		System.out.printf("%-12s first %,d %7.1f us   last %,d %7.1f us   total %8.1f ms%n", "whole path", BLOCK,
+				original[0], BLOCK, original[1], original[2]);
+		System.out.printf("%-12s first %,d %7.1f us   last %,d %7.1f us   total %8.1f ms%n", "incremental", BLOCK,
+				brush[0], BLOCK, brush[1], brush[2]);
+	}
+
+	/**
+	 * Strokes the whole path again after every point, like the original Brush.
+	 *
+	 * @return The microseconds per point of the first and last block, and the
+	 *         total milliseconds.
+	 */
+	private static double[] wholePath(double[] points, int count) {
+		Canvas canvas = new Canvas(SIZE, SIZE);
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		WritableImage frame = new WritableImage(SIZE, SIZE);
+		long[] blocks = new long[count / BLOCK];
+
+		long start = System.nanoTime();
+		long blockStart = start;
+		gc.beginPath();
+		gc.setStroke(Color.BLACK);
+		gc.setLineWidth(BRUSH_SIZE * BRUSH_SIZE / 2);
+		for (int point = 0; point < count; point++) {
+			gc.lineTo(points[2 * point], points[2 * point + 1]);
+			gc.stroke();
+			blockStart = endPoint(canvas, frame, point, blocks, blockStart);
+		}
+		return results(blocks, System.nanoTime() - start);
+	}
+
+	/**
+	 * Draws the stroke with the Brush, one segment per point.
+	 *
+	 * @return The microseconds per point of the first and last block, and the
+	 *         total milliseconds.
+	 */
+	private static double[] incremental(double[] points, int count) {
+		Canvas canvas = new Canvas(SIZE, SIZE);
+		WritableImage frame = new WritableImage(SIZE, SIZE);
+		Brush brush = new Brush(Color.BLACK, BRUSH_SIZE);
+		long[] blocks = new long[count / BLOCK];
+
+		long start = System.nanoTime();
+		long blockStart = start;
+		brush.draw(canvas, points[0], points[1]);
+		blockStart = endPoint(canvas, frame, 0, blocks, blockStart);
+		for (int point = 1; point < count; point++) {
+			brush.drawDragged(canvas, points[2 * point], points[2 * point + 1]);
+			blockStart = endPoint(canvas, frame, point, blocks, blockStart);
+		}
+		return results(blocks, System.nanoTime() - start);
+	}
+
+	/**
+	 * Takes a snapshot at the end of a frame and records the time of a block at
+	 * the end of a block.
+	 *
+	 * @return The start time of the current block.
+	 */
+	private static long endPoint(Canvas canvas, WritableImage frame, int point, long[] blocks, long blockStart) {
+		if ((point + 1) % POINTS_PER_FRAME == 0) {
+			canvas.snapshot(null, frame);
+		}
+		if ((point + 1) % BLOCK == 0) {
+			long now = System.nanoTime();
+			blocks[point / BLOCK] = now - blockStart;
+			return now;
+		}
+		return blockStart;
+	}
+
+	/**
+	 * Converts the block times and the total time into the printed results.
+	 */
+	private static double[] results(long[] blocks, long total) {
+		return new double[] { blocks[0] / 1e3 / BLOCK, blocks[blocks.length - 1] / 1e3 / BLOCK, total / 1e6 };
+	}
+
+	/**
+	 * Makes a stroke that winds around the canvas in a spiral, about two pixels
+	 * between two points, as a quick drag would send them.
+	 */
+	private static double[] makeStroke() {
+		double[] points = new double[2 * POINTS];
+		double angle = 0;
+		for (int point = 0; point < POINTS; point++) {
+			double radius = 40 + 0.045 * point;
+			points[2 * point] = SIZE / 2 + radius * Math.cos(angle);
+			points[2 * point + 1] = SIZE / 2 + radius * Math.sin(angle);
+			angle += 2 / radius;
+		}
+		return points;
+	}
+}
@@ -0,0 +1,135 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+import javafx.geometry.Point2D;
+import javafx.scene.paint.Color;
+import model.FloodFill;
+
+/**
+ * FillBenchmark: Compares the scanline FloodFill against the original fill.
+ *
+ * This class fills the background of a 1080p and a 4K canvas with a few shapes
+ * on it, once with the algorithm the Fill tool used to have (a stack of
+ * Point2D, a boolean[][] visited grid and a Color per pixel read) and once with
+ * the FloodFill engine. Each variant is warmed up first and the average time of
+ * the measured runs is printed.
+ *
+ * @author Tanay Desai
+ * @file: FillBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class FillBenchmark {
+
+	private static final int WARMUP_RUNS = 3;
+	private static final int MEASURED_RUNS = 5;
+	private static final int BACKGROUND = 0xFFF4F4F4;
+	private static final int FILL_COLOR = 0xFF2060C0;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 */
+	public static void main(String[] args) {
+		run("1080p", 1920, 1080);
+		run("4K", 3840, 2160);
+	}
+
+	/**
+	 * Benchmarks both fills on a canvas of the given size.
+	 */
+	private static void run(String name, int width, int height) {
+		int[] canvas = drawScene(width, height);
+
+		double original = time(() -> originalFill(canvas.clone(), width, height, 1, 1, FILL_COLOR));
+		FloodFill floodFill = new FloodFill();
+		double scanline = time(() -> floodFill.fill(canvas.clone(), width, height, 1, 1, FILL_COLOR));
+
+		System.out.printf("%-6s original %8.1f ms   scanline %6.1f ms   (%.0fx)%n", name, original, scanline,
+				original / scanline);
+	}
+
+	/**
+	 * Returns the average time of a task in milliseconds after warming it up.
+	 */
+	private static double time(Runnable task) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			task.run();
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+	}
+
+	/**
+	 * Draws a background with outlined and filled rectangles, so the fill has to
+	 * find its way around obstacles.
+	 */
+	private static int[] drawScene(int width, int height) {
+		int[] canvas = new int[width * height];
+		Arrays.fill(canvas, BACKGROUND);
+		for (int i = 1; i < 8; i++) {
+			int left = width * i / 9;
+			int top = height * i / 12;
+			int right = left + width / 12;
+			int bottom = top + height / 5;
+			for (int y = top; y < bottom; y++) {
+				for (int x = left; x < right; x++) {
+					boolean edge = y == top || y == bottom - 1 || x == left || x == right - 1;
+					if (edge || i % 2 == 0) {
+						canvas[y * width + x] = 0xFF000000;
+					}
+				}
+			}
+		}
+		return canvas;
+	}
+
+	/**
+	 * The fill the Fill tool used before the FloodFill engine, working on an
+	 * array instead of a canvas. A new Color is created for every pixel read,
+	 * the way PixelReader.getColor does.
+	 */
+	private static void originalFill(int[] pixels, int width, int height, int x, int y, int replacement) {
+		Color startColor = toColor(pixels[y * width + x]);
+		boolean[][] visited = new boolean[width][height];
+
+		Stack<Point2D> stack = new Stack<>();
+		stack.push(new Point2D(x, y));
+
+		while (!stack.isEmpty()) {
+			Point2D point = stack.pop();
+			int px = (int) point.getX();
+			int py = (int) point.getY();
+
+			if (px >= 0 && px < width && py >= 0 && py < height) {
+				if (!visited[px][py]) {
+					visited[px][py] = true;
+
+					if (toColor(pixels[py * width + px]).equals(startColor)) {
+						pixels[py * width + px] = replacement;
+
+						stack.push(new Point2D(px + 1, py));
+						stack.push(new Point2D(px - 1, py));
+						stack.push(new Point2D(px, py + 1));
+						stack.push(new Point2D(px, py - 1));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a Color from an ARGB int.
+	 */
+	private static Color toColor(int argb) {
+		return Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+	}
+}
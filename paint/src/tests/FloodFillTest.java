@@ -0,0 +1,234 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.FloodFill;
+import model.ParallelFloodFill;
+import model.TiledImage;
+
+/**
+ * FloodFillTest: JUnit tests for the FloodFill and ParallelFloodFill classes.
+ *
+ * This test class checks that the scanline fill stops at the borders of an
+ * area, that the tolerance widens the area, and that the parallel fill gives
+ * the same pixels and bounds as the sequential one on random drawings. The
+ * fills of a TiledImage are checked against the fills of the same pixels in an
+ * array.
+ *
+ * @author Tanay Desai
+ * @file: FloodFillTest.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class FloodFillTest {
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int BLACK = 0xFF000000;
+	private static final int BLUE = 0xFF2060C0;
+
+	private FloodFill floodFill;
+
+	/**
+	 * Set up a sequential fill before each test method.
+	 */
+	@BeforeEach
+	public void setUp() {
+		floodFill = new FloodFill();
+		floodFill.setParallelThreshold(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Test that the fill covers the inside of a box and nothing outside of it.
+	 */
+	@Test
+	public void testFillStopsAtBorder() {
+		int[] pixels = new int[10 * 10];
+		Arrays.fill(pixels, WHITE);
+		for (int i = 2; i <= 6; i++) {
+			pixels[2 * 10 + i] = BLACK;
+			pixels[6 * 10 + i] = BLACK;
+			pixels[i * 10 + 2] = BLACK;
+			pixels[i * 10 + 6] = BLACK;
+		}
+		int[] original = pixels.clone();
+
+		assertTrue(floodFill.fill(pixels, 10, 10, 4, 4, BLUE));
+
+		for (int y = 0; y < 10; y++) {
+			for (int x = 0; x < 10; x++) {
+				boolean inside = x > 2 && x < 6 && y > 2 && y < 6;
+				assertEquals(inside ? BLUE : original[y * 10 + x], pixels[y * 10 + x]);
+			}
+		}
+		assertEquals(3, floodFill.getMinX());
+		assertEquals(3, floodFill.getMinY());
+		assertEquals(3, floodFill.getFilledWidth());
+		assertEquals(3, floodFill.getFilledHeight());
+	}
+
+	/**
+	 * Test that filling with the color already there changes nothing.
+	 */
+	@Test
+	public void testSameColorChangesNothing() {
+		int[] pixels = new int[8 * 8];
+		Arrays.fill(pixels, WHITE);
+
+		assertFalse(floodFill.fill(pixels, 8, 8, 1, 1, WHITE));
+		assertFalse(new ParallelFloodFill().fill(pixels, 8, 8, 1, 1, WHITE));
+	}
+
+	/**
+	 * Test that a tolerance lets the fill cover colors close to the clicked one,
+	 * but not colors further away.
+	 */
+	@Test
+	public void testToleranceCoversCloseColors() {
+		int[] pixels = { WHITE, 0xFFF8F8F8, 0xFFF0F0F0, 0xFF808080, WHITE };
+
+		floodFill.setTolerance(16);
+		assertTrue(floodFill.fill(pixels, 5, 1, 0, 0, BLUE));
+
+		assertArrayEquals(new int[] { BLUE, BLUE, BLUE, 0xFF808080, WHITE }, pixels);
+	}
+
+	/**
+	 * Test that the parallel fill gives exactly the pixels and bounds of the
+	 * sequential fill on random drawings.
+	 */
+	@Test
+	public void testParallelMatchesSequential() {
+		Random random = new Random(42);
+		ParallelFloodFill parallelFill = new ParallelFloodFill();
+		for (int round = 0; round < 20; round++) {
+			int width = 200 + random.nextInt(800);
+			int height = 200 + random.nextInt(800);
+			int[] drawing = randomDrawing(random, width, height);
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+
+			int[] expected = drawing.clone();
+			boolean changed = floodFill.fill(expected, width, height, x, y, BLUE);
+			int[] actual = drawing.clone();
+
+			assertEquals(changed, parallelFill.fill(actual, width, height, x, y, BLUE));
+			assertArrayEquals(expected, actual);
+			if (changed) {
+				assertEquals(floodFill.getMinX(), parallelFill.getMinX());
+				assertEquals(floodFill.getMinY(), parallelFill.getMinY());
+				assertEquals(floodFill.getFilledWidth(), parallelFill.getFilledWidth());
+				assertEquals(floodFill.getFilledHeight(), parallelFill.getFilledHeight());
+			}
+		}
+	}
+
+	/**
+	 * Test that the sequential and parallel fills of a TiledImage give exactly
+	 * the pixels and bounds of the sequential fill of an array, with and without
+	 * a tolerance.
+	 */
+	@Test
+	public void testTiledMatchesArray() {
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			int width = 200 + random.nextInt(800);
+			int height = 200 + random.nextInt(800);
+			int[] drawing = randomDrawing(random, width, height);
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+			int tolerance = round % 2 == 0 ? 0 : 8;
+
+			floodFill.setTolerance(tolerance);
+			int[] expected = drawing.clone();
+			boolean changed = floodFill.fill(expected, width, height, x, y, BLUE);
+			int minX = floodFill.getMinX();
+			int minY = floodFill.getMinY();
+			int filledWidth = floodFill.getFilledWidth();
+			int filledHeight = floodFill.getFilledHeight();
+
+			TiledImage image = new TiledImage(width, height, 0);
+			image.setPixels(0, 0, width, height, drawing, 0, width);
+			assertEquals(changed, floodFill.fill(image, x, y, BLUE));
+			assertArrayEquals(expected, pixelsOf(image));
+			if (changed) {
+				assertEquals(minX, floodFill.getMinX());
+				assertEquals(minY, floodFill.getMinY());
+				assertEquals(filledWidth, floodFill.getFilledWidth());
+				assertEquals(filledHeight, floodFill.getFilledHeight());
+			}
+
+			if (tolerance == 0) {
+				ParallelFloodFill parallelFill = new ParallelFloodFill();
+				image.setPixels(0, 0, width, height, drawing, 0, width);
+				assertEquals(changed, parallelFill.fill(image, x, y, BLUE));
+				assertArrayEquals(expected, pixelsOf(image));
+			}
+		}
+	}
+
+	/**
+	 * Test that filling a blank TiledImage fills its tiles as single colors,
+	 * without giving any of them pixels.
+	 */
+	@Test
+	public void testBlankTiledImageStaysUniform() {
+		TiledImage image = new TiledImage(2000, 1500, WHITE);
+
+		assertTrue(floodFill.fill(image, 10, 10, BLUE));
+		assertEquals(0, image.getAllocatedBytes());
+		assertEquals(2000, floodFill.getFilledWidth());
+		assertEquals(1500, floodFill.getFilledHeight());
+		assertEquals(BLUE, image.getPixel(1999, 1499));
+
+		assertTrue(new ParallelFloodFill().fill(image, 10, 10, WHITE));
+		assertEquals(0, image.getAllocatedBytes());
+		assertEquals(WHITE, image.getPixel(0, 0));
+	}
+
+	/**
+	 * Reads all pixels of a TiledImage into an array.
+	 */
+	private static int[] pixelsOf(TiledImage image) {
+		int[] pixels = new int[image.getWidth() * image.getHeight()];
+		image.getPixels(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return pixels;
+	}
+
+	/**
+	 * Draws random lines and specks on a white drawing, so that areas wind across
+	 * the tiles of the parallel fill.
+	 */
+	private static int[] randomDrawing(Random random, int width, int height) {
+		int[] pixels = new int[width * height];
+		Arrays.fill(pixels, WHITE);
+		for (int line = 0; line < 60; line++) {
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+			boolean horizontal = random.nextBoolean();
+			for (int i = random.nextInt(400); i >= 0; i--) {
+				if (x < width && y < height) {
+					pixels[y * width + x] = BLACK;
+				}
+				if (horizontal) {
+					x++;
+				} else {
+					y++;
+				}
+			}
+		}
+		for (int speck = 0; speck < 2000; speck++) {
+			pixels[random.nextInt(pixels.length)] = BLACK;
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,110 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import model.FloodFill;
+import model.ParallelFloodFill;
+
+/**
+ * ParallelFillBenchmark: Measures how the ParallelFloodFill scales with the
+ * number of cores.
+ *
+ * This class fills the background of an 8K canvas with scattered shapes on it,
+ * once with the sequential FloodFill and then with a ParallelFloodFill on pools
+ * of 1, 2, 4, ... threads up to the number of available cores. Every parallel
+ * result is checked against the sequential one pixel for pixel, and the
+ * average time of the measured runs is printed with the speedup.
+ *
+ * @author Tanay Desai
+ * @file: ParallelFillBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ParallelFillBenchmark {
+
+	private static final int WIDTH = 7680;
+	private static final int HEIGHT = 4320;
+	private static final int WARMUP_RUNS = 3;
+	private static final int MEASURED_RUNS = 5;
+	private static final int BACKGROUND = 0xFFF4F4F4;
+	private static final int FILL_COLOR = 0xFF2060C0;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 */
+	public static void main(String[] args) {
+		int[] canvas = drawScene(WIDTH, HEIGHT);
+
+		FloodFill floodFill = new FloodFill();
+		floodFill.setParallelThreshold(Integer.MAX_VALUE);
+		int[] expected = canvas.clone();
+		floodFill.fill(expected, WIDTH, HEIGHT, 0, 0, FILL_COLOR);
+		double sequential = time(() -> floodFill.fill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR));
+		System.out.printf("sequential       %7.1f ms%n", sequential);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1;; threads = Math.min(threads * 2, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ParallelFloodFill parallelFill = new ParallelFloodFill(pool);
+
+			int[] result = canvas.clone();
+			parallelFill.fill(result, WIDTH, HEIGHT, 0, 0, FILL_COLOR);
+			if (!Arrays.equals(expected, result)) {
+				throw new IllegalStateException("Parallel fill differs from the sequential fill");
+			}
+
+			double parallel = time(() -> parallelFill.fill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR));
+			System.out.printf("parallel %2d thr. %7.1f ms   (%.1fx)%n", threads, parallel, sequential / parallel);
+			pool.shutdown();
+
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the average time of a task in milliseconds after warming it up.
+	 */
+	private static double time(Runnable task) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			task.run();
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+	}
+
+	/**
+	 * Draws a background with a grid of outlined rectangles and short strokes,
+	 * so the filled area crosses many tiles and has to find its way around
+	 * obstacles.
+	 */
+	private static int[] drawScene(int width, int height) {
+		int[] canvas = new int[width * height];
+		Arrays.fill(canvas, BACKGROUND);
+		for (int top = 40; top + 120 < height; top += 300) {
+			for (int left = 40 + top % 200; left + 160 < width; left += 420) {
+				for (int y = top; y < top + 120; y++) {
+					for (int x = left; x < left + 160; x++) {
+						boolean edge = y == top || y == top + 119 || x == left || x == left + 159;
+						if (edge) {
+							canvas[y * width + x] = 0xFF000000;
+						}
+					}
+				}
+				for (int i = 0; i < 100; i++) {
+					canvas[(top + 150 + i / 4) * width + left + 200 + i] = 0xFF000000;
+				}
+			}
+		}
+		return canvas;
+	}
+}
@@ -0,0 +1,144 @@
+package tests;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import model.PngWriter;
+
+/**
+ * PngWriterBenchmark: Compares the PngWriter against ImageIO.
+ *
+ * This class saves a 1080p and a 4K drawing the way the app used to (copying
+ * the pixels into a BufferedImage and calling ImageIO.write) and with the
+ * PngWriter on pools of 1 thread and of all cores. Every file is read back and
+ * checked against the pixels, and the throughput in megabytes of pixels per
+ * second and the size of the file are printed.
+ *
+ * @author Tanay Desai
+ * @file: PngWriterBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class PngWriterBenchmark {
+
+	private static final int WARMUP_RUNS = 2;
+	private static final int MEASURED_RUNS = 4;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 * @throws IOException If a file cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Files.createTempFile("benchmark", ".png");
+		try {
+			run("1080p", 1920, 1080, file);
+			run("4K", 3840, 2160, file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Benchmarks the writers on a drawing of the given size.
+	 */
+	private static void run(String name, int width, int height, Path file) throws IOException {
+		int[] pixels = drawScene(width, height);
+		double megabytes = width * height * 4 / 1e6;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		double imageIo = time(() -> {
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(0, 0, width, height, pixels, 0, width);
+			ImageIO.write(image, "png", file.toFile());
+		});
+		report(name, "ImageIO", megabytes / imageIo, file, pixels, width, height);
+
+		ForkJoinPool single = new ForkJoinPool(1);
+		PngWriter singleWriter = new PngWriter(single, Deflater.DEFAULT_COMPRESSION);
+		double oneThread = time(() -> singleWriter.write(pixels, width, height, file));
+		report(name, "PngWriter, 1 thread", megabytes / oneThread, file, pixels, width, height);
+		single.shutdown();
+
+		if (cores == 1) {
+			return;
+		}
+		ForkJoinPool all = new ForkJoinPool(cores);
+		PngWriter parallelWriter = new PngWriter(all, Deflater.DEFAULT_COMPRESSION);
+		double allThreads = time(() -> parallelWriter.write(pixels, width, height, file));
+		report(name, "PngWriter, " + cores + " threads", megabytes / allThreads, file, pixels, width, height);
+		all.shutdown();
+	}
+
+	/**
+	 * Checks that a written file holds the pixels and prints a result.
+	 */
+	private static void report(String name, String writer, double throughput, Path file, int[] pixels, int width,
+			int height) throws IOException {
+		BufferedImage image = ImageIO.read(new File(file.toString()));
+		if (!Arrays.equals(pixels, image.getRGB(0, 0, width, height, null, 0, width))) {
+			throw new IllegalStateException(writer + " wrote different pixels");
+		}
+		System.out.printf("%-6s %-22s %7.1f MB/s %9d bytes%n", name, writer, throughput, Files.size(file));
+	}
+
+	/**
+	 * Returns the average time of a task in seconds after warming it up.
+	 */
+	private static double time(Task task) throws IOException {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			task.run();
+		}
+		return (System.nanoTime() - start) / 1e9 / MEASURED_RUNS;
+	}
+
+	/**
+	 * Draws a light background with a gradient band, soft-edged rings and some
+	 * noise, so there is both flat and busy content to compress.
+	 */
+	private static int[] drawScene(int width, int height) {
+		int[] pixels = new int[width * height];
+		Arrays.fill(pixels, 0xFFF4F4F4);
+		long seed = 42;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int i = y * width + x;
+				if (y > height / 3 && y < height / 2) {
+					pixels[i] = 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x80;
+				}
+				double distance = Math.abs(Math.hypot(x % 400 - 200, y % 400 - 200) - 150);
+				if (distance < 4) {
+					int shade = (int) (distance * 60);
+					pixels[i] = 0xFF000000 | shade << 16 | shade << 8 | shade;
+				}
+				if (x > width * 3 / 4 && y > height * 3 / 4) {
+					seed = seed * 6364136223846793005L + 1442695040888963407L;
+					pixels[i] = 0xFF000000 | (int) (seed >>> 40);
+				}
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * A task that may fail to write a file.
+	 */
+	private interface Task {
+		void run() throws IOException;
+	}
+}
@@ -0,0 +1,232 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.ProjectFile;
+import model.TiledImage;
+
+/**
+ * ProjectFileTest: JUnit tests for the ProjectFile class.
+ *
+ * This test class saves drawings to project files and opens them again, and
+ * checks that the drawing that comes back is the one that was saved: after
+ * the file is first written, after saves of only the tiles that changed, after
+ * a resize, and for a drawing whose tiles were still being read from the file
+ * on first use when it was saved.
+ *
+ * @author Tanay Desai
+ * @file: ProjectFileTest.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ProjectFileTest {
+	private static final int TILE_SIZE = ProjectFile.TILE_SIZE;
+
+	private Path directory;
+	private Path path;
+	private Random random;
+
+	/**
+	 * Set up a temporary directory for the project file before each test method.
+	 *
+	 * @throws IOException If the directory cannot be created.
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("project-test");
+		path = directory.resolve("drawing" + ProjectFile.EXTENSION);
+		random = new Random(3);
+	}
+
+	/**
+	 * Delete the temporary directory after each test method.
+	 *
+	 * @throws IOException If the files cannot be deleted.
+	 */
+	@AfterEach
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Test that a new project file opens as the drawing it was created from.
+	 *
+	 * @throws IOException If the project cannot be written or read.
+	 */
+	@Test
+	public void testCreateAndReopen() throws IOException {
+		TiledImage image = randomDrawing(3 * TILE_SIZE + 17, 2 * TILE_SIZE + 5);
+		ProjectFile.create(path, image, null).close();
+
+		assertSameDrawing(image, reopen());
+	}
+
+	/**
+	 * Test that saving only the changed tiles, over several saves, gives the
+	 * latest drawing when the file is opened again.
+	 *
+	 * @throws IOException If the project cannot be written or read.
+	 */
+	@Test
+	public void testChangedTilesSaveAndReopen() throws IOException {
+		TiledImage image = randomDrawing(4 * TILE_SIZE, 3 * TILE_SIZE + 40);
+		ProjectFile project = ProjectFile.create(path, image.copy(), null);
+		try {
+			for (int save = 0; save < 5; save++) {
+				BitSet changed = new BitSet();
+				for (int change = 0; change < 3; change++) {
+					changed.or(drawRandomRectangle(image));
+				}
+				project.save(image.copy(), changed, null);
+			}
+		} finally {
+			project.close();
+		}
+
+		assertSameDrawing(image, reopen());
+	}
+
+	/**
+	 * Test that a drawing saved at a new size opens at that size.
+	 *
+	 * @throws IOException If the project cannot be written or read.
+	 */
+	@Test
+	public void testResizedSaveAndReopen() throws IOException {
+		TiledImage image = randomDrawing(2 * TILE_SIZE, 2 * TILE_SIZE);
+		ProjectFile project = ProjectFile.create(path, image, null);
+		TiledImage resized = image.resized(3 * TILE_SIZE + 9, TILE_SIZE + 1, 0, 0, 0xFFFFFFFF);
+		try {
+			project.save(resized, null, null);
+		} finally {
+			project.close();
+		}
+
+		assertSameDrawing(resized, reopen());
+	}
+
+	/**
+	 * Test that a drawing opened with its tiles read on first use can be changed,
+	 * saved and opened again, with the tiles it never read kept as they were.
+	 *
+	 * @throws IOException If the project cannot be written or read.
+	 */
+	@Test
+	public void testLazyDrawingSaveAndReopen() throws IOException {
+		TiledImage image = randomDrawing(4 * TILE_SIZE + 3, 3 * TILE_SIZE);
+		ProjectFile.create(path, image, null).close();
+
+		ProjectFile project = ProjectFile.open(path);
+		try {
+			TiledImage lazy = new TiledImage(project.getWidth(), project.getHeight(), 0);
+			TiledImage.TileSource tiles = project.getTiles();
+			for (int tileY = 0; tileY < project.getTilesY(); tileY++) {
+				for (int tileX = 0; tileX < project.getTilesX(); tileX++) {
+					lazy.setSource(tileX, tileY, tiles);
+				}
+			}
+			BitSet changed = drawRandomRectangle(lazy);
+			project.save(lazy.copy(), changed, null);
+			image = lazy;
+		} finally {
+			project.close();
+		}
+
+		assertSameDrawing(image, reopen());
+	}
+
+	/**
+	 * Opens the project file and reads every tile of it into a drawing.
+	 */
+	private TiledImage reopen() throws IOException {
+		ProjectFile project = ProjectFile.open(path);
+		try {
+			TiledImage image = new TiledImage(project.getWidth(), project.getHeight(), 0);
+			for (int tileY = 0; tileY < project.getTilesY(); tileY++) {
+				for (int tileX = 0; tileX < project.getTilesX(); tileX++) {
+					int tileWidth = project.getTileWidth(tileX);
+					int tileHeight = project.getTileHeight(tileY);
+					int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+					project.readTile(tileX, tileY, pixels);
+					if (project.isUniform(tileX, tileY)) {
+						image.fill(tileX * TILE_SIZE, tileY * TILE_SIZE, tileWidth, tileHeight, pixels[0]);
+					} else {
+						image.setPixels(tileX * TILE_SIZE, tileY * TILE_SIZE, tileWidth, tileHeight, pixels, 0,
+								tileWidth);
+					}
+				}
+			}
+			return image;
+		} finally {
+			project.close();
+		}
+	}
+
+	/**
+	 * Makes a white drawing with a few random rectangles on it, so some of its
+	 * tiles are a single color and others are not.
+	 */
+	private TiledImage randomDrawing(int width, int height) {
+		TiledImage image = new TiledImage(width, height, 0xFFFFFFFF);
+		for (int rectangle = 0; rectangle < 4; rectangle++) {
+			drawRandomRectangle(image);
+		}
+		return image;
+	}
+
+	/**
+	 * Draws a rectangle of random pixels and returns the tiles it touched.
+	 */
+	private BitSet drawRandomRectangle(TiledImage image) {
+		int x = random.nextInt(image.getWidth() - 1);
+		int y = random.nextInt(image.getHeight() - 1);
+		int width = 1 + random.nextInt(Math.min(TILE_SIZE, image.getWidth() - x));
+		int height = 1 + random.nextInt(Math.min(TILE_SIZE, image.getHeight() - y));
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt();
+		}
+		image.setPixels(x, y, width, height, pixels, 0, width);
+
+		BitSet tiles = new BitSet();
+		int tilesX = (image.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		for (int tileY = y / TILE_SIZE; tileY * TILE_SIZE < y + height; tileY++) {
+			for (int tileX = x / TILE_SIZE; tileX * TILE_SIZE < x + width; tileX++) {
+				tiles.set(tileY * tilesX + tileX);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Checks that two drawings have the same size and pixels.
+	 */
+	private static void assertSameDrawing(TiledImage expected, TiledImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		int[] expectedPixels = new int[expected.getWidth() * expected.getHeight()];
+		int[] actualPixels = new int[expectedPixels.length];
+		expected.getPixels(0, 0, expected.getWidth(), expected.getHeight(), expectedPixels, 0, expected.getWidth());
+		actual.getPixels(0, 0, actual.getWidth(), actual.getHeight(), actualPixels, 0, actual.getWidth());
+		assertArrayEquals(expectedPixels, actualPixels);
+	}
+}
@@ -0,0 +1,225 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.RecoveryJournal;
+import model.TiledImage;
+
+/**
+ * RecoveryJournalTest: JUnit tests for the RecoveryJournal class.
+ *
+ * This test class writes journals the way the autosave does and rebuilds the
+ * drawing from them, including from journals whose last record was cut off by
+ * a crash in the middle of a write or damaged on disk. Such a journal has to
+ * give back the drawing as it was before that record.
+ *
+ * @author Tanay Desai
+ * @file: RecoveryJournalTest.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class RecoveryJournalTest {
+	private static final int WIDTH = 300;
+	private static final int HEIGHT = 200;
+	private static final int TILE_SIZE = TiledImage.TILE_SIZE;
+
+	private Path directory;
+	private Path path;
+	private RecoveryJournal journal;
+	private Random random;
+
+	/**
+	 * Set up a journal in a temporary directory before each test method.
+	 *
+	 * @throws IOException If the directory cannot be created.
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal-test");
+		path = directory.resolve("recovery.journal");
+		journal = new RecoveryJournal(path);
+		random = new Random(17);
+	}
+
+	/**
+	 * Close the journal and delete the temporary directory after each test
+	 * method.
+	 *
+	 * @throws IOException If the files cannot be deleted.
+	 */
+	@AfterEach
+	public void tearDown() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Test that there is nothing to recover without a journal.
+	 *
+	 * @throws IOException If the journal cannot be read.
+	 */
+	@Test
+	public void testNoJournal() throws IOException {
+		assertNull(RecoveryJournal.recover(path));
+	}
+
+	/**
+	 * Test that the drawing is rebuilt from the pixel and fill records of a
+	 * journal that was written completely.
+	 *
+	 * @throws IOException If the journal cannot be written or read.
+	 */
+	@Test
+	public void testRecoverCompleteJournal() throws IOException {
+		journal.startCanvas(WIDTH, HEIGHT);
+		TiledImage expected = startedDrawing();
+		for (int record = 0; record < 6; record++) {
+			appendRandomTile(expected, record % 3 == 0);
+		}
+		journal.flush();
+
+		assertSameDrawing(expected, RecoveryJournal.recover(path).getImage());
+	}
+
+	/**
+	 * Test that a journal whose last record was cut off anywhere in the middle
+	 * gives back the drawing as it was before that record.
+	 *
+	 * @throws IOException If the journal cannot be written or read.
+	 */
+	@Test
+	public void testTornWriteLosesOnlyLastRecord() throws IOException {
+		journal.startCanvas(WIDTH, HEIGHT);
+		TiledImage expected = startedDrawing();
+		for (int record = 0; record < 4; record++) {
+			appendRandomTile(expected, false);
+		}
+		journal.flush();
+		long complete = Files.size(path);
+		TiledImage before = expected.copy();
+		appendRandomTile(expected, false);
+		journal.flush();
+		byte[] log = Files.readAllBytes(path);
+
+		Path torn = directory.resolve("torn.journal");
+		for (int cut = (int) complete; cut < log.length; cut += Math.max(1, (log.length - complete) / 16)) {
+			Files.write(torn, Arrays.copyOf(log, cut));
+			assertSameDrawing(before, RecoveryJournal.recover(torn).getImage());
+		}
+		Files.write(torn, log);
+		assertSameDrawing(expected, RecoveryJournal.recover(torn).getImage());
+	}
+
+	/**
+	 * Test that a record damaged on disk and everything after it are ignored.
+	 *
+	 * @throws IOException If the journal cannot be written or read.
+	 */
+	@Test
+	public void testDamagedRecordStopsRecovery() throws IOException {
+		journal.startCanvas(WIDTH, HEIGHT);
+		TiledImage expected = startedDrawing();
+		appendRandomTile(expected, false);
+		journal.flush();
+		long complete = Files.size(path);
+		TiledImage before = expected.copy();
+		appendRandomTile(expected, false);
+		appendRandomTile(expected, true);
+		journal.flush();
+
+		byte[] log = Files.readAllBytes(path);
+		log[(int) complete + 40] ^= 0x10;
+		Path damaged = directory.resolve("damaged.journal");
+		Files.write(damaged, log);
+
+		assertSameDrawing(before, RecoveryJournal.recover(damaged).getImage());
+	}
+
+	/**
+	 * Test that compacting the journal keeps the drawing, and that records
+	 * appended after the compaction are recovered too.
+	 *
+	 * @throws IOException If the journal cannot be written or read.
+	 */
+	@Test
+	public void testCompactKeepsDrawing() throws IOException {
+		journal.startCanvas(WIDTH, HEIGHT);
+		TiledImage expected = startedDrawing();
+		for (int record = 0; record < 20; record++) {
+			appendRandomTile(expected, record % 4 == 0);
+		}
+		journal.compact();
+		appendRandomTile(expected, false);
+		journal.flush();
+
+		assertSameDrawing(expected, RecoveryJournal.recover(path).getImage());
+	}
+
+	/**
+	 * Returns the drawing the journal holds right after its canvas was started.
+	 */
+	private TiledImage startedDrawing() throws IOException {
+		RecoveryJournal.Recovery recovery = RecoveryJournal.recover(path);
+		assertNotNull(recovery);
+		return recovery.getImage().copy();
+	}
+
+	/**
+	 * Appends a whole tile of random pixels, or of a random single color, to the
+	 * journal, and draws it on the expected drawing.
+	 */
+	private void appendRandomTile(TiledImage expected, boolean uniform) throws IOException {
+		int tileX = random.nextInt(expected.getTilesX());
+		int tileY = random.nextInt(expected.getTilesY());
+		int x = tileX * TILE_SIZE;
+		int y = tileY * TILE_SIZE;
+		int tileWidth = expected.getTileWidth(tileX);
+		int tileHeight = expected.getTileHeight(tileY);
+		if (uniform) {
+			int color = random.nextInt();
+			journal.appendFill(x, y, tileWidth, tileHeight, color);
+			expected.fill(x, y, tileWidth, tileHeight, color);
+		} else {
+			int[] pixels = new int[tileWidth * tileHeight];
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = random.nextInt();
+			}
+			journal.append(x, y, tileWidth, tileHeight, pixels);
+			expected.setPixels(x, y, tileWidth, tileHeight, pixels, 0, tileWidth);
+		}
+	}
+
+	/**
+	 * Checks that two drawings have the same size and pixels.
+	 */
+	private static void assertSameDrawing(TiledImage expected, TiledImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		int[] expectedPixels = new int[expected.getWidth() * expected.getHeight()];
+		int[] actualPixels = new int[expectedPixels.length];
+		expected.getPixels(0, 0, expected.getWidth(), expected.getHeight(), expectedPixels, 0, expected.getWidth());
+		actual.getPixels(0, 0, actual.getWidth(), actual.getHeight(), actualPixels, 0, actual.getWidth());
+		assertArrayEquals(expectedPixels, actualPixels);
+	}
+}
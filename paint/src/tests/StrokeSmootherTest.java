@@ -0,0 +1,139 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.StrokeSmoother;
+
+/**
+ * StrokeSmootherTest: JUnit tests for the StrokeSmoother class.
+ *
+ * This test class feeds strokes to the smoother the way the mouse sends them
+ * and checks that the curves it hands out run from the first point to the last
+ * one, that fewer curves than points are drawn, and that every dropped point
+ * stays within the tolerance of the line between the kept points around it.
+ *
+ * @author Tanay Desai
+ * @file: StrokeSmootherTest.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class StrokeSmootherTest {
+	private static final double EPSILON = 1e-9;
+
+	private StrokeSmoother smoother;
+
+	/**
+	 * Set up a smoother with the default tolerance before each test method.
+	 */
+	@BeforeEach
+	public void setUp() {
+		smoother = new StrokeSmoother();
+	}
+
+	/**
+	 * Test that a straight stroke becomes a few curves that stay on its line and
+	 * end at its last point.
+	 */
+	@Test
+	public void testStraightStroke() {
+		double[] stroke = new double[2 * 101];
+		for (int point = 0; point <= 100; point++) {
+			stroke[2 * point] = point;
+		}
+
+		double[] curves = smooth(stroke);
+
+		assertTrue(curves.length / 6 < 101 / 4);
+		for (int value = 1; value < curves.length; value += 2) {
+			assertEquals(0, curves[value], EPSILON);
+		}
+		assertEquals(100, curves[curves.length - 2], EPSILON);
+	}
+
+	/**
+	 * Test that every point of a shaky stroke is within the tolerance of the line
+	 * between the kept points around it, and that the curves start at the first
+	 * point and end at the last.
+	 */
+	@Test
+	public void testErrorWithinTolerance() {
+		Random random = new Random(11);
+		for (double tolerance : new double[] { 0.5, StrokeSmoother.DEFAULT_TOLERANCE, 2, 5 }) {
+			smoother = new StrokeSmoother(tolerance);
+			double[] stroke = new double[2 * 500];
+			for (int point = 0; point < 500; point++) {
+				// A wavy stroke on whole pixels, like the mouse sends
+				stroke[2 * point] = Math.round(200 + 150 * Math.cos(point / 40.0) + random.nextInt(3));
+				stroke[2 * point + 1] = Math.round(200 + 100 * Math.sin(point / 25.0) + random.nextInt(3));
+			}
+
+			double[] curves = smooth(stroke);
+
+			// The ends of the curves are the kept points, after the first point
+			double[] kept = new double[2 + curves.length / 3];
+			kept[0] = stroke[0];
+			kept[1] = stroke[1];
+			for (int curve = 0; curve < curves.length / 6; curve++) {
+				kept[2 + 2 * curve] = curves[6 * curve + 4];
+				kept[3 + 2 * curve] = curves[6 * curve + 5];
+			}
+			assertEquals(stroke[stroke.length - 2], kept[kept.length - 2], EPSILON);
+			assertEquals(stroke[stroke.length - 1], kept[kept.length - 1], EPSILON);
+			assertTrue(kept.length < stroke.length);
+
+			int segment = 0;
+			for (int point = 0; point < stroke.length; point += 2) {
+				double x = stroke[point];
+				double y = stroke[point + 1];
+				assertTrue(distanceToSegment(x, y, kept, segment) <= tolerance + EPSILON,
+						"point " + point / 2 + " at tolerance " + tolerance);
+				if (segment + 4 < kept.length && x == kept[segment + 2] && y == kept[segment + 3]) {
+					segment += 2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Feeds a stroke to the smoother and returns all the curves it hands out.
+	 */
+	private double[] smooth(double[] stroke) {
+		double[] curves = new double[0];
+		smoother.start(stroke[0], stroke[1]);
+		for (int point = 2; point <= stroke.length; point += 2) {
+			if (point < stroke.length) {
+				smoother.add(stroke[point], stroke[point + 1]);
+			} else {
+				smoother.finish();
+			}
+			double[] taken = new double[curves.length + smoother.getCurveCount()];
+			System.arraycopy(curves, 0, taken, 0, curves.length);
+			System.arraycopy(smoother.getCurves(), 0, taken, curves.length, smoother.getCurveCount());
+			curves = taken;
+			smoother.clearCurves();
+		}
+		return curves;
+	}
+
+	/**
+	 * Returns the distance from a point to the line between two kept points.
+	 */
+	private static double distanceToSegment(double x, double y, double[] kept, int segment) {
+		double startX = kept[segment];
+		double startY = kept[segment + 1];
+		double dx = kept[segment + 2] - startX;
+		double dy = kept[segment + 3] - startY;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0
+				: Math.max(0, Math.min(1, ((x - startX) * dx + (y - startY) * dy) / lengthSquared));
+		return Math.hypot(x - startX - t * dx, y - startY - t * dy);
+	}
+}
@@ -0,0 +1,187 @@
+package tests;
+
+import java.util.Arrays;
+
+import model.FloodFill;
+
+/**
+ * ToleranceFillBenchmark: Compares the color-match kernels of a tolerant fill.
+ *
+ * This class fills the background of a 4K canvas covered with anti-aliased
+ * circles, whose soft edges are the pixels a tolerance is meant to catch. It
+ * times an exact fill, a tolerant fill with the FloodFill engine (which tests
+ * all four channels at once with SWAR arithmetic), a similar fill with a
+ * scalar kernel that unpacks and compares every channel on its own, and a fill with
+ * the Euclidean distance. The scalar result is checked against the engine pixel
+ * for pixel, and the average time of the measured runs is printed.
+ *
+ * @author Tanay Desai
+ * @file: ToleranceFillBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class ToleranceFillBenchmark {
+
+	private static final int WIDTH = 3840;
+	private static final int HEIGHT = 2160;
+	private static final int TOLERANCE = 48;
+	private static final int WARMUP_RUNS = 3;
+	private static final int MEASURED_RUNS = 5;
+	private static final int BACKGROUND = 0xFFF4F4F4;
+	private static final int INK = 0xFF202020;
+	private static final int FILL_COLOR = 0xFF2060C0;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 */
+	public static void main(String[] args) {
+		int[] canvas = drawScene();
+
+		FloodFill exact = new FloodFill();
+		FloodFill perChannel = new FloodFill();
+		perChannel.setTolerance(TOLERANCE);
+		FloodFill euclidean = new FloodFill();
+		euclidean.setTolerance(TOLERANCE);
+		euclidean.setEuclidean(true);
+
+		int[] expected = canvas.clone();
+		perChannel.fill(expected, WIDTH, HEIGHT, 0, 0, FILL_COLOR);
+		int[] result = canvas.clone();
+		scalarFill(result, WIDTH, HEIGHT, 0, 0, FILL_COLOR, TOLERANCE);
+		if (!Arrays.equals(expected, result)) {
+			throw new IllegalStateException("Scalar fill differs from the FloodFill engine");
+		}
+
+		double exactTime = time(() -> exact.fill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR));
+		double swarTime = time(() -> perChannel.fill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR));
+		double scalarTime = time(() -> scalarFill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR, TOLERANCE));
+		double euclideanTime = time(() -> euclidean.fill(canvas.clone(), WIDTH, HEIGHT, 0, 0, FILL_COLOR));
+
+		System.out.printf("exact                 %6.1f ms%n", exactTime);
+		System.out.printf("per channel, SWAR     %6.1f ms%n", swarTime);
+		System.out.printf("per channel, scalar   %6.1f ms   (SWAR %.1fx)%n", scalarTime, scalarTime / swarTime);
+		System.out.printf("euclidean             %6.1f ms%n", euclideanTime);
+	}
+
+	/**
+	 * Returns the average time of a task in milliseconds after warming it up.
+	 */
+	private static double time(Runnable task) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			task.run();
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+	}
+
+	/**
+	 * Draws rings of ink with edges that fade into the background over a few
+	 * pixels, the way anti-aliased strokes do.
+	 */
+	private static int[] drawScene() {
+		int[] canvas = new int[WIDTH * HEIGHT];
+		Arrays.fill(canvas, BACKGROUND);
+		for (int centerY = 150; centerY < HEIGHT; centerY += 360) {
+			for (int centerX = 150 + centerY % 240; centerX < WIDTH; centerX += 400) {
+				for (int y = centerY - 130; y <= centerY + 130; y++) {
+					for (int x = centerX - 130; x <= centerX + 130; x++) {
+						if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT) {
+							continue;
+						}
+						// Coverage of a 6 pixel wide ring with 3 pixels of fading on each side
+						double distance = Math.abs(Math.hypot(x - centerX, y - centerY) - 120);
+						double coverage = Math.max(0, Math.min(1, (6 - distance) / 3));
+						if (coverage > 0) {
+							canvas[y * WIDTH + x] = blend(canvas[y * WIDTH + x], INK, coverage);
+						}
+					}
+				}
+			}
+		}
+		return canvas;
+	}
+
+	/**
+	 * Blends two opaque colors.
+	 */
+	private static int blend(int background, int foreground, double coverage) {
+		int argb = 0xFF000000;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int channel = (int) Math.round((background >> shift & 0xFF) * (1 - coverage)
+					+ (foreground >> shift & 0xFF) * coverage);
+			argb |= channel << shift;
+		}
+		return argb;
+	}
+
+	/**
+	 * A tolerant scanline fill like the one in the FloodFill engine, but with a
+	 * boolean per visited pixel and a kernel that unpacks the four channels of
+	 * every pixel and compares them one at a time.
+	 */
+	private static void scalarFill(int[] pixels, int width, int height, int x, int y, int replacement,
+			int tolerance) {
+		int target = pixels[y * width + x];
+		boolean[] visited = new boolean[width * height];
+		int[] stack = new int[256];
+		int size = 0;
+		stack[size++] = x;
+		stack[size++] = y;
+		while (size > 0) {
+			int seedY = stack[--size];
+			int seedX = stack[--size];
+			int row = seedY * width;
+			if (visited[row + seedX]) {
+				continue;
+			}
+			int left = seedX;
+			while (left > 0 && !visited[row + left - 1] && matches(pixels[row + left - 1], target, tolerance)) {
+				left--;
+			}
+			int right = seedX;
+			while (right < width - 1 && !visited[row + right + 1]
+					&& matches(pixels[row + right + 1], target, tolerance)) {
+				right++;
+			}
+			Arrays.fill(visited, row + left, row + right + 1, true);
+			Arrays.fill(pixels, row + left, row + right + 1, replacement);
+
+			for (int next = seedY - 1; next <= seedY + 1; next += 2) {
+				if (next < 0 || next >= height) {
+					continue;
+				}
+				boolean inRun = false;
+				for (int column = left; column <= right; column++) {
+					int index = next * width + column;
+					boolean open = !visited[index] && matches(pixels[index], target, tolerance);
+					if (open && !inRun) {
+						if (size + 2 > stack.length) {
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						}
+						stack[size++] = column;
+						stack[size++] = next;
+					}
+					inRun = open;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether no channel of a color differs from the target by more than
+	 * the tolerance.
+	 */
+	private static boolean matches(int argb, int target, int tolerance) {
+		return Math.abs((argb >>> 24) - (target >>> 24)) <= tolerance
+				&& Math.abs((argb >> 16 & 0xFF) - (target >> 16 & 0xFF)) <= tolerance
+				&& Math.abs((argb >> 8 & 0xFF) - (target >> 8 & 0xFF)) <= tolerance
+				&& Math.abs((argb & 0xFF) - (target & 0xFF)) <= tolerance;
+	}
+}
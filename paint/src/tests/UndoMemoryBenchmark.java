@@ -0,0 +1,131 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import model.UndoRedoManager;
+
+/**
+ * UndoMemoryBenchmark: Measures the heap kept by the undo history.
+ *
+ * This class simulates a drawing session of short brush strokes on a canvas
+ * the size of the default DrawingCanvas and reports how much heap the undo
+ * history holds per 1,000 strokes, once with a full copy of the canvas per
+ * stroke (the way the history used to be kept) and once with the tile based
+ * UndoRedoManager.
+ *
+ * @author Tanay Desai
+ * @file: UndoMemoryBenchmark.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class UndoMemoryBenchmark {
+
+	private static final int WIDTH = 1280;
+	private static final int HEIGHT = 710;
+	private static final int STROKES = 1000;
+
+	/**
+	 * Full copies are only measured for a sample of the strokes, since 1,000 of
+	 * them do not fit in a default heap. The result is scaled up to 1,000.
+	 */
+	private static final int FULL_COPY_SAMPLE = 100;
+
+	/**
+	 * The main entry point of the benchmark.
+	 *
+	 * @param args Command-line arguments (not used in this benchmark).
+	 */
+	public static void main(String[] args) {
+		long fullCopies = measureFullCopies() * STROKES / FULL_COPY_SAMPLE;
+		long tiles = measureTiles();
+
+		System.out.printf("Canvas %dx%d, %d strokes%n", WIDTH, HEIGHT, STROKES);
+		System.out.printf("Full snapshots: %,d KB%n", fullCopies / 1024);
+		System.out.printf("Tile deltas:    %,d KB%n", tiles / 1024);
+	}
+
+	/**
+	 * Measures the heap used by keeping a full copy of the canvas per stroke.
+	 *
+	 * @return The retained bytes for FULL_COPY_SAMPLE strokes.
+	 */
+	private static long measureFullCopies() {
+		int[] canvas = blankCanvas();
+		Random random = new Random(335);
+		List<int[]> history = new ArrayList<>();
+
+		long before = usedHeap();
+		for (int i = 0; i < FULL_COPY_SAMPLE; i++) {
+			history.add(canvas.clone());
+			drawStroke(canvas, random);
+		}
+		long after = usedHeap();
+
+		// keep the history reachable until it has been measured
+		return history.isEmpty() ? 0 : after - before;
+	}
+
+	/**
+	 * Measures the heap used by the UndoRedoManager for STROKES strokes.
+	 *
+	 * @return The retained bytes, including the baseline copy of the canvas.
+	 */
+	private static long measureTiles() {
+		int[] canvas = blankCanvas();
+		Random random = new Random(335);
+
+		long before = usedHeap();
+		UndoRedoManager manager = new UndoRedoManager();
+		for (int i = 0; i < STROKES; i++) {
+			manager.addNewAction(canvas, WIDTH, HEIGHT);
+			drawStroke(canvas, random);
+		}
+		manager.addNewAction(canvas, WIDTH, HEIGHT);
+		long after = usedHeap();
+
+		return manager.canUndo() ? after - before : 0;
+	}
+
+	/**
+	 * Creates a canvas filled with the DrawingCanvas background color.
+	 */
+	private static int[] blankCanvas() {
+		int[] canvas = new int[WIDTH * HEIGHT];
+		Arrays.fill(canvas, 0xFFF4F4F4);
+		return canvas;
+	}
+
+	/**
+	 * Draws a short random stroke made of a few square dabs into the canvas.
+	 */
+	private static void drawStroke(int[] canvas, Random random) {
+		int x = random.nextInt(WIDTH);
+		int y = random.nextInt(HEIGHT);
+		int color = 0xFF000000 | random.nextInt(0xFFFFFF);
+		for (int dab = 0; dab < 20; dab++) {
+			x = Math.max(0, Math.min(WIDTH - 1, x + random.nextInt(21) - 10));
+			y = Math.max(0, Math.min(HEIGHT - 1, y + random.nextInt(21) - 10));
+			for (int row = Math.max(0, y - 6); row < Math.min(HEIGHT, y + 6); row++) {
+				for (int col = Math.max(0, x - 6); col < Math.min(WIDTH, x + 6); col++) {
+					canvas[row * WIDTH + col] = color;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the heap in use after asking the garbage collector to run.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,155 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import model.TiledImage;
+import model.UndoRedoManager;
+
+/**
+ * UndoRedoManagerTest: JUnit tests for the UndoRedoManager class.
+ *
+ * This test class draws random rectangles on a TiledImage and hands every
+ * state to the manager, then undoes and redoes through the whole history and
+ * compares every state it gets back. The budgets are set to nothing, so all
+ * but the latest actions are compressed and moved to the temporary file, and
+ * every undo has to bring its action back from there.
+ *
+ * @author Tanay Desai
+ * @file: UndoRedoManagerTest.java
+ * @assignment: Paint Application Final Project
+ * @course: CSC 335 Fall 2023
+ * @date: 11/30/2023
+ * @version 1.6
+ */
+public class UndoRedoManagerTest {
+	private static final int WIDTH = 300;
+	private static final int HEIGHT = 200;
+
+	private UndoRedoManager manager;
+
+	/**
+	 * Deletes the temporary file of the manager after each test method.
+	 */
+	@AfterEach
+	public void tearDown() {
+		if (manager != null) {
+			manager.dispose();
+		}
+	}
+
+	/**
+	 * Test that every state comes back after the history was spilled to the
+	 * temporary file, undoing all the way and redoing all the way.
+	 */
+	@Test
+	public void testSpilledHistoryRoundTrip() {
+		manager = new UndoRedoManager(0, 0);
+		Random random = new Random(5);
+		TiledImage image = new TiledImage(WIDTH, HEIGHT, 0xFFFFFFFF);
+		List<int[]> states = new ArrayList<>();
+		states.add(pixelsOf(image));
+		assertFalse(manager.addNewAction(image));
+
+		for (int action = 0; action < 40; action++) {
+			drawRandomRectangle(random, image);
+			assertTrue(manager.addNewAction(image));
+			states.add(pixelsOf(image));
+		}
+
+		for (int state = states.size() - 2; state >= 0; state--) {
+			assertTrue(manager.undo(image));
+			assertArrayEquals(states.get(state), pixelsOf(image), "undo to state " + state);
+		}
+		assertFalse(manager.undo(image));
+
+		for (int state = 1; state < states.size(); state++) {
+			assertTrue(manager.redo(image));
+			assertArrayEquals(states.get(state), pixelsOf(image), "redo to state " + state);
+		}
+		assertFalse(manager.redo(image));
+	}
+
+	/**
+	 * Test that the history stays intact when spilled actions are dropped and new
+	 * ones take their space in the temporary file, including a resize.
+	 */
+	@Test
+	public void testSpillSpaceReused() {
+		manager = new UndoRedoManager(0, 0);
+		Random random = new Random(9);
+		TiledImage image = new TiledImage(WIDTH, HEIGHT, 0xFFFFFFFF);
+		List<int[]> states = new ArrayList<>();
+		List<Integer> widths = new ArrayList<>();
+		manager.addNewAction(image);
+		states.add(pixelsOf(image));
+		widths.add(image.getWidth());
+
+		for (int round = 0; round < 4; round++) {
+			for (int action = 0; action < 15; action++) {
+				drawRandomRectangle(random, image);
+				assertTrue(manager.addNewAction(image));
+				states.add(pixelsOf(image));
+				widths.add(image.getWidth());
+			}
+			if (round == 1) {
+				// A resize is kept as a whole copy of the drawing
+				image.copyFrom(image.resized(image.getWidth() + 40, image.getHeight(), 0, 0, 0xFFFFFFFF));
+				assertTrue(manager.addNewAction(image));
+				states.add(pixelsOf(image));
+				widths.add(image.getWidth());
+			}
+
+			// Drop the newest actions, freeing their space in the file
+			for (int undone = 0; undone < 10; undone++) {
+				assertTrue(manager.undo(image));
+				states.remove(states.size() - 1);
+				widths.remove(widths.size() - 1);
+				assertEquals(widths.get(widths.size() - 1), image.getWidth());
+				assertArrayEquals(states.get(states.size() - 1), pixelsOf(image));
+			}
+		}
+
+		while (states.size() > 1) {
+			assertTrue(manager.undo(image));
+			states.remove(states.size() - 1);
+			widths.remove(widths.size() - 1);
+			assertEquals(widths.get(widths.size() - 1), image.getWidth());
+			assertArrayEquals(states.get(states.size() - 1), pixelsOf(image));
+		}
+		assertFalse(manager.undo(image));
+	}
+
+	/**
+	 * Fills a random rectangle of a random color, spanning a few tiles.
+	 */
+	private static void drawRandomRectangle(Random random, TiledImage image) {
+		int x = random.nextInt(image.getWidth() - 1);
+		int y = random.nextInt(image.getHeight() - 1);
+		int width = 1 + random.nextInt(Math.min(120, image.getWidth() - x));
+		int height = 1 + random.nextInt(Math.min(120, image.getHeight() - y));
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+		image.setPixels(x, y, width, height, pixels, 0, width);
+	}
+
+	/**
+	 * Reads all pixels of a TiledImage into an array.
+	 */
+	private static int[] pixelsOf(TiledImage image) {
+		int[] pixels = new int[image.getWidth() * image.getHeight()];
+		image.getPixels(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return pixels;
+	}
+}